@@ -0,0 +1,108 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.benchmark;
+
+import com.hubbledouble.thread.synchronization.RunnableCode;
+import com.hubbledouble.thread.synchronization.ThreadSynchronization;
+import com.hubbledouble.thread.synchronization.processor.ThreadProcessor;
+import com.hubbledouble.thread.synchronization.repository.impl.MongoProcessRepositoryImpl;
+import com.hubbledouble.thread.synchronization.service.LockService;
+import com.hubbledouble.thread.synchronization.service.impl.LockServiceImpl;
+import com.hubbledouble.thread.synchronization.service.impl.ProcessServiceImpl;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/**
+ * Database the benchmarks run against, either the in memory simulator
+ * or a mongo database reachable through the {@code mongo.uri} system property
+ *
+ * @author Jorge Saldivar
+ */
+public final class Backend implements AutoCloseable {
+
+    public static final String SIMULATOR = "simulator";
+    public static final String MONGO = "mongo";
+
+    private static final String MONGO_URI = System.getProperty("mongo.uri", "mongodb://localhost:27017");
+    private static final String DATABASE = "threadSynchronizationBenchmark";
+
+    private final MongoClient mongoClient;
+    private final ThreadSynchronization threadSynchronization;
+    private final ThreadProcessor threadProcessor;
+    private final LockService lockService;
+
+    private Backend(MongoClient mongoClient, ThreadSynchronization threadSynchronization,
+                    ThreadProcessor threadProcessor, LockService lockService) {
+        this.mongoClient = mongoClient;
+        this.threadSynchronization = threadSynchronization;
+        this.threadProcessor = threadProcessor;
+        this.lockService = lockService;
+    }
+
+    public static Backend open(String backend) {
+
+        if (SIMULATOR.equals(backend)) {
+            LockService lockService = new LockServiceImpl(new InMemoryProcessService());
+            return new Backend(null, null, new ThreadProcessor(lockService), lockService);
+        }
+
+        if (MONGO.equals(backend)) {
+            MongoClient mongoClient = MongoClients.create(MONGO_URI);
+            // Every trial starts from an empty database
+            mongoClient.getDatabase(DATABASE).drop();
+            MongoTemplate mongoTemplate = new MongoTemplate(mongoClient, DATABASE);
+            return new Backend(
+                    mongoClient,
+                    new ThreadSynchronization(mongoTemplate),
+                    null,
+                    new LockServiceImpl(new ProcessServiceImpl(new MongoProcessRepositoryImpl(mongoTemplate))));
+        }
+
+        throw new IllegalArgumentException("Unknown backend " + backend);
+
+    }
+
+    /**
+     * Same as {@link ThreadSynchronization#execute(String, RunnableCode)}, the simulator has no
+     * {@link ThreadSynchronization} of its own so it's called on the processor it delegates to
+     */
+    public boolean execute(String processName, RunnableCode runnableCode) {
+
+        if (null != threadSynchronization) {
+            return threadSynchronization.execute(processName, runnableCode);
+        }
+
+        return threadProcessor.execute(processName, runnableCode);
+
+    }
+
+    public LockService getLockService() {
+        return lockService;
+    }
+
+    @Override
+    public void close() {
+
+        if (null != mongoClient) {
+            mongoClient.getDatabase(DATABASE).drop();
+            mongoClient.close();
+        }
+
+    }
+
+}
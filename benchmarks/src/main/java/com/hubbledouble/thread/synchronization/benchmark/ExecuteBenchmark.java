@@ -0,0 +1,153 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.benchmark;
+
+import com.hubbledouble.thread.synchronization.RunnableCode;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of {@code ThreadSynchronization.execute}, acquiring and releasing the lock
+ * around an empty critical section
+ *
+ * @author Jorge Saldivar
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecuteBenchmark {
+
+    private static final RunnableCode EMPTY_CODE = () -> {
+    };
+
+    @Param({Backend.SIMULATOR, Backend.MONGO})
+    public String backend;
+
+    @Param({"10000"})
+    public int distinctKeys;
+
+    private Backend synchronization;
+    private String[] processNames;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        synchronization = Backend.open(backend);
+        processNames = new String[distinctKeys];
+
+        for (int i = 0; i < distinctKeys; i++) {
+            processNames[i] = "key-" + i;
+        }
+
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        synchronization.close();
+    }
+
+    /**
+     * Each thread executes a process of its own, no lock is ever held by other thread
+     */
+    @Benchmark
+    @Threads(1)
+    public boolean uncontended(ThreadProcess threadProcess, Executions executions) {
+        return executions.count(synchronization.execute(threadProcess.processName, EMPTY_CODE));
+    }
+
+    /**
+     * Every thread executes the same process, most executions are rejected
+     */
+    @Benchmark
+    @Threads(8)
+    public boolean contended(Executions executions) {
+        return executions.count(synchronization.execute("contended", EMPTY_CODE));
+    }
+
+    /**
+     * Threads execute processes picked at random out of many, collisions are rare but every lock is a new document
+     */
+    @Benchmark
+    @Threads(8)
+    public boolean manyDistinctKeys(Executions executions) {
+        String processName = processNames[ThreadLocalRandom.current().nextInt(processNames.length)];
+        return executions.count(synchronization.execute(processName, EMPTY_CODE));
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadProcess {
+
+        private String processName;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            processName = "uncontended-" + UUID.randomUUID();
+        }
+
+    }
+
+    /**
+     * Splits the operations of each benchmark into executed and rejected ones
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Executions {
+
+        public long executed;
+        public long rejected;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            executed = 0;
+            rejected = 0;
+        }
+
+        boolean count(boolean execution) {
+
+            if (execution) {
+                executed++;
+            } else {
+                rejected++;
+            }
+
+            return execution;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.benchmark;
+
+import com.hubbledouble.thread.synchronization.service.LockService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of renewing every lock held by a node, the work done by the heartbeat processor on each tick
+ *
+ * @author Jorge Saldivar
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeartbeatBenchmark {
+
+    private static final String PROCESS_SOURCE_ID = "benchmark";
+
+    @Param({Backend.SIMULATOR, Backend.MONGO})
+    public String backend;
+
+    @Param({"1", "100", "1000"})
+    public int heldLocks;
+
+    private Backend synchronization;
+    private Map<String, String> processSourceIds;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        synchronization = Backend.open(backend);
+        processSourceIds = new HashMap<>();
+
+        for (int i = 0; i < heldLocks; i++) {
+            String processName = "held-" + i;
+            synchronization.getLockService().acquireLock(processName, PROCESS_SOURCE_ID, Duration.ofMinutes(1));
+            processSourceIds.put(processName, PROCESS_SOURCE_ID);
+        }
+
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        synchronization.close();
+    }
+
+    @Benchmark
+    public Set<String> performHeartbeats() {
+
+        LockService lockService = synchronization.getLockService();
+        return lockService.performHeartbeats(processSourceIds);
+
+    }
+
+}
@@ -0,0 +1,297 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.hubbledouble.thread.synchronization.benchmark;
+
+import com.hubbledouble.thread.synchronization.domain.Process;
+import com.hubbledouble.thread.synchronization.repository.ProcessOperation;
+import com.hubbledouble.thread.synchronization.service.ProcessService;
+import org.bson.types.ObjectId;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Locks kept in memory, the benchmarks measure the library without the database round trips.
+ * Same behavior as the simulator of the library tests, kept here so the library never publishes its test classes
+ *
+ * @author Jorge Saldivar
+ */
+public final class InMemoryProcessService implements ProcessService {
+
+    private final Map<String, Process> processCollection;
+    private final List<Consumer<ObjectId>> releaseListeners = new CopyOnWriteArrayList<>();
+
+    public InMemoryProcessService() {
+        this.processCollection = new HashMap<>();
+    }
+
+    @Override
+    public Process findByProcessName(String processName) {
+
+        synchronized (processCollection) {
+            return processCollection.getOrDefault(processName, null);
+        }
+
+    }
+
+    @Override
+    public List<Process> findByProcessNames(Collection<String> processNames) {
+
+        synchronized (processCollection) {
+            return processCollection.values().stream()
+                    .filter(process -> processNames.contains(process.getProcessName()))
+                    .collect(Collectors.toList());
+        }
+
+    }
+
+    @Override
+    public Process findByProcessNameAndProcessSourceId(String processName, String processSourceId) {
+
+        synchronized (processCollection) {
+
+            if (null != processSourceId) {
+                Process process = processCollection.getOrDefault(processName, null);
+                if (null != process && processSourceId.equals(process.getProcessSourceId())) {
+                    return process;
+                }
+
+            }
+
+            return null;
+        }
+
+    }
+
+    @Override
+    public Process acquireLock(String processName, String processSourceId, String sessionId, Duration expiration) {
+
+        synchronized (processCollection) {
+
+            Process process = processCollection.getOrDefault(processName, null);
+
+            if (null == process) {
+                process = new Process(processName, processSourceId);
+                process.setId(Process.idOf(processName));
+                process.setGeneration(1L);
+                if (null != sessionId) {
+                    process.setSessionId(sessionId);
+                    process.setHeartbeat(null);
+                }
+                processCollection.put(processName, process);
+                return process;
+            }
+
+            if (isExpired(process, expiration)) {
+                process.setProcessSourceId(processSourceId);
+                process.setSessionId(sessionId);
+                process.setHeartbeat(null == sessionId ? Instant.now() : null);
+                process.setVersion();
+                process.setGeneration(null == process.getGeneration() ? 1L : process.getGeneration() + 1);
+                return process;
+            }
+
+            return null;
+        }
+
+    }
+
+    @Override
+    public void releaseLock(String processName, String processSourceId) {
+
+        Process process = findByProcessNameAndProcessSourceId(processName, processSourceId);
+
+        if (null != process) {
+            delete(process);
+        }
+
+    }
+
+    @Override
+    public boolean acquireLocks(List<ProcessOperation> acquireOperations) {
+
+        synchronized (processCollection) {
+
+            for (int i = 0; i < acquireOperations.size(); i++) {
+
+                ProcessOperation acquireOperation = acquireOperations.get(i);
+
+                if (null == acquireLock(acquireOperation.getProcessName(), acquireOperation.getProcessSourceId(),
+                        acquireOperation.getSessionId(), acquireOperation.getExpiration())) {
+                    releaseLocks(acquireOperations.subList(0, i).stream()
+                            .map(ProcessOperation::getProcessName)
+                            .collect(Collectors.toList()), acquireOperation.getProcessSourceId());
+                    return false;
+                }
+
+            }
+
+            return true;
+        }
+
+    }
+
+    @Override
+    public void releaseLocks(Collection<String> processNames, String processSourceId) {
+
+        for (String processName : processNames) {
+            releaseLock(processName, processSourceId);
+        }
+
+    }
+
+    @Override
+    public List<ProcessOperation.Result> executeBulk(List<ProcessOperation> processOperations) {
+
+        synchronized (processCollection) {
+
+            List<ProcessOperation.Result> results = new ArrayList<>(processOperations.size());
+
+            for (ProcessOperation processOperation : processOperations) {
+
+                if (ProcessOperation.Type.ACQUIRE == processOperation.getType()) {
+                    Process process = acquireLock(processOperation.getProcessName(), processOperation.getProcessSourceId(),
+                            processOperation.getSessionId(), processOperation.getExpiration());
+                    results.add(null == process ? ProcessOperation.Result.REJECTED
+                            : process.getGeneration() > 1 ? ProcessOperation.Result.TAKEN_OVER : ProcessOperation.Result.APPLIED);
+                } else {
+                    releaseLock(processOperation.getProcessName(), processOperation.getProcessSourceId());
+                    results.add(ProcessOperation.Result.APPLIED);
+                }
+
+            }
+
+            return results;
+        }
+
+    }
+
+    @Override
+    public void performHeartbeat(Process process) {
+
+        synchronized (processCollection) {
+
+            if (processCollection.containsKey(process.getProcessName())) {
+                process.setHeartbeat();
+                process.setVersion();
+                processCollection.put(process.getProcessName(), process);
+            }
+
+        }
+
+    }
+
+    @Override
+    public Set<String> performHeartbeats(Map<String, String> processSourceIds) {
+
+        synchronized (processCollection) {
+
+            Set<String> lostProcesses = new HashSet<>();
+
+            processSourceIds.forEach((processName, processSourceId) -> {
+                Process process = findByProcessNameAndProcessSourceId(processName, processSourceId);
+                if (null != process) {
+                    process.setHeartbeat();
+                    process.setVersion();
+                } else {
+                    lostProcesses.add(processName);
+                }
+            });
+
+            return lostProcesses;
+        }
+
+    }
+
+    @Override
+    public void delete(Process process) {
+
+        synchronized (processCollection) {
+
+            if (processCollection.containsKey(process.getProcessName())) {
+                processCollection.remove(process.getProcessName());
+            }
+
+        }
+
+        releaseListeners.forEach(releaseListener -> releaseListener.accept(process.getId()));
+
+    }
+
+    @Override
+    public void deleteOldCompletedProcesses() {
+
+        synchronized (processCollection) {
+
+            processCollection.values().removeIf(i ->
+                    isExpired(i, Duration.of(10, ChronoUnit.MINUTES)));
+
+        }
+
+    }
+
+    @Override
+    public void deleteBySessionIds(Collection<String> sessionIds) {
+
+        synchronized (processCollection) {
+            processCollection.values().removeIf(i -> sessionIds.contains(i.getSessionId()));
+        }
+
+    }
+
+    @Override
+    public Set<String> findSessionIds() {
+
+        synchronized (processCollection) {
+            return processCollection.values().stream()
+                    .map(Process::getSessionId)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+        }
+
+    }
+
+    @Override
+    public void watchReleases(Consumer<ObjectId> releaseListener) {
+        releaseListeners.add(releaseListener);
+        releaseListener.accept(null);
+    }
+
+    private boolean isExpired(Process process, Duration expiration) {
+
+        if (null == process.getHeartbeat()) {
+            return null == process.getSessionId();
+        }
+
+        return null != expiration && !Instant.now().minus(expiration).isBefore(process.getHeartbeat());
+
+    }
+
+}
\ No newline at end of file
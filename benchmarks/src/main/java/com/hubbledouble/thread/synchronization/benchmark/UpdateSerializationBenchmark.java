@@ -0,0 +1,98 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.benchmark;
+
+import com.hubbledouble.thread.synchronization.domain.Process;
+import com.mongodb.BasicDBObject;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the update written on every acquire and heartbeat. The lock document is converted
+ * through the mapping converter, same steps as {@code MongoProcessRepositoryImpl#createUpdate},
+ * compared against setting its fields directly
+ *
+ * @author Jorge Saldivar
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UpdateSerializationBenchmark {
+
+    private MappingMongoConverter converter;
+
+    @Setup
+    public void setup() {
+
+        MongoCustomConversions conversions = new MongoCustomConversions(Collections.emptyList());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+
+    }
+
+    @Benchmark
+    public Update convertedUpdate() {
+
+        Process process = new Process("processName", "processSourceId");
+
+        BasicDBObject basicDBObject = new BasicDBObject();
+        converter.write(process, basicDBObject);
+        BasicDBObject updateDoc = new BasicDBObject("$set", basicDBObject);
+
+        return Update.fromDocument(new Document(updateDoc.toMap()));
+
+    }
+
+    @Benchmark
+    public Update fieldUpdate() {
+
+        return new Update()
+                .set("processName", "processName")
+                .set("processSourceId", "processSourceId")
+                .set("version", UUID.randomUUID().toString())
+                .set("heartbeat", Instant.now());
+
+    }
+
+}
@@ -0,0 +1,40 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization;
+
+import java.util.Set;
+
+/**
+ * Locks of many processes held together until closed, claimed through {@link ThreadSynchronization#claim(java.util.Collection, int)}.
+ * The locks keep their heartbeat while the claim is open and are released together once closed.
+ *
+ * @author Jorge Saldivar
+ */
+public interface Claim extends AutoCloseable {
+
+    /**
+     * @return the processes claimed, empty if every candidate was held by other thread
+     */
+    Set<String> getProcessNames();
+
+    /**
+     * Releases all the locks. Closing the claim more than once has no effect
+     */
+    @Override
+    void close();
+
+}
@@ -0,0 +1,55 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization;
+
+import com.hubbledouble.thread.synchronization.exception.RunnableCodeException;
+
+/**
+ * Lock held on a process until closed, acquired through {@link ThreadSynchronization#acquire(String)}.
+ * The lock keeps its heartbeat while the lease is open so one lease can cover many critical sections
+ * without acquiring and releasing the lock in the database for each of them.
+ *
+ * @author Jorge Saldivar
+ */
+public interface Lease extends AutoCloseable {
+
+    String getProcessName();
+
+    /**
+     * Sends a heartbeat right away instead of waiting for the scheduled one
+     *
+     * @return boolean:
+     *          If true, the lock is still held by this lease.
+     *          If false, the lock expired and was taken over by other thread
+     */
+    boolean renew();
+
+    /**
+     * Executes the code under the lock of this lease
+     *
+     * @throws RunnableCodeException - Any exception that could be thrown by the RunnableCode
+     * @throws IllegalStateException - The lease is closed
+     */
+    void execute(RunnableCode runnableCode);
+
+    /**
+     * Releases the lock. Closing the lease more than once has no effect
+     */
+    @Override
+    void close();
+
+}
@@ -0,0 +1,79 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization;
+
+import java.time.Duration;
+
+/**
+ * Timings of a lock. While a process is executing, a heartbeat is sent every heartbeat interval.
+ * If a lock's heartbeat is older than the lease duration multiplied by the grace factor,
+ * its process is considered stopped, and other process can take the lock over.
+ * <p>
+ * Short leases give fast failover when a node crashes, long leases with few heartbeats reduce database writes.
+ * Heartbeats stamped with the clock of each node need a grace factor covering their clock skew, with server time
+ * the grace factor only covers late heartbeats.
+ *
+ * @author Jorge Saldivar
+ */
+public final class LockSettings {
+
+    public static final LockSettings DEFAULT = new LockSettings(Duration.ofSeconds(30), Duration.ofSeconds(10), 2);
+
+    private final Duration leaseDuration;
+    private final Duration heartbeatInterval;
+    private final double graceFactor;
+
+    /**
+     * @param leaseDuration - How long a lock is held without a heartbeat
+     * @param heartbeatInterval - How often the heartbeat of a held lock is sent, must be shorter than the lease
+     * @param graceFactor - Multiplier of the lease tolerating late heartbeats before the lock is taken over, at least 1
+     */
+    public LockSettings(Duration leaseDuration, Duration heartbeatInterval, double graceFactor) {
+
+        if (heartbeatInterval.isNegative() || heartbeatInterval.isZero() || heartbeatInterval.compareTo(leaseDuration) >= 0) {
+            throw new IllegalArgumentException("Heartbeat interval must be positive and shorter than the lease duration");
+        }
+
+        if (graceFactor < 1) {
+            throw new IllegalArgumentException("Grace factor must be at least 1");
+        }
+
+        this.leaseDuration = leaseDuration;
+        this.heartbeatInterval = heartbeatInterval;
+        this.graceFactor = graceFactor;
+    }
+
+    public Duration getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public Duration getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public double getGraceFactor() {
+        return graceFactor;
+    }
+
+    /**
+     * @return how old a heartbeat must be for the lock to be taken over
+     */
+    public Duration getExpiration() {
+        return Duration.ofNanos((long) (leaseDuration.toNanos() * graceFactor));
+    }
+
+}
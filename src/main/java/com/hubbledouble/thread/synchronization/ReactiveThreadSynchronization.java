@@ -0,0 +1,107 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization;
+
+import com.hubbledouble.thread.synchronization.exception.RunnableCodeException;
+import com.hubbledouble.thread.synchronization.exception.ThreadSynchronizationException;
+import com.hubbledouble.thread.synchronization.processor.ReactiveThreadProcessor;
+import com.hubbledouble.thread.synchronization.repository.impl.ReactiveMongoProcessRepositoryImpl;
+import com.hubbledouble.thread.synchronization.service.impl.ReactiveLockServiceImpl;
+import com.hubbledouble.thread.synchronization.service.impl.ReactiveProcessServiceImpl;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Reactive Thread Synchronization.
+ * Non blocking version of {@link ThreadSynchronization} for reactive applications,
+ * requires the mongo reactive streams driver and reactor in the classpath.
+ *
+ * @author Jorge Saldivar
+ */
+public class ReactiveThreadSynchronization {
+
+    private static final Duration DEFAULT_CLEANUP_HORIZON = Duration.ofMinutes(10);
+    private final ReactiveThreadProcessor reactiveThreadProcessor;
+
+    public ReactiveThreadSynchronization(ReactiveMongoOperations reactiveMongoOperations) {
+        this(reactiveMongoOperations, LockSettings.DEFAULT);
+    }
+
+    /**
+     * @param reactiveMongoOperations - Mongo database used to store the process status
+     * @param lockSettings - Timings of every lock
+     */
+    public ReactiveThreadSynchronization(ReactiveMongoOperations reactiveMongoOperations, LockSettings lockSettings) {
+        this(reactiveMongoOperations, lockSettings, Collections.emptyMap(), DEFAULT_CLEANUP_HORIZON);
+    }
+
+    /**
+     * @param reactiveMongoOperations - Mongo database used to store the process status
+     * @param defaultLockSettings - Timings of every lock without settings of its own
+     * @param processLockSettings - Timings of specific locks, keyed by process name
+     * @param cleanupHorizon - Locks whose heartbeat is older than this are removed by the database,
+     *                       must be longer than the expiration of every lock
+     */
+    public ReactiveThreadSynchronization(ReactiveMongoOperations reactiveMongoOperations, LockSettings defaultLockSettings,
+                                         Map<String, LockSettings> processLockSettings, Duration cleanupHorizon) {
+
+        if (cleanupHorizon.compareTo(defaultLockSettings.getExpiration()) <= 0
+                || processLockSettings.values().stream().anyMatch(lockSettings -> cleanupHorizon.compareTo(lockSettings.getExpiration()) <= 0)) {
+            throw new IllegalArgumentException("Cleanup horizon must be longer than the expiration of every lock");
+        }
+
+        this.reactiveThreadProcessor =
+                new ReactiveThreadProcessor(
+                        new ReactiveLockServiceImpl(
+                                new ReactiveProcessServiceImpl(
+                                        new ReactiveMongoProcessRepositoryImpl(reactiveMongoOperations, cleanupHorizon))),
+                        defaultLockSettings, processLockSettings);
+
+    }
+
+    /**
+     * Call this method to perform thread synchronization
+     * <p>
+     * Usage:
+     * <pre>
+     *  <code>
+     *       ReactiveThreadSynchronization threadSynchronization = new ReactiveThreadSynchronization(reactiveMongoOperations);
+     *       threadSynchronization.execute("processName", () -> sendReport())
+     *               .subscribe(executed -> System.out.println(executed));
+     *  </code>
+     *  </pre>
+     *
+     * @param processName - The name of the process
+     *                      so it can be synchronized if other thread is trying to execute the same process
+     * @param code - The code the process will execute during the synchronized block,
+     *               the lock is held until the returned Mono terminates
+     * @return Mono emitting:
+     *          true, if thread process executed.
+     *          false, if other thread in the same or other node is currently executing the process.
+     *          Error {@link RunnableCodeException} if the code failed,
+     *          or {@link ThreadSynchronizationException} if acquiring the lock failed
+     */
+    public Mono<Boolean> execute(String processName, Supplier<Mono<?>> code) {
+        return reactiveThreadProcessor.execute(processName, code);
+    }
+
+}
@@ -18,32 +18,146 @@ package com.hubbledouble.thread.synchronization;
 
 import com.hubbledouble.thread.synchronization.exception.RunnableCodeException;
 import com.hubbledouble.thread.synchronization.exception.ThreadSynchronizationException;
+import com.hubbledouble.thread.synchronization.listener.CompositeLockListener;
+import com.hubbledouble.thread.synchronization.listener.ContentionTracker;
+import com.hubbledouble.thread.synchronization.listener.FlightRecorderLockListener;
+import com.hubbledouble.thread.synchronization.listener.LockListener;
+import com.hubbledouble.thread.synchronization.processor.CleanupProcessor;
+import com.hubbledouble.thread.synchronization.processor.ProcessorExecutors;
+import com.hubbledouble.thread.synchronization.processor.ReadWriteProcessor;
+import com.hubbledouble.thread.synchronization.processor.SessionProcessor;
 import com.hubbledouble.thread.synchronization.processor.ThreadProcessor;
+import com.hubbledouble.thread.synchronization.repository.ProcessRepository;
+import com.hubbledouble.thread.synchronization.repository.ReadWriteProcessRepository;
+import com.hubbledouble.thread.synchronization.repository.impl.BatchingProcessRepositoryImpl;
+import com.hubbledouble.thread.synchronization.repository.impl.MongoCompletionRepositoryImpl;
 import com.hubbledouble.thread.synchronization.repository.impl.MongoProcessRepositoryImpl;
+import com.hubbledouble.thread.synchronization.repository.impl.MongoReadWriteProcessRepositoryImpl;
+import com.hubbledouble.thread.synchronization.repository.impl.MongoSessionRepositoryImpl;
+import com.hubbledouble.thread.synchronization.service.LockService;
+import com.hubbledouble.thread.synchronization.service.ProcessService;
+import com.hubbledouble.thread.synchronization.service.impl.CompletionServiceImpl;
 import com.hubbledouble.thread.synchronization.service.impl.LockServiceImpl;
 import com.hubbledouble.thread.synchronization.service.impl.ProcessServiceImpl;
+import com.hubbledouble.thread.synchronization.service.impl.ReadWriteLockServiceImpl;
+import com.hubbledouble.thread.synchronization.service.impl.SessionServiceImpl;
 import org.springframework.data.mongodb.core.MongoOperations;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 /**
  * Thread Synchronization.
  * Use this class to ensure two or more concurrent processes or threads
  * do not simultaneously execute some particular program segment known as critical section.
+ * <p>
+ * Close it once no longer used, e.g. on application shutdown, to stop its heartbeats and background threads.
  *
  * @author Jorge Saldivar
  * @see <a href="https://en.wikipedia.org/wiki/Synchronization_(computer_science)#Thread_or_process_synchronization">
  * Thread Synchronization info
  * </a>
  */
-public class ThreadSynchronization {
+public class ThreadSynchronization implements AutoCloseable {
+
+    private static final Duration DEFAULT_CLEANUP_PERIOD = Duration.ofMinutes(1);
+    private static final Duration DEFAULT_CLEANUP_HORIZON = Duration.ofMinutes(10);
 
+    private final MongoProcessRepositoryImpl mongoProcessRepository;
+    private final BatchingProcessRepositoryImpl batchingProcessRepository;
     private final ThreadProcessor threadProcessor;
+    private final CleanupProcessor cleanupProcessor;
+    private final SessionProcessor sessionProcessor;
+    private final Supplier<MongoReadWriteProcessRepositoryImpl> readWriteProcessRepositoryFactory;
+    private final Function<ReadWriteProcessRepository, ReadWriteProcessor> readWriteProcessorFactory;
+    private MongoReadWriteProcessRepositoryImpl readWriteProcessRepository;
+    private volatile ReadWriteProcessor readWriteProcessor;
+    private final ScheduledExecutorService ownScheduledExecutorService;
+    private final List<ContentionTracker> contentionTrackers;
+    private volatile boolean closed;
 
     public ThreadSynchronization(MongoOperations mongoOperations) {
+        this(mongoOperations, DEFAULT_CLEANUP_PERIOD);
+    }
+
+    /**
+     * @param mongoOperations - Mongo database used to store the process status
+     * @param cleanupPeriod - How often expired locks left behind by stopped processes are removed in the background
+     */
+    public ThreadSynchronization(MongoOperations mongoOperations, Duration cleanupPeriod) {
+        this(builder(mongoOperations).cleanupPeriod(cleanupPeriod).prepare());
+    }
+
+    private ThreadSynchronization(Builder builder) {
+        this.mongoProcessRepository = new MongoProcessRepositoryImpl(builder.mongoOperations, builder.cleanupHorizon, builder.serverTime);
+        this.batchingProcessRepository = null != builder.batchWindow
+                ? new BatchingProcessRepositoryImpl(mongoProcessRepository, builder.batchWindow, builder.maxBatchSize)
+                : null;
+        ProcessRepository processRepository = null != batchingProcessRepository ? batchingProcessRepository : mongoProcessRepository;
+        ProcessService processService = new ProcessServiceImpl(processRepository, builder.cleanupHorizon);
+        LockListener lockListener = CompositeLockListener.of(builder.lockListeners);
+        LockService lockService =
+                new LockServiceImpl(
+                        processService,
+                        builder.sessions
+                                ? new SessionServiceImpl(new MongoSessionRepositoryImpl(builder.mongoOperations, builder.serverTime), processService)
+                                : null,
+                        builder.defaultLockSettings.getExpiration(),
+                        builder.heldLockCacheMaxAge,
+                        lockListener);
         this.threadProcessor =
-                new ThreadProcessor(
-                        new LockServiceImpl(
-                                new ProcessServiceImpl(
-                                        new MongoProcessRepositoryImpl(mongoOperations))));
+                new ThreadProcessor(lockService,
+                        new CompletionServiceImpl(new MongoCompletionRepositoryImpl(builder.mongoOperations)),
+                        builder.scheduledExecutorService, builder.backgroundExecutor, builder.asyncExecutor,
+                        builder.defaultLockSettings, builder.processLockSettings, lockListener);
+        this.cleanupProcessor =
+                new CleanupProcessor(lockService, builder.scheduledExecutorService, builder.backgroundExecutor, builder.cleanupPeriod);
+        this.sessionProcessor = builder.sessions
+                ? new SessionProcessor(lockService, builder.scheduledExecutorService, builder.backgroundExecutor,
+                        builder.defaultLockSettings.getHeartbeatInterval())
+                : null;
+
+        final MongoOperations mongoOperations = builder.mongoOperations;
+        final ScheduledExecutorService scheduledExecutorService = builder.scheduledExecutorService;
+        final Executor backgroundExecutor = builder.backgroundExecutor;
+        final LockSettings defaultLockSettings = builder.defaultLockSettings;
+        final Map<String, LockSettings> processLockSettings = new HashMap<>(builder.processLockSettings);
+        this.readWriteProcessRepositoryFactory = () -> new MongoReadWriteProcessRepositoryImpl(mongoOperations);
+        this.readWriteProcessorFactory = readWriteProcessRepository ->
+                new ReadWriteProcessor(
+                        new ReadWriteLockServiceImpl(readWriteProcessRepository),
+                        scheduledExecutorService, backgroundExecutor, defaultLockSettings, processLockSettings);
+        this.ownScheduledExecutorService = builder.ownScheduledExecutorService ? builder.scheduledExecutorService : null;
+        this.contentionTrackers = new ArrayList<>(builder.contentionTrackers);
+    }
+
+    /**
+     * Use the builder to customize how this library runs its background work.
+     * <p>
+     * Usage:
+     * <pre>
+     *  <code>
+     *       ThreadSynchronization threadSynchronization = ThreadSynchronization.builder(mongoOperations)
+     *               .lockSettings("nightlyReport", new LockSettings(Duration.ofMinutes(5), Duration.ofMinutes(1), 2))
+     *               .lockSettings("quickJob", new LockSettings(Duration.ofMillis(500), Duration.ofMillis(100), 1.5))
+     *               .build();
+     *  </code>
+     *  </pre>
+     *
+     * @param mongoOperations - Mongo database used to store the process status
+     */
+    public static Builder builder(MongoOperations mongoOperations) {
+        return new Builder(mongoOperations);
     }
 
     /**
@@ -77,4 +191,612 @@ public class ThreadSynchronization {
         return threadProcessor.execute(processName, runnableCode);
     }
 
+    /**
+     * Same as {@link #execute(String, RunnableCode)} but when the process is being executed by other thread
+     * waits up to the given timeout for it to finish, instead of returning right away.
+     * Waiting threads are woken up as soon as the lock is released in the database,
+     * or poll for it when release notifications are not supported by the database deployment.
+     *
+     * @param processName - The name of the process
+     *                      so it can be synchronized if other thread is trying to execute the same process
+     * @param timeout - Maximum time to wait for other thread to finish executing the process
+     * @param runnableCode - Functional interface
+     *                       The code the process will execute during the synchronized block
+     * @return boolean:
+     *          If true, thread process executed.
+     *          If false, other thread in the same or other node kept executing the process during the whole timeout
+     * @throws RunnableCodeException - Any exception that could be thrown by the RunnableCode
+     * @throws ThreadSynchronizationException - Any exception that could be thrown by this library
+     *                                          With the exception of exceptions thrown by the RunnableCode
+     */
+    public boolean execute(String processName, Duration timeout, RunnableCode runnableCode)
+            throws RunnableCodeException, ThreadSynchronizationException {
+        return threadProcessor.execute(processName, timeout, runnableCode);
+    }
+
+    /**
+     * Executes the code holding the locks of all the processes at once, e.g. the two accounts of a transfer.
+     * The locks are acquired together with a single database call, if any of them is held by other thread
+     * none is kept. Locks are always acquired in the same order and never waited on, so executions over
+     * overlapping processes can't deadlock.
+     * <p>
+     * Usage:
+     * <pre>
+     *  <code>
+     *       threadSynchronization.execute(Arrays.asList("account-1", "account-2"), () -> transfer());
+     *  </code>
+     *  </pre>
+     *
+     * @param processNames - The names of the processes, in any order
+     * @param runnableCode - Functional interface
+     *                       The code the process will execute while holding all the locks
+     * @return boolean:
+     *          If true, thread process executed.
+     *          If false, other thread in the same or other node is executing at least one of the processes
+     * @throws RunnableCodeException - Any exception that could be thrown by the RunnableCode
+     * @throws ThreadSynchronizationException - Any exception that could be thrown by this library
+     *                                          With the exception of exceptions thrown by the RunnableCode
+     */
+    public boolean execute(Collection<String> processNames, RunnableCode runnableCode)
+            throws RunnableCodeException, ThreadSynchronizationException {
+        return threadProcessor.execute(processNames, runnableCode);
+    }
+
+    /**
+     * Executes the code holding the shared lock of the process. Readers run in parallel in every node,
+     * as long as no thread is executing the process through {@link #executeWrite(String, Duration, RunnableCode)}.
+     * <p>
+     * Usage:
+     * <pre>
+     *  <code>
+     *       threadSynchronization.executeRead("catalog", () -> printCatalog());
+     *  </code>
+     *  </pre>
+     *
+     * @param processName - The name of the process
+     * @param runnableCode - Functional interface
+     *                       The code the process will execute while holding the shared lock
+     * @return boolean:
+     *          If true, thread process executed.
+     *          If false, other thread in the same or other node is writing, or waiting to write
+     * @throws RunnableCodeException - Any exception that could be thrown by the RunnableCode
+     * @throws ThreadSynchronizationException - Any exception that could be thrown by this library
+     */
+    public boolean executeRead(String processName, RunnableCode runnableCode)
+            throws RunnableCodeException, ThreadSynchronizationException {
+        return readWriteProcessor().executeRead(processName, runnableCode);
+    }
+
+    /**
+     * Same as {@link #executeWrite(String, Duration, RunnableCode)} without waiting for the readers to finish
+     */
+    public boolean executeWrite(String processName, RunnableCode runnableCode)
+            throws RunnableCodeException, ThreadSynchronizationException {
+        return readWriteProcessor().executeWrite(processName, Duration.ZERO, runnableCode);
+    }
+
+    /**
+     * Executes the code holding the exclusive lock of the process, no reader nor other writer runs meanwhile.
+     * While the writer waits for the readers to finish new readers are rejected, so writers are not starved.
+     * The shared and exclusive locks of a process are independent of its lock used by {@link #execute(String, RunnableCode)}.
+     * <p>
+     * Usage:
+     * <pre>
+     *  <code>
+     *       threadSynchronization.executeWrite("catalog", Duration.ofSeconds(30), () -> reloadCatalog());
+     *  </code>
+     *  </pre>
+     *
+     * @param processName - The name of the process
+     * @param timeout - Maximum time to wait for the readers and other writer to finish
+     * @param runnableCode - Functional interface
+     *                       The code the process will execute while holding the exclusive lock
+     * @return boolean:
+     *          If true, thread process executed.
+     *          If false, other thread in the same or other node kept reading or writing during the whole timeout
+     * @throws RunnableCodeException - Any exception that could be thrown by the RunnableCode
+     * @throws ThreadSynchronizationException - Any exception that could be thrown by this library
+     */
+    public boolean executeWrite(String processName, Duration timeout, RunnableCode runnableCode)
+            throws RunnableCodeException, ThreadSynchronizationException {
+        return readWriteProcessor().executeWrite(processName, timeout, runnableCode);
+    }
+
+    /**
+     * Same as {@link #execute(String, RunnableCode)} but allowing up to the given number of concurrent executions
+     * of the process across all nodes, such as bounding the load on a downstream system.
+     * Each permit is held as a lock of its own, with its own heartbeat, using the lock settings of the process.
+     * <p>
+     * Usage:
+     * <pre>
+     *  <code>
+     *       threadSynchronization.executeWithPermits("export", 8, () -> exportNextBatch());
+     *  </code>
+     *  </pre>
+     *
+     * @param processName - The name of the process
+     * @param permits - Maximum concurrent executions of the process.
+     *                  Every node executing the process should use the same number of permits
+     * @param runnableCode - Functional interface
+     *                       The code the process will execute while holding a permit
+     * @return boolean:
+     *          If true, thread process executed.
+     *          If false, all the permits are currently held by other threads in the same or other nodes
+     * @throws RunnableCodeException - Any exception that could be thrown by the RunnableCode
+     * @throws ThreadSynchronizationException - Any exception that could be thrown by this library
+     */
+    public boolean executeWithPermits(String processName, int permits, RunnableCode runnableCode)
+            throws RunnableCodeException, ThreadSynchronizationException {
+        return threadProcessor.executeWithPermits(processName, permits, runnableCode);
+    }
+
+    /**
+     * Same as {@link #execute(String, RunnableCode)} for idempotent jobs that must run once per period.
+     * Once the code completes the process is recorded as completed for the retention,
+     * during it later executions from any node are skipped without acquiring the lock.
+     * Completion records are kept locally once seen, so skipping usually doesn't touch the database.
+     * <p>
+     * Usage:
+     * <pre>
+     *  <code>
+     *       threadSynchronization.executeOnce("dailyReport-" + LocalDate.now(), Duration.ofDays(2), () -> sendReport());
+     *  </code>
+     *  </pre>
+     *
+     * @param processName - The name of the process, also the key of its completion record
+     * @param retention - How long the process is considered completed once executed
+     * @param runnableCode - Functional interface
+     *                       The code the process will execute during the synchronized block
+     * @return boolean:
+     *          If true, thread process executed.
+     *          If false, the process was already completed or other thread in the same or other node is currently executing it
+     * @throws RunnableCodeException - Any exception that could be thrown by the RunnableCode, the process is not recorded as completed
+     * @throws ThreadSynchronizationException - Any exception that could be thrown by this library
+     */
+    public boolean executeOnce(String processName, Duration retention, RunnableCode runnableCode)
+            throws RunnableCodeException, ThreadSynchronizationException {
+        return threadProcessor.executeOnce(processName, retention, runnableCode);
+    }
+
+    /**
+     * Same as {@link #execute(String, RunnableCode)} for code computing a value, such as refreshing a cache.
+     * Threads of this JVM calling it while the process is in flight don't get rejected,
+     * they wait for the running execution and share its value or exception instead of computing it again.
+     * <p>
+     * Usage:
+     * <pre>
+     *  <code>
+     *       Optional&lt;Prices&gt; prices = threadSynchronization.executeShared("refreshPrices", () -> loadPrices());
+     *  </code>
+     *  </pre>
+     *
+     * @param processName - The name of the process
+     *                      so it can be synchronized if other thread is trying to execute the same process
+     * @param supplier - The code the process will execute during the synchronized block
+     * @return the value computed by this or a concurrent thread of this JVM,
+     *          empty if the supplier returned null or other node is currently executing the process
+     * @throws RunnableCodeException - Any exception that could be thrown by the supplier
+     * @throws ThreadSynchronizationException - Any exception that could be thrown by this library
+     */
+    public <T> Optional<T> executeShared(String processName, Supplier<T> supplier)
+            throws RunnableCodeException, ThreadSynchronizationException {
+        return threadProcessor.executeShared(processName, supplier);
+    }
+
+    /**
+     * Acquires the lock of the process and holds it until the returned lease is closed,
+     * so many critical sections can run under one lock without acquiring and releasing it for each of them.
+     * Executions of the same process from the thread holding the lease run right away, the lock is reentrant.
+     * <p>
+     * Usage:
+     * <pre>
+     *  <code>
+     *       Optional&lt;Lease&gt; acquired = threadSynchronization.acquire("processName");
+     *       if (acquired.isPresent()) {
+     *           try (Lease lease = acquired.get()) {
+     *               for (Item item : items) {
+     *                   lease.execute(() -> process(item));
+     *               }
+     *           }
+     *       }
+     *  </code>
+     *  </pre>
+     *
+     * @param processName - The name of the process
+     *                      so it can be synchronized if other thread is trying to execute the same process
+     * @return the lease, or empty if other thread in the same or other node is currently executing the process
+     * @throws ThreadSynchronizationException - Any exception that could be thrown by this library
+     */
+    public Optional<Lease> acquire(String processName) throws ThreadSynchronizationException {
+        return threadProcessor.acquire(processName, Duration.ZERO);
+    }
+
+    /**
+     * Same as {@link #acquire(String)} but when the process is being executed by other thread
+     * waits up to the given timeout for it to finish, instead of returning right away.
+     */
+    public Optional<Lease> acquire(String processName, Duration timeout) throws ThreadSynchronizationException {
+        return threadProcessor.acquire(processName, timeout);
+    }
+
+    /**
+     * Claims up to {@code max} of the candidate processes not currently executed by other thread and holds their
+     * locks until the returned claim is closed. Nodes claiming from the same candidates end up with different
+     * processes each instead of all of them colliding on the same ones, e.g. to spread per-tenant jobs across nodes.
+     * Finding the free candidates takes one database read and acquiring them one write, whatever their number.
+     * <p>
+     * Usage:
+     * <pre>
+     *  <code>
+     *       try (Claim claim = threadSynchronization.claim(tenantIds, 10)) {
+     *           for (String tenantId : claim.getProcessNames()) {
+     *               runJob(tenantId);
+     *           }
+     *       }
+     *  </code>
+     *  </pre>
+     *
+     * @param candidates - The names of the processes that could be claimed
+     * @param max - Maximum number of processes to claim
+     * @return the claim, holding no process if every candidate is executed by other thread
+     * @throws ThreadSynchronizationException - Any exception that could be thrown by this library
+     */
+    public Claim claim(Collection<String> candidates, int max) throws ThreadSynchronizationException {
+        return threadProcessor.claim(candidates, max);
+    }
+
+    /**
+     * Asynchronous version of {@link #execute(String, RunnableCode)}.
+     * Acquiring and releasing the lock is done in the async executor, the common fork join pool by default,
+     * so the calling thread is not blocked by database operations.
+     * <p>
+     * Usage:
+     * <pre>
+     *  <code>
+     *       threadSynchronization.executeAsync("processName", () -> sendReportAsync())
+     *               .thenAccept(executed -> System.out.println(executed));
+     *  </code>
+     *  </pre>
+     *
+     * @param processName - The name of the process
+     *                      so it can be synchronized if other thread is trying to execute the same process
+     * @param asyncRunnableCode - Functional interface
+     *                            The code the process will execute, the lock is held until the returned stage completes
+     * @return CompletableFuture completed with:
+     *          true, if thread process executed.
+     *          false, if other thread in the same or other node is currently executing the process.
+     *          Completed exceptionally with {@link RunnableCodeException} if the code or its stage failed,
+     *          or with {@link ThreadSynchronizationException} if acquiring the lock failed
+     */
+    public CompletableFuture<Boolean> executeAsync(String processName, AsyncRunnableCode asyncRunnableCode) {
+        return threadProcessor.executeAsync(processName, asyncRunnableCode);
+    }
+
+    /**
+     * Same as {@link #executeAsync(String, AsyncRunnableCode)} using the given executor
+     * to acquire and release the lock
+     */
+    public CompletableFuture<Boolean> executeAsync(String processName, AsyncRunnableCode asyncRunnableCode, Executor executor) {
+        return threadProcessor.executeAsync(processName, asyncRunnableCode, executor);
+    }
+
+    /**
+     * Stops the heartbeats, the cleanup, the session heartbeat and the background threads of this instance.
+     * Locks still held are not renewed anymore and expire, or are released once their session expires.
+     * A scheduled executor service given to the builder is left running, the default one is shut down.
+     * Closing more than once has no further effect
+     */
+    @Override
+    public void close() {
+
+        synchronized (readWriteProcessorFactory) {
+            closed = true;
+            if (null != readWriteProcessor) {
+                readWriteProcessor.close();
+                readWriteProcessRepository.close();
+            }
+        }
+
+        threadProcessor.close();
+        cleanupProcessor.close();
+
+        if (null != sessionProcessor) {
+            sessionProcessor.close();
+        }
+
+        if (null != batchingProcessRepository) {
+            batchingProcessRepository.close();
+        }
+
+        mongoProcessRepository.close();
+
+        if (null != ownScheduledExecutorService) {
+            ownScheduledExecutorService.shutdown();
+        }
+
+        contentionTrackers.forEach(ContentionTracker::unregisterMBean);
+
+    }
+
+    /**
+     * Read/write locks live in a collection of their own, only created once used
+     */
+    private ReadWriteProcessor readWriteProcessor() {
+
+        if (null == readWriteProcessor) {
+            synchronized (readWriteProcessorFactory) {
+                if (closed) {
+                    throw new IllegalStateException("Thread synchronization is closed");
+                }
+                if (null == readWriteProcessor) {
+                    readWriteProcessRepository = readWriteProcessRepositoryFactory.get();
+                    readWriteProcessor = readWriteProcessorFactory.apply(readWriteProcessRepository);
+                }
+            }
+        }
+
+        return readWriteProcessor;
+
+    }
+
+    public static final class Builder {
+
+        private final MongoOperations mongoOperations;
+        private Duration cleanupPeriod = DEFAULT_CLEANUP_PERIOD;
+        private Duration cleanupHorizon = DEFAULT_CLEANUP_HORIZON;
+        private LockSettings defaultLockSettings = LockSettings.DEFAULT;
+        private final Map<String, LockSettings> processLockSettings = new HashMap<>();
+        private ScheduledExecutorService scheduledExecutorService;
+        private Executor backgroundExecutor;
+        private Executor asyncExecutor;
+        private boolean sessions;
+        private boolean serverTime;
+        private Duration batchWindow;
+        private int maxBatchSize;
+        private Duration heldLockCacheMaxAge;
+        private final List<LockListener> lockListeners = new ArrayList<>();
+        private final List<ContentionTracker> contentionTrackers = new ArrayList<>();
+        private boolean ownScheduledExecutorService;
+
+        private Builder(MongoOperations mongoOperations) {
+            this.mongoOperations = mongoOperations;
+        }
+
+        /**
+         * @param cleanupPeriod - How often expired locks left behind by stopped processes are removed in the background
+         */
+        public Builder cleanupPeriod(Duration cleanupPeriod) {
+            this.cleanupPeriod = cleanupPeriod;
+            return this;
+        }
+
+        /**
+         * @param cleanupHorizon - Locks whose heartbeat is older than this are deleted by the cleanup.
+         *                         Must be longer than the expiration of every lock and at least one second,
+         *                         the database removes them in whole seconds
+         */
+        public Builder cleanupHorizon(Duration cleanupHorizon) {
+            this.cleanupHorizon = cleanupHorizon;
+            return this;
+        }
+
+        /**
+         * @param lockSettings - Timings of every lock without its own settings
+         */
+        public Builder lockSettings(LockSettings lockSettings) {
+            this.defaultLockSettings = lockSettings;
+            return this;
+        }
+
+        /**
+         * @param processName - The name of the process
+         * @param lockSettings - Timings of the lock of this process.
+         *                       Every node executing the process should use the same settings
+         */
+        public Builder lockSettings(String processName, LockSettings lockSettings) {
+            this.processLockSettings.put(processName, lockSettings);
+            return this;
+        }
+
+        /**
+         * @param scheduledExecutorService - Triggers heartbeats and cleanups.
+         *                                   Defaults to a single daemon thread, shut down on {@link ThreadSynchronization#close()}
+         */
+        public Builder scheduledExecutorService(ScheduledExecutorService scheduledExecutorService) {
+            this.scheduledExecutorService = scheduledExecutorService;
+            return this;
+        }
+
+        /**
+         * @param backgroundExecutor - Runs the heartbeat and cleanup database operations.
+         *                             Defaults to the scheduler thread
+         */
+        public Builder backgroundExecutor(Executor backgroundExecutor) {
+            this.backgroundExecutor = backgroundExecutor;
+            return this;
+        }
+
+        /**
+         * @param asyncExecutor - Acquires and releases the locks of {@link #executeAsync(String, AsyncRunnableCode)}.
+         *                        Defaults to the common fork join pool
+         */
+        public Builder asyncExecutor(Executor asyncExecutor) {
+            this.asyncExecutor = asyncExecutor;
+            return this;
+        }
+
+        /**
+         * Runs background database operations and asynchronous executions in virtual threads
+         *
+         * @throws UnsupportedOperationException - Running on a JVM older than Java 21
+         */
+        public Builder virtualThreads() {
+            Executor virtualThreadExecutor = ProcessorExecutors.virtualThreadExecutor();
+            this.backgroundExecutor = virtualThreadExecutor;
+            this.asyncExecutor = virtualThreadExecutor;
+            return this;
+        }
+
+        /**
+         * Holds the locks through a single session per node instead of one heartbeat per lock.
+         * The session heartbeat is sent every heartbeat interval of the default lock settings and
+         * all the locks of a node are released together once its session expires
+         */
+        public Builder sessions() {
+            this.sessions = true;
+            return this;
+        }
+
+        /**
+         * Stamps heartbeats and checks lock expiration with the clock of the database, {@code $currentDate} and {@code $$NOW},
+         * instead of the clock of each node. Clock skew between nodes no longer lets a node take over a live lock,
+         * so leases and grace factors can be shortened to fail over faster. Requires MongoDB 4.2 and must be
+         * enabled on every node sharing the locks.
+         * <p>
+         * Only the exclusive locks and sessions use the clock of the database, read/write locks, the retention of
+         * {@code executeOnce} and {@link ReactiveThreadSynchronization} still use the clock of each node.
+         * Keep their grace factors large enough for the clock skew
+         */
+        public Builder serverTime() {
+            this.serverTime = true;
+            return this;
+        }
+
+        /**
+         * Gathers lock acquires and releases requested concurrently by many threads into single bulk writes.
+         * Raises lock throughput under bursty load at the cost of up to one window of latency per operation
+         *
+         * @param window - Maximum time an operation waits for others to join its bulk write, such as 1 millisecond
+         * @param maxBatchSize - Bulk writes are sent right away once they gather this many operations
+         */
+        public Builder batchWrites(Duration window, int maxBatchSize) {
+            this.batchWindow = window;
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Remembers the locks seen held by other nodes, executions of those processes are rejected
+         * without asking the database until the lock could have expired, or is released.
+         * Releases are noticed through change streams, without them (e.g. a standalone server) nothing is cached
+         *
+         * @param maxAge - Longest time a lock is remembered as held
+         */
+        public Builder cacheHeldLocks(Duration maxAge) {
+            this.heldLockCacheMaxAge = maxAge;
+            return this;
+        }
+
+        /**
+         * Notifies the lifecycle of the locks: executions, acquire latency and outcome, hold time, heartbeat latency
+         * and lag, failed renewals, takeovers of expired locks, releases and cleanup duration.
+         * Can be called many times, listeners are notified in the order they were added.
+         * Use {@link com.hubbledouble.thread.synchronization.listener.MicrometerLockMetrics} to publish them to micrometer:
+         * <pre>
+         *  <code>
+         *       ThreadSynchronization.builder(mongoOperations)
+         *               .listener(new MicrometerLockMetrics(meterRegistry, name -&gt; name.split("-")[0], 20))
+         *               .build();
+         *  </code>
+         *  </pre>
+         */
+        public Builder listener(LockListener lockListener) {
+            this.lockListeners.add(lockListener);
+            return this;
+        }
+
+        /**
+         * Tracks the most contended processes, with bounded memory no matter how many processes are executed.
+         * The tracker is registered in the platform MBean server and can be queried directly:
+         * <pre>
+         *  <code>
+         *       ContentionTracker contentionTracker = new ContentionTracker();
+         *       ThreadSynchronization threadSynchronization = ThreadSynchronization.builder(mongoOperations)
+         *               .trackContention(contentionTracker)
+         *               .build();
+         *       List&lt;ContendedProcess&gt; worst = contentionTracker.getTopContended(10);
+         *  </code>
+         *  </pre>
+         * The tracker is registered once the thread synchronization is built and unregistered once it's closed.
+         */
+        public Builder trackContention(ContentionTracker contentionTracker) {
+            contentionTrackers.add(contentionTracker);
+            return listener(contentionTracker);
+        }
+
+        /**
+         * Emits JDK Flight Recorder events of executions, acquires, heartbeats and releases,
+         * see {@link com.hubbledouble.thread.synchronization.listener.FlightRecorderLockListener}
+         *
+         * @throws UnsupportedOperationException - Running on a JVM without Flight Recorder
+         */
+        public Builder flightRecorderEvents() {
+
+            try {
+                Class.forName("jdk.jfr.Event");
+            } catch (ClassNotFoundException e) {
+                throw new UnsupportedOperationException("Flight Recorder events require Java 11 or Java 8 update 262 and later", e);
+            }
+
+            return listener(new FlightRecorderLockListener());
+
+        }
+
+        public ThreadSynchronization build() {
+
+            ThreadSynchronization threadSynchronization = new ThreadSynchronization(prepare());
+
+            try {
+                contentionTrackers.forEach(ContentionTracker::registerMBean);
+            } catch (RuntimeException e) {
+                // Stops what was started and unregisters the trackers registered so far
+                threadSynchronization.close();
+                throw e;
+            }
+
+            return threadSynchronization;
+
+        }
+
+        private Builder prepare() {
+
+            if (null != batchWindow && (batchWindow.isNegative() || maxBatchSize < 1)) {
+                throw new IllegalArgumentException("Batch window must not be negative and max batch size must be positive");
+            }
+
+            if (cleanupHorizon.compareTo(Duration.ofSeconds(1)) < 0) {
+                throw new IllegalArgumentException("Cleanup horizon must be at least one second");
+            }
+
+            for (LockSettings lockSettings : lockSettings()) {
+                if (cleanupHorizon.compareTo(lockSettings.getExpiration()) <= 0) {
+                    throw new IllegalArgumentException("Cleanup horizon must be longer than the expiration of every lock");
+                }
+            }
+
+            if (null == scheduledExecutorService) {
+                scheduledExecutorService = ProcessorExecutors.scheduledExecutorService();
+                ownScheduledExecutorService = true;
+            }
+
+            if (null == backgroundExecutor) {
+                backgroundExecutor = ProcessorExecutors.backgroundExecutor();
+            }
+
+            if (null == asyncExecutor) {
+                asyncExecutor = ProcessorExecutors.asyncExecutor();
+            }
+
+            return this;
+
+        }
+
+        private Collection<LockSettings> lockSettings() {
+            Collection<LockSettings> lockSettings = new ArrayList<>(processLockSettings.values());
+            lockSettings.add(defaultLockSettings);
+            return lockSettings;
+        }
+
+    }
+
 }
\ No newline at end of file
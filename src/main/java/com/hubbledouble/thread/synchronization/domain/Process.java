@@ -21,7 +21,11 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.UUID;
 
 /**
@@ -40,6 +44,9 @@ public class Process {
     private String processSourceId;
     private String version;
     private Instant heartbeat;
+    private String sessionId;
+    // Times the lock was acquired since its document was created, more than once means it was taken over
+    private Long generation;
 
     public Process() {
     }
@@ -51,6 +58,22 @@ public class Process {
         setHeartbeat();
     }
 
+    /**
+     * Id of the lock of the process, derived from its name so a release, which only carries the id,
+     * is matched to its process without reading it
+     */
+    public static ObjectId idOf(String processName) {
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(processName.getBytes(StandardCharsets.UTF_8));
+            return new ObjectId(Arrays.copyOf(digest, 12));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform implements SHA-256
+            throw new IllegalStateException(e);
+        }
+
+    }
+
     public ObjectId getId() {
         return id;
     }
@@ -99,4 +122,20 @@ public class Process {
         this.heartbeat = Instant.now();
     }
 
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public Long getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(Long generation) {
+        this.generation = generation;
+    }
+
 }
@@ -0,0 +1,124 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.domain;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collection to store the status of processes synchronized with a read/write lock.
+ * Every holder, readers as well as the writer, keeps its own heartbeat so its hold expires if it stops.
+ *
+ * @author Jorge Saldivar
+ */
+@Document(collection = "hubbleDoubleReadWriteProcess")
+public class ReadWriteProcess {
+
+    @Id
+    private ObjectId id;
+
+    @Indexed(unique = true)
+    private String processName;
+    private List<Holder> readers = new ArrayList<>();
+    private Holder writer;
+    private Holder writerIntent;
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    public void setId(ObjectId id) {
+        this.id = id;
+    }
+
+    public String getProcessName() {
+        return processName;
+    }
+
+    public void setProcessName(String processName) {
+        this.processName = processName;
+    }
+
+    public List<Holder> getReaders() {
+        return readers;
+    }
+
+    public void setReaders(List<Holder> readers) {
+        this.readers = readers;
+    }
+
+    public Holder getWriter() {
+        return writer;
+    }
+
+    public void setWriter(Holder writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Writer waiting for the readers to finish, new readers are rejected meanwhile so writers don't starve
+     */
+    public Holder getWriterIntent() {
+        return writerIntent;
+    }
+
+    public void setWriterIntent(Holder writerIntent) {
+        this.writerIntent = writerIntent;
+    }
+
+    public static class Holder {
+
+        private String processSourceId;
+        private Instant heartbeat;
+
+        public Holder() {
+        }
+
+        public Holder(String processSourceId) {
+            this.processSourceId = processSourceId;
+            setHeartbeat();
+        }
+
+        public String getProcessSourceId() {
+            return processSourceId;
+        }
+
+        public void setProcessSourceId(String processSourceId) {
+            this.processSourceId = processSourceId;
+        }
+
+        public Instant getHeartbeat() {
+            return heartbeat;
+        }
+
+        public void setHeartbeat(Instant heartbeat) {
+            this.heartbeat = heartbeat;
+        }
+
+        public void setHeartbeat() {
+            this.heartbeat = Instant.now();
+        }
+
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Collection to store the liveness of each node holding locks in session mode.
+ * Locks reference the session of their node and expire together with it.
+ *
+ * @author Jorge Saldivar
+ */
+@Document(collection = "hubbleDoubleSession")
+public class Session {
+
+    @Id
+    private String id;
+    private Instant heartbeat;
+
+    public Session() {
+    }
+
+    public Session(String id) {
+        this.id = id;
+        setHeartbeat();
+    }
+
+    public static Session newSession() {
+        return new Session(UUID.randomUUID().toString());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Instant getHeartbeat() {
+        return heartbeat;
+    }
+
+    public void setHeartbeat(Instant heartbeat) {
+        this.heartbeat = heartbeat;
+    }
+
+    public void setHeartbeat() {
+        this.heartbeat = Instant.now();
+    }
+
+}
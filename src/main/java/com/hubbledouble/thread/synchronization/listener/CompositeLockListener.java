@@ -0,0 +1,142 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.listener;
+
+import java.util.List;
+
+/**
+ * Notifies every listener in order
+ *
+ * @author Jorge Saldivar
+ */
+public final class CompositeLockListener implements LockListener {
+
+    private final LockListener[] lockListeners;
+
+    private CompositeLockListener(List<LockListener> lockListeners) {
+        this.lockListeners = lockListeners.toArray(new LockListener[0]);
+    }
+
+    /**
+     * @return a single listener notifying all of them, {@link LockListener#NONE} when there are none
+     */
+    public static LockListener of(List<LockListener> lockListeners) {
+
+        if (lockListeners.isEmpty()) {
+            return NONE;
+        }
+
+        if (lockListeners.size() == 1) {
+            return lockListeners.get(0);
+        }
+
+        return new CompositeLockListener(lockListeners);
+
+    }
+
+    @Override
+    public void onExecuteStart(String processName) {
+        for (LockListener lockListener : lockListeners) {
+            lockListener.onExecuteStart(processName);
+        }
+    }
+
+    @Override
+    public void onExecute(String processName, ExecuteOutcome outcome, long durationInNanos) {
+        for (LockListener lockListener : lockListeners) {
+            lockListener.onExecute(processName, outcome, durationInNanos);
+        }
+    }
+
+    @Override
+    public void onAcquireStart(String processName) {
+        for (LockListener lockListener : lockListeners) {
+            lockListener.onAcquireStart(processName);
+        }
+    }
+
+    @Override
+    public void onAcquire(String processName, AcquireOutcome outcome, long durationInNanos, int roundTrips) {
+        for (LockListener lockListener : lockListeners) {
+            lockListener.onAcquire(processName, outcome, durationInNanos, roundTrips);
+        }
+    }
+
+    @Override
+    public void onHold(String processName, long durationInNanos) {
+        for (LockListener lockListener : lockListeners) {
+            lockListener.onHold(processName, durationInNanos);
+        }
+    }
+
+    @Override
+    public void onTakeover(String processName) {
+        for (LockListener lockListener : lockListeners) {
+            lockListener.onTakeover(processName);
+        }
+    }
+
+    @Override
+    public void onHeartbeatStart(int locks) {
+        for (LockListener lockListener : lockListeners) {
+            lockListener.onHeartbeatStart(locks);
+        }
+    }
+
+    @Override
+    public void onHeartbeat(int locks, boolean succeeded, long durationInNanos) {
+        for (LockListener lockListener : lockListeners) {
+            lockListener.onHeartbeat(locks, succeeded, durationInNanos);
+        }
+    }
+
+    @Override
+    public void onHeartbeatLag(long lagInNanos) {
+        for (LockListener lockListener : lockListeners) {
+            lockListener.onHeartbeatLag(lagInNanos);
+        }
+    }
+
+    @Override
+    public void onRenewalFailure(String processName) {
+        for (LockListener lockListener : lockListeners) {
+            lockListener.onRenewalFailure(processName);
+        }
+    }
+
+    @Override
+    public void onReleaseStart(String processName) {
+        for (LockListener lockListener : lockListeners) {
+            lockListener.onReleaseStart(processName);
+        }
+    }
+
+    @Override
+    public void onRelease(String processName, boolean succeeded, long durationInNanos) {
+        for (LockListener lockListener : lockListeners) {
+            lockListener.onRelease(processName, succeeded, durationInNanos);
+        }
+    }
+
+    @Override
+    public void onCleanup(long durationInNanos) {
+        for (LockListener lockListener : lockListeners) {
+            lockListener.onCleanup(durationInNanos);
+        }
+    }
+
+}
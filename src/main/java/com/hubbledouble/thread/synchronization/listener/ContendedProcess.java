@@ -0,0 +1,86 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.listener;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Contention seen on the lock of a process, as reported by {@link ContentionTracker}.
+ * Counts are upper bounds, they may overestimate the real ones by up to {@link #getError()}
+ *
+ * @author Jorge Saldivar
+ */
+public final class ContendedProcess {
+
+    private final String processName;
+    private final long contentions;
+    private final long error;
+    private final long takeovers;
+    private final long waitTimeInMillis;
+    private final double contentionsPerSecond;
+
+    @ConstructorProperties({"processName", "contentions", "error", "takeovers", "waitTimeInMillis", "contentionsPerSecond"})
+    public ContendedProcess(String processName, long contentions, long error, long takeovers,
+                            long waitTimeInMillis, double contentionsPerSecond) {
+        this.processName = processName;
+        this.contentions = contentions;
+        this.error = error;
+        this.takeovers = takeovers;
+        this.waitTimeInMillis = waitTimeInMillis;
+        this.contentionsPerSecond = contentionsPerSecond;
+    }
+
+    public String getProcessName() {
+        return processName;
+    }
+
+    /**
+     * @return acquires rejected because other process held the lock, plus the retries of acquires waiting for it
+     */
+    public long getContentions() {
+        return contentions;
+    }
+
+    /**
+     * @return how much the counts of this process may be overestimated, inherited from the process it replaced
+     */
+    public long getError() {
+        return error;
+    }
+
+    public long getTakeovers() {
+        return takeovers;
+    }
+
+    /**
+     * @return time spent acquiring the lock while it was contended
+     */
+    public long getWaitTimeInMillis() {
+        return waitTimeInMillis;
+    }
+
+    public double getContentionsPerSecond() {
+        return contentionsPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return processName + ": " + contentions + " contentions (" + contentionsPerSecond + "/s), "
+                + takeovers + " takeovers, " + waitTimeInMillis + "ms waiting";
+    }
+
+}
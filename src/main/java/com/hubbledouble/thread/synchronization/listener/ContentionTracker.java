@@ -0,0 +1,351 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.listener;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LockListener} finding the most contended processes among any number of them with bounded memory.
+ * Counts busy rejections and retries of acquires, takeovers and time spent waiting for locks held by others.
+ * <p>
+ * Processes are kept in a space saving summary of fixed capacity: once full, a new contended process
+ * replaces the least contended one and inherits its count as error. Any process contended more often than
+ * once every {@code capacity} contentions is guaranteed to be tracked, so the top of the list is reliable
+ * while the tail is approximate. Only contended acquires update the summary, uncontended ones return right away.
+ * <p>
+ * Entries are kept in buckets of equal count ordered from the least contended, so both finding the entry to replace
+ * and counting a contention take constant time and the monitor is only held for a few pointer updates.
+ *
+ * @author Jorge Saldivar
+ */
+public class ContentionTracker implements LockListener, ContentionTrackerMXBean {
+
+    private static final int DEFAULT_CAPACITY = 100;
+    private static final String DEFAULT_NAME = "default";
+    private static final String OBJECT_NAME = "com.hubbledouble.thread.synchronization:type=ContentionTracker,name=";
+
+    private final int capacity;
+    private final String name;
+    private final Map<String, Entry> entries;
+    private Bucket leastContended;
+    private long startInNanos;
+    private ObjectName registeredName;
+
+    public ContentionTracker() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity - Maximum number of processes tracked at once, a few times the number of top processes wanted
+     */
+    public ContentionTracker(int capacity) {
+        this(capacity, DEFAULT_NAME);
+    }
+
+    /**
+     * @param capacity - Maximum number of processes tracked at once, a few times the number of top processes wanted
+     * @param name - Name property of the MBean, trackers registered in the same JVM need distinct names
+     */
+    public ContentionTracker(int capacity, String name) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        this.capacity = capacity;
+        this.name = name;
+        this.entries = new HashMap<>();
+        this.startInNanos = System.nanoTime();
+    }
+
+    @Override
+    public void onAcquire(String processName, AcquireOutcome outcome, long durationInNanos, int roundTrips) {
+
+        final long contentions = (AcquireOutcome.BUSY == outcome ? 1 : 0) + Math.max(0, roundTrips - 1);
+
+        if (contentions == 0) {
+            return;
+        }
+
+        synchronized (this) {
+            Entry entry = track(processName, contentions);
+            entry.waitTimeInNanos += durationInNanos;
+        }
+
+    }
+
+    @Override
+    public void onTakeover(String processName) {
+
+        synchronized (this) {
+            track(processName, 0).takeovers++;
+        }
+
+    }
+
+    @Override
+    public List<ContendedProcess> getTopContended() {
+        return getTopContended(capacity);
+    }
+
+    /**
+     * @param limit - Maximum number of processes returned
+     * @return the most contended processes since the last reset, most contended first
+     */
+    public synchronized List<ContendedProcess> getTopContended(int limit) {
+
+        final double seconds = Math.max(1, System.nanoTime() - startInNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort((entry, other) -> Long.compare(other.contentions, entry.contentions));
+
+        List<ContendedProcess> topContended = new ArrayList<>(Math.min(limit, sorted.size()));
+        for (Entry entry : sorted.subList(0, Math.min(limit, sorted.size()))) {
+            topContended.add(new ContendedProcess(
+                    entry.processName,
+                    entry.contentions,
+                    entry.error,
+                    entry.takeovers,
+                    TimeUnit.NANOSECONDS.toMillis(entry.waitTimeInNanos),
+                    entry.contentions / seconds));
+        }
+
+        return topContended;
+
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public synchronized void reset() {
+        entries.clear();
+        leastContended = null;
+        startInNanos = System.nanoTime();
+    }
+
+    /**
+     * Registers this tracker in the platform MBean server under its name, once
+     *
+     * @throws IllegalStateException - Other tracker is registered with the same name
+     */
+    public synchronized void registerMBean() {
+
+        if (null != registeredName) {
+            return;
+        }
+
+        try {
+            ObjectName objectName = new ObjectName(OBJECT_NAME + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registeredName = objectName;
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalStateException("Other contention tracker is registered as " + name + ", give this one other name", e);
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
+    /**
+     * Removes this tracker from the platform MBean server, if registered
+     */
+    public synchronized void unregisterMBean() {
+
+        if (null == registeredName) {
+            return;
+        }
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            mBeanServer.unregisterMBean(registeredName);
+        } catch (InstanceNotFoundException e) {
+            // Empty catch due to the tracker was unregistered by other means
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            registeredName = null;
+        }
+
+    }
+
+    private Entry track(String processName, long contentions) {
+
+        Entry entry = entries.get(processName);
+
+        if (null == entry) {
+
+            entry = new Entry(processName);
+            Bucket searchFrom = null;
+
+            if (entries.size() >= capacity) {
+                // Space saving, the least contended entry is replaced and its count inherited as error
+                Entry replaced = leastContended.first;
+                searchFrom = detach(replaced);
+                entries.remove(replaced.processName);
+                entry.contentions = replaced.contentions;
+                entry.error = replaced.contentions;
+            }
+
+            entries.put(processName, entry);
+            entry.contentions += contentions;
+            attach(entry, searchFrom);
+
+        } else if (contentions > 0) {
+
+            Bucket searchFrom = detach(entry);
+            entry.contentions += contentions;
+            attach(entry, searchFrom);
+
+        }
+
+        return entry;
+
+    }
+
+    /**
+     * @return bucket to search from when the entry is attached again, the least contended one if null
+     */
+    private Bucket detach(Entry entry) {
+
+        Bucket bucket = entry.bucket;
+
+        if (null != entry.previous) {
+            entry.previous.next = entry.next;
+        } else {
+            bucket.first = entry.next;
+        }
+
+        if (null != entry.next) {
+            entry.next.previous = entry.previous;
+        }
+
+        entry.bucket = null;
+        entry.previous = null;
+        entry.next = null;
+
+        if (null != bucket.first) {
+            return bucket;
+        }
+
+        if (null != bucket.previous) {
+            bucket.previous.next = bucket.next;
+        } else {
+            leastContended = bucket.next;
+        }
+
+        if (null != bucket.next) {
+            bucket.next.previous = bucket.previous;
+        }
+
+        return bucket.previous;
+
+    }
+
+    /**
+     * Contentions are counted a few at a time, the bucket of the entry is usually next to the one it left
+     */
+    private void attach(Entry entry, Bucket searchFrom) {
+
+        Bucket previous = searchFrom;
+        Bucket next = null == searchFrom ? leastContended : searchFrom.next;
+
+        if (null != previous && previous.contentions == entry.contentions) {
+            next = previous;
+            previous = next.previous;
+        }
+
+        while (null != next && next.contentions < entry.contentions) {
+            previous = next;
+            next = next.next;
+        }
+
+        Bucket bucket = next;
+
+        if (null == bucket || bucket.contentions != entry.contentions) {
+
+            bucket = new Bucket(entry.contentions);
+            bucket.previous = previous;
+            bucket.next = next;
+
+            if (null != previous) {
+                previous.next = bucket;
+            } else {
+                leastContended = bucket;
+            }
+
+            if (null != next) {
+                next.previous = bucket;
+            }
+
+        }
+
+        entry.bucket = bucket;
+        entry.next = bucket.first;
+        if (null != bucket.first) {
+            bucket.first.previous = entry;
+        }
+        bucket.first = entry;
+
+    }
+
+    private static final class Entry {
+
+        private final String processName;
+        private long contentions;
+        private long error;
+        private long takeovers;
+        private long waitTimeInNanos;
+        private Bucket bucket;
+        private Entry previous;
+        private Entry next;
+
+        private Entry(String processName) {
+            this.processName = processName;
+        }
+
+    }
+
+    /**
+     * Entries with the same number of contentions, linked to the buckets with fewer and more of them
+     */
+    private static final class Bucket {
+
+        private final long contentions;
+        private Entry first;
+        private Bucket previous;
+        private Bucket next;
+
+        private Bucket(long contentions) {
+            this.contentions = contentions;
+        }
+
+    }
+
+}
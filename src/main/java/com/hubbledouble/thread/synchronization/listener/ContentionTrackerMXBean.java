@@ -0,0 +1,43 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.listener;
+
+import java.util.List;
+
+/**
+ * JMX view of the {@link ContentionTracker}
+ *
+ * @author Jorge Saldivar
+ */
+public interface ContentionTrackerMXBean {
+
+    /**
+     * @return the most contended processes since the last reset, most contended first
+     */
+    List<ContendedProcess> getTopContended();
+
+    /**
+     * @return maximum number of processes tracked at once
+     */
+    int getCapacity();
+
+    /**
+     * Forgets every process and starts measuring rates from now
+     */
+    void reset();
+
+}
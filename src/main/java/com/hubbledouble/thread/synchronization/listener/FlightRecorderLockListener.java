@@ -0,0 +1,309 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.listener;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * {@link LockListener} emitting JDK Flight Recorder events of executions, acquires, heartbeats and releases.
+ * Events are only created while a recording enables them, otherwise notifications return right away.
+ * <p>
+ * Requires a JVM with Flight Recorder, Java 11 or Java 8 update 262 and later.
+ * Events begin when their step starts and are committed once it's done, so they have the duration of the step
+ * and recording thresholds apply. Steps without start notification, such as asynchronous executions, are instants
+ *
+ * @author Jorge Saldivar
+ */
+public class FlightRecorderLockListener implements LockListener {
+
+    private static final EventType EXECUTE = EventType.getEventType(ExecuteEvent.class);
+    private static final EventType ACQUIRE = EventType.getEventType(AcquireEvent.class);
+    private static final EventType HEARTBEAT = EventType.getEventType(HeartbeatEvent.class);
+    private static final EventType RELEASE = EventType.getEventType(ReleaseEvent.class);
+
+    /**
+     * Events begun by each thread, a thread can have several steps in progress, e.g. an execution and its acquire
+     */
+    private static final ThreadLocal<Deque<StartedEvent>> STARTED_EVENTS = new ThreadLocal<>();
+
+    @Override
+    public void onExecuteStart(String processName) {
+
+        if (!EXECUTE.isEnabled()) {
+            return;
+        }
+
+        ExecuteEvent event = new ExecuteEvent();
+        event.processName = processName;
+        begin(event, processName);
+
+    }
+
+    @Override
+    public void onExecute(String processName, ExecuteOutcome outcome, long durationInNanos) {
+
+        ExecuteEvent event = (ExecuteEvent) end(ExecuteEvent.class, processName);
+
+        if (null == event) {
+
+            if (!EXECUTE.isEnabled()) {
+                return;
+            }
+
+            event = new ExecuteEvent();
+            event.processName = processName;
+
+        }
+
+        event.outcome = outcome.name();
+        event.commit();
+
+    }
+
+    @Override
+    public void onAcquireStart(String processName) {
+
+        if (!ACQUIRE.isEnabled()) {
+            return;
+        }
+
+        AcquireEvent event = new AcquireEvent();
+        event.processName = processName;
+        begin(event, processName);
+
+    }
+
+    @Override
+    public void onAcquire(String processName, AcquireOutcome outcome, long durationInNanos, int roundTrips) {
+
+        AcquireEvent event = (AcquireEvent) end(AcquireEvent.class, processName);
+
+        if (null == event) {
+
+            if (!ACQUIRE.isEnabled()) {
+                return;
+            }
+
+            event = new AcquireEvent();
+            event.processName = processName;
+
+        }
+
+        event.outcome = outcome.name();
+        event.roundTrips = roundTrips;
+        event.commit();
+
+    }
+
+    @Override
+    public void onHeartbeatStart(int locks) {
+
+        if (!HEARTBEAT.isEnabled()) {
+            return;
+        }
+
+        HeartbeatEvent event = new HeartbeatEvent();
+        event.locks = locks;
+        begin(event, null);
+
+    }
+
+    @Override
+    public void onHeartbeat(int locks, boolean succeeded, long durationInNanos) {
+
+        HeartbeatEvent event = (HeartbeatEvent) end(HeartbeatEvent.class, null);
+
+        if (null == event) {
+
+            if (!HEARTBEAT.isEnabled()) {
+                return;
+            }
+
+            event = new HeartbeatEvent();
+
+        }
+
+        event.locks = locks;
+        event.succeeded = succeeded;
+        event.commit();
+
+    }
+
+    @Override
+    public void onReleaseStart(String processName) {
+
+        if (!RELEASE.isEnabled()) {
+            return;
+        }
+
+        ReleaseEvent event = new ReleaseEvent();
+        event.processName = processName;
+        begin(event, processName);
+
+    }
+
+    @Override
+    public void onRelease(String processName, boolean succeeded, long durationInNanos) {
+
+        ReleaseEvent event = (ReleaseEvent) end(ReleaseEvent.class, processName);
+
+        if (null == event) {
+
+            if (!RELEASE.isEnabled()) {
+                return;
+            }
+
+            event = new ReleaseEvent();
+            event.processName = processName;
+
+        }
+
+        event.succeeded = succeeded;
+        event.commit();
+
+    }
+
+    private static void begin(Event event, String processName) {
+
+        Deque<StartedEvent> startedEvents = STARTED_EVENTS.get();
+
+        if (null == startedEvents) {
+            startedEvents = new ArrayDeque<>();
+            STARTED_EVENTS.set(startedEvents);
+        }
+
+        startedEvents.push(new StartedEvent(event, processName));
+        event.begin();
+
+    }
+
+    /**
+     * Steps of several locks acquired or released together end in any order, the event is looked up by its name.
+     * Still removed when the recording was disabled meanwhile, so nothing is left behind in the thread
+     *
+     * @return the event begun by this thread, or null if the step started while the event was disabled
+     */
+    private static Event end(Class<? extends Event> eventClass, String processName) {
+
+        Deque<StartedEvent> startedEvents = STARTED_EVENTS.get();
+
+        if (null == startedEvents) {
+            return null;
+        }
+
+        for (Iterator<StartedEvent> iterator = startedEvents.iterator(); iterator.hasNext(); ) {
+
+            StartedEvent startedEvent = iterator.next();
+
+            if (eventClass == startedEvent.event.getClass() && Objects.equals(processName, startedEvent.processName)) {
+                iterator.remove();
+                return startedEvent.event;
+            }
+
+        }
+
+        return null;
+
+    }
+
+    private static final class StartedEvent {
+
+        private final Event event;
+        private final String processName;
+
+        private StartedEvent(Event event, String processName) {
+            this.event = event;
+            this.processName = processName;
+        }
+
+    }
+
+    @Name("com.hubbledouble.thread.synchronization.Execute")
+    @Label("Lock Execute")
+    @Category("Thread Synchronization")
+    @Description("Execution of code under a lock, from acquiring the lock to releasing it")
+    @StackTrace(false)
+    static class ExecuteEvent extends Event {
+
+        @Label("Process Name")
+        String processName;
+
+        @Label("Outcome")
+        String outcome;
+
+    }
+
+    @Name("com.hubbledouble.thread.synchronization.Acquire")
+    @Label("Lock Acquire")
+    @Category("Thread Synchronization")
+    @Description("Acquire of a lock in the database, including the wait of acquires with timeout")
+    @StackTrace(false)
+    static class AcquireEvent extends Event {
+
+        @Label("Process Name")
+        String processName;
+
+        @Label("Outcome")
+        String outcome;
+
+        @Label("Round Trips")
+        int roundTrips;
+
+    }
+
+    @Name("com.hubbledouble.thread.synchronization.Heartbeat")
+    @Label("Lock Heartbeat")
+    @Category("Thread Synchronization")
+    @Description("Renewal of the heartbeats due, with a single database call")
+    @StackTrace(false)
+    static class HeartbeatEvent extends Event {
+
+        @Label("Locks")
+        int locks;
+
+        @Label("Succeeded")
+        boolean succeeded;
+
+    }
+
+    @Name("com.hubbledouble.thread.synchronization.Release")
+    @Label("Lock Release")
+    @Category("Thread Synchronization")
+    @Description("Release of a lock in the database")
+    @StackTrace(false)
+    static class ReleaseEvent extends Event {
+
+        @Label("Process Name")
+        String processName;
+
+        @Label("Succeeded")
+        boolean succeeded;
+
+    }
+
+}
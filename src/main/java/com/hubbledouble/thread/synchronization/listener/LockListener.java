@@ -0,0 +1,132 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.listener;
+
+/**
+ * Notified of the lock lifecycle, to record metrics, trace or profile the locks.
+ * Every method does nothing by default, implementations override the ones they need.
+ * <p>
+ * Notifications are sent once each step is done, with its duration, so nothing is allocated
+ * to notify them. Executions, acquires, heartbeats and releases are also notified when they start,
+ * from the thread that later notifies them done, so profilers can measure them as spans.
+ * Asynchronous executions and claims can end on other thread and have no start notification.
+ * <p>
+ * Listeners are called from the threads acquiring and releasing the locks and
+ * from the heartbeat and cleanup threads, they must be thread safe and must not block
+ *
+ * @author Jorge Saldivar
+ */
+public interface LockListener {
+
+    LockListener NONE = new LockListener() {
+    };
+
+    enum ExecuteOutcome {
+        EXECUTED,
+        REJECTED,
+        CODE_FAILED,
+        ERROR
+    }
+
+    enum AcquireOutcome {
+        ACQUIRED,
+        BUSY,
+        ERROR
+    }
+
+    /**
+     * The execution is about to acquire the lock
+     */
+    default void onExecuteStart(String processName) {
+    }
+
+    /**
+     * @param durationInNanos - Time spent in the execution, from acquiring the lock to releasing it
+     */
+    default void onExecute(String processName, ExecuteOutcome outcome, long durationInNanos) {
+    }
+
+    /**
+     * The lock is about to be acquired in the database
+     */
+    default void onAcquireStart(String processName) {
+    }
+
+    /**
+     * @param durationInNanos - Time spent acquiring the lock, including the wait of acquires with timeout
+     * @param roundTrips - Database calls made to acquire the lock, shared with other locks when acquired together
+     */
+    default void onAcquire(String processName, AcquireOutcome outcome, long durationInNanos, int roundTrips) {
+    }
+
+    /**
+     * @param durationInNanos - Time the lock was held, from acquired to released
+     */
+    default void onHold(String processName, long durationInNanos) {
+    }
+
+    /**
+     * The lock was acquired by taking it over from other process whose heartbeat expired
+     */
+    default void onTakeover(String processName) {
+    }
+
+    /**
+     * @param locks - Number of locks about to be renewed together
+     */
+    default void onHeartbeatStart(int locks) {
+    }
+
+    /**
+     * @param locks - Number of locks renewed together
+     * @param durationInNanos - Round trip of the database call renewing them
+     */
+    default void onHeartbeat(int locks, boolean succeeded, long durationInNanos) {
+    }
+
+    /**
+     * @param lagInNanos - How late the heartbeats were sent, from their due time
+     */
+    default void onHeartbeatLag(long lagInNanos) {
+    }
+
+    /**
+     * The heartbeat found the lock no longer held by this process
+     */
+    default void onRenewalFailure(String processName) {
+    }
+
+    /**
+     * The lock is about to be released in the database
+     */
+    default void onReleaseStart(String processName) {
+    }
+
+    /**
+     * @param succeeded - If false the lock is left behind until it expires
+     * @param durationInNanos - Round trip of the database call releasing the lock
+     */
+    default void onRelease(String processName, boolean succeeded, long durationInNanos) {
+    }
+
+    /**
+     * @param durationInNanos - Time spent deleting the expired locks
+     */
+    default void onCleanup(long durationInNanos) {
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.listener;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * {@link LockListener} publishing the lock lifecycle to a micrometer {@link MeterRegistry}.
+ * Requires the micrometer dependency, optional for this library:
+ * <pre>
+ *  <code>
+ *       &lt;dependency&gt;
+ *           &lt;groupId&gt;io.micrometer&lt;/groupId&gt;
+ *           &lt;artifactId&gt;micrometer-core&lt;/artifactId&gt;
+ *       &lt;/dependency&gt;
+ *  </code>
+ * </pre>
+ * Meters of a lock are tagged by the group of its process name instead of the name itself, so locks named
+ * after ids don't create a meter each. Once the maximum number of groups is reached new groups are tagged
+ * {@value #OTHER_GROUP}. Meters of a group are registered once, when the group is first seen.
+ *
+ * @author Jorge Saldivar
+ */
+public class MicrometerLockMetrics implements LockListener {
+
+    public static final String OTHER_GROUP = "other";
+
+    private static final int DEFAULT_MAX_GROUPS = 50;
+    private static final String PREFIX = "thread.synchronization.";
+    private static final String TAG_GROUP = "group";
+    private static final String TAG_OUTCOME = "outcome";
+
+    private final MeterRegistry meterRegistry;
+    private final Function<String, String> processNameGroup;
+    private final int maxGroups;
+    private final Map<String, GroupMeters> groups;
+    private volatile GroupMeters otherGroupMeters;
+    private final Timer heartbeatSucceeded;
+    private final Timer heartbeatFailed;
+    private final Timer heartbeatLag;
+    private final Timer cleanup;
+
+    /**
+     * Every process name is a group of its own, up to {@value #DEFAULT_MAX_GROUPS} of them
+     */
+    public MicrometerLockMetrics(MeterRegistry meterRegistry) {
+        this(meterRegistry, Function.identity(), DEFAULT_MAX_GROUPS);
+    }
+
+    /**
+     * @param processNameGroup - Group of each process name, such as its prefix for names ending with an id
+     * @param maxGroups - Maximum number of distinct groups tagged
+     */
+    public MicrometerLockMetrics(MeterRegistry meterRegistry, Function<String, String> processNameGroup, int maxGroups) {
+        this.meterRegistry = meterRegistry;
+        this.processNameGroup = processNameGroup;
+        this.maxGroups = maxGroups;
+        this.groups = new ConcurrentHashMap<>();
+        this.heartbeatSucceeded = Timer.builder(PREFIX + "heartbeat").tag(TAG_OUTCOME, "succeeded").register(meterRegistry);
+        this.heartbeatFailed = Timer.builder(PREFIX + "heartbeat").tag(TAG_OUTCOME, "failed").register(meterRegistry);
+        this.heartbeatLag = Timer.builder(PREFIX + "heartbeat.lag").register(meterRegistry);
+        this.cleanup = Timer.builder(PREFIX + "cleanup").register(meterRegistry);
+    }
+
+    @Override
+    public void onAcquire(String processName, AcquireOutcome outcome, long durationInNanos, int roundTrips) {
+        groupMeters(processName).acquire.get(outcome).record(durationInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onHold(String processName, long durationInNanos) {
+        groupMeters(processName).hold.record(durationInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onTakeover(String processName) {
+        groupMeters(processName).takeovers.increment();
+    }
+
+    @Override
+    public void onHeartbeat(int locks, boolean succeeded, long durationInNanos) {
+        (succeeded ? heartbeatSucceeded : heartbeatFailed).record(durationInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onHeartbeatLag(long lagInNanos) {
+        heartbeatLag.record(Math.max(0, lagInNanos), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onRenewalFailure(String processName) {
+        groupMeters(processName).renewalFailures.increment();
+    }
+
+    @Override
+    public void onRelease(String processName, boolean succeeded, long durationInNanos) {
+
+        if (!succeeded) {
+            groupMeters(processName).releaseFailures.increment();
+        }
+
+    }
+
+    @Override
+    public void onCleanup(long durationInNanos) {
+        cleanup.record(durationInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Groups seen first are kept, the bound is not exact under concurrent first sightings
+     */
+    private GroupMeters groupMeters(String processName) {
+
+        String group = processNameGroup.apply(processName);
+
+        if (null != group) {
+
+            GroupMeters meters = groups.get(group);
+
+            if (null != meters) {
+                return meters;
+            }
+
+            if (groups.size() < maxGroups) {
+                return groups.computeIfAbsent(group, GroupMeters::new);
+            }
+
+        }
+
+        // Racing first sightings register the same meters, the registry returns the existing ones
+        if (null == otherGroupMeters) {
+            otherGroupMeters = new GroupMeters(OTHER_GROUP);
+        }
+
+        return otherGroupMeters;
+
+    }
+
+    private final class GroupMeters {
+
+        private final Map<AcquireOutcome, Timer> acquire;
+        private final Timer hold;
+        private final Counter takeovers;
+        private final Counter renewalFailures;
+        private final Counter releaseFailures;
+
+        private GroupMeters(String group) {
+
+            this.acquire = new EnumMap<>(AcquireOutcome.class);
+            for (AcquireOutcome outcome : AcquireOutcome.values()) {
+                acquire.put(outcome, Timer.builder(PREFIX + "acquire")
+                        .tag(TAG_GROUP, group)
+                        .tag(TAG_OUTCOME, outcome.name().toLowerCase(Locale.ROOT))
+                        .register(meterRegistry));
+            }
+
+            this.hold = Timer.builder(PREFIX + "hold").tag(TAG_GROUP, group).register(meterRegistry);
+            this.takeovers = Counter.builder(PREFIX + "takeovers").tag(TAG_GROUP, group).register(meterRegistry);
+            this.renewalFailures = Counter.builder(PREFIX + "renewal.failures").tag(TAG_GROUP, group).register(meterRegistry);
+            this.releaseFailures = Counter.builder(PREFIX + "release.failures").tag(TAG_GROUP, group).register(meterRegistry);
+
+        }
+
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.processor;
+
+import com.hubbledouble.thread.synchronization.service.LockService;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cleanup process. Periodically removes expired locks left behind by processes that stopped sending heartbeats,
+ * keeping that work out of the lock acquisition path.
+ *
+ * @author Jorge Saldivar
+ */
+public class CleanupProcessor implements AutoCloseable {
+
+    private final LockService lockService;
+    private final Executor executor;
+    private final AtomicBoolean cleaning;
+    private final ScheduledFuture<?> schedule;
+
+    public CleanupProcessor(LockService lockService, Duration period) {
+        this(lockService, ProcessorExecutors.scheduledExecutorService(), ProcessorExecutors.backgroundExecutor(), period);
+    }
+
+    /**
+     * @param scheduledExecutorService - Triggers the cleanup every period
+     * @param executor - Runs the cleanup database operations
+     */
+    public CleanupProcessor(LockService lockService, ScheduledExecutorService scheduledExecutorService,
+                            Executor executor, Duration period) {
+        this.lockService = lockService;
+        this.executor = executor;
+        this.cleaning = new AtomicBoolean();
+        this.schedule = scheduledExecutorService.scheduleWithFixedDelay(
+                this::triggerCleanup,
+                period.toMillis(),
+                period.toMillis(),
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Stops the cleanups, a cleanup already running completes
+     */
+    @Override
+    public void close() {
+        schedule.cancel(false);
+    }
+
+    private void triggerCleanup() {
+
+        // A cleanup taking longer than the period is not overlapped by the next one
+        if (!cleaning.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(this::cleanup);
+        } catch (Exception e) {
+            cleaning.set(false);
+        }
+
+    }
+
+    private void cleanup() {
+
+        try {
+            lockService.deleteExpiredLocks();
+        } catch (Exception e) {
+            // Empty catch due to the next sweep will retry
+        } finally {
+            cleaning.set(false);
+        }
+
+    }
+
+}
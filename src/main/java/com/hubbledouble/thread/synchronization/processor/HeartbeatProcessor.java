@@ -0,0 +1,238 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.processor;
+
+import com.hubbledouble.thread.synchronization.LockSettings;
+import com.hubbledouble.thread.synchronization.service.LockService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * Heartbeat process. Keeps track of every lock held in this JVM and renews the ones due
+ * with a single call to the {@link LockService} per tick.
+ * Due heartbeats are found through a {@link HeartbeatWheel} so registering, unregistering and ticking
+ * don't depend on the number of locks held.
+ *
+ * @author Jorge Saldivar
+ */
+public class HeartbeatProcessor implements AutoCloseable {
+
+    private static final Duration MINIMUM_TICK = Duration.ofMillis(1);
+
+    private final Function<Map<String, String>, Set<String>> heartbeatOperation;
+    private final LongConsumer heartbeatLagListener;
+    private final Map<String, HeartbeatWheel.Entry> processHeartbeats;
+    private final HeartbeatWheel heartbeatWheel;
+    private final Queue<DueHeartbeats> dueHeartbeats;
+    private final Executor executor;
+    private final AtomicBoolean performingHeartbeats;
+    private final ScheduledFuture<?> schedule;
+
+    public HeartbeatProcessor(LockService lockService, Duration tick) {
+        this(lockService, ProcessorExecutors.scheduledExecutorService(), ProcessorExecutors.backgroundExecutor(), tick);
+    }
+
+    /**
+     * @param scheduledExecutorService - Triggers the heartbeat every tick
+     * @param executor - Runs the heartbeat database operations
+     * @param tick - Resolution of the heartbeats, a heartbeat is sent at most one tick away from its interval
+     */
+    public HeartbeatProcessor(LockService lockService, ScheduledExecutorService scheduledExecutorService,
+                              Executor executor, Duration tick) {
+        this(lockService::performHeartbeats, scheduledExecutorService, executor, tick);
+    }
+
+    /**
+     * @param heartbeats - Renews the given locks, keyed by process name, returning the ones no longer held
+     */
+    public HeartbeatProcessor(Function<Map<String, String>, Set<String>> heartbeats,
+                              ScheduledExecutorService scheduledExecutorService, Executor executor, Duration tick) {
+        this(heartbeats, lag -> {
+        }, scheduledExecutorService, executor, tick);
+    }
+
+    /**
+     * @param heartbeatLagListener - Receives how many nanoseconds late each round of heartbeats is sent
+     */
+    public HeartbeatProcessor(Function<Map<String, String>, Set<String>> heartbeats, LongConsumer heartbeatLagListener,
+                              ScheduledExecutorService scheduledExecutorService, Executor executor, Duration tick) {
+        this.heartbeatOperation = heartbeats;
+        this.heartbeatLagListener = heartbeatLagListener;
+        this.processHeartbeats = new ConcurrentHashMap<>();
+        this.heartbeatWheel = new HeartbeatWheel(tick);
+        this.dueHeartbeats = new ConcurrentLinkedQueue<>();
+        this.executor = executor;
+        this.performingHeartbeats = new AtomicBoolean();
+        this.schedule = scheduledExecutorService.scheduleWithFixedDelay(
+                this::triggerHeartbeats,
+                tick.toNanos(),
+                tick.toNanos(),
+                TimeUnit.NANOSECONDS
+        );
+    }
+
+    /**
+     * @return a tick a tenth of the shortest heartbeat interval, so every heartbeat is sent close to its interval
+     */
+    static Duration tick(LockSettings defaultLockSettings, Collection<LockSettings> processLockSettings) {
+
+        Duration shortest = defaultLockSettings.getHeartbeatInterval();
+
+        for (LockSettings lockSettings : processLockSettings) {
+            if (lockSettings.getHeartbeatInterval().compareTo(shortest) < 0) {
+                shortest = lockSettings.getHeartbeatInterval();
+            }
+        }
+
+        Duration tick = shortest.dividedBy(10);
+        return tick.compareTo(MINIMUM_TICK) < 0 ? MINIMUM_TICK : tick;
+
+    }
+
+    public void register(String processName, String processSourceId, Duration interval) {
+
+        HeartbeatWheel.Entry heartbeat = new HeartbeatWheel.Entry(processName, processSourceId, interval);
+        HeartbeatWheel.Entry previous = processHeartbeats.put(processName, heartbeat);
+
+        if (null != previous) {
+            previous.cancel();
+        }
+
+        heartbeatWheel.schedule(heartbeat);
+
+    }
+
+    public void unregister(String processName) {
+
+        HeartbeatWheel.Entry heartbeat = processHeartbeats.remove(processName);
+
+        if (null != heartbeat) {
+            heartbeat.cancel();
+        }
+
+    }
+
+    /**
+     * Stops the heartbeats, locks still registered expire once their expiration passes
+     */
+    @Override
+    public void close() {
+        schedule.cancel(false);
+    }
+
+    private void triggerHeartbeats() {
+
+        DueHeartbeats due = new DueHeartbeats();
+        heartbeatWheel.expire(System.nanoTime(), heartbeat -> due.add(heartbeat, heartbeatWheel.dueInNanos(heartbeat)));
+
+        if (!due.heartbeats.isEmpty()) {
+            dueHeartbeats.add(due);
+        }
+
+        // A heartbeat taking longer than a tick is not overlapped, due heartbeats wait for the next one
+        if (dueHeartbeats.isEmpty() || !performingHeartbeats.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(this::performHeartbeats);
+        } catch (Exception e) {
+            performingHeartbeats.set(false);
+        }
+
+    }
+
+    private void performHeartbeats() {
+
+        Map<String, HeartbeatWheel.Entry> heartbeats = new HashMap<>();
+        Map<String, String> processSourceIds = new HashMap<>();
+        long earliestDueInNanos = Long.MAX_VALUE;
+        DueHeartbeats due;
+
+        while (null != (due = dueHeartbeats.poll())) {
+            earliestDueInNanos = Math.min(earliestDueInNanos, due.earliestDueInNanos);
+            for (HeartbeatWheel.Entry heartbeat : due.heartbeats) {
+                if (!heartbeat.isCancelled()) {
+                    heartbeats.put(heartbeat.getProcessName(), heartbeat);
+                    processSourceIds.put(heartbeat.getProcessName(), heartbeat.getProcessSourceId());
+                }
+            }
+        }
+
+        try {
+
+            if (heartbeats.isEmpty()) {
+                return;
+            }
+
+            heartbeatLagListener.accept(System.nanoTime() - earliestDueInNanos);
+            Set<String> lostProcesses = heartbeatOperation.apply(processSourceIds);
+
+            heartbeats.forEach((processName, heartbeat) -> {
+
+                if (lostProcesses.contains(processName)) {
+                    // Lock was taken over or removed, stop renewing it unless it was registered again meanwhile
+                    processHeartbeats.remove(processName, heartbeat);
+                    heartbeat.cancel();
+                } else {
+                    heartbeatWheel.schedule(heartbeat);
+                }
+
+            });
+
+        } catch (Exception e) {
+            // The heartbeats are retried on the next tick, still late since their first due time
+            DueHeartbeats retry = new DueHeartbeats();
+            for (HeartbeatWheel.Entry heartbeat : heartbeats.values()) {
+                retry.add(heartbeat, earliestDueInNanos);
+            }
+            dueHeartbeats.add(retry);
+        } finally {
+            performingHeartbeats.set(false);
+        }
+
+    }
+
+    private static final class DueHeartbeats {
+
+        private final List<HeartbeatWheel.Entry> heartbeats = new ArrayList<>();
+        private long earliestDueInNanos = Long.MAX_VALUE;
+
+        private void add(HeartbeatWheel.Entry heartbeat, long dueInNanos) {
+            heartbeats.add(heartbeat);
+            earliestDueInNanos = Math.min(earliestDueInNanos, dueInNanos);
+        }
+
+    }
+
+}
@@ -0,0 +1,214 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.processor;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel of heartbeats. Scheduling and cancelling a heartbeat is O(1) no matter
+ * how many locks are held, and a heartbeat entry is reused every time its lock is renewed.
+ * <p>
+ * Heartbeats can be scheduled and cancelled from any thread,
+ * expiring them must always be done by the same thread, the one triggering the ticks.
+ *
+ * @author Jorge Saldivar
+ */
+class HeartbeatWheel {
+
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final long tickInNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final long startInNanos;
+    private final Queue<Entry> scheduledEntries;
+    private long tick;
+
+    HeartbeatWheel(Duration tick) {
+        this(tick, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param wheelSize - Number of buckets, rounded up to a power of two
+     */
+    HeartbeatWheel(Duration tick, int wheelSize) {
+        this.tickInNanos = tick.toNanos();
+        this.buckets = new Bucket[Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.mask = buckets.length - 1;
+        this.startInNanos = System.nanoTime();
+        this.scheduledEntries = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Schedules the entry to expire one interval from now. Entries are added to the wheel on the next tick.
+     */
+    void schedule(Entry entry) {
+        entry.deadlineInNanos = System.nanoTime() - startInNanos + entry.intervalInNanos;
+        scheduledEntries.add(entry);
+    }
+
+    /**
+     * Passes every entry whose deadline was reached to the consumer, going through all ticks elapsed since last call
+     */
+    void expire(long nowInNanos, Consumer<Entry> expiredEntries) {
+
+        final long currentTick = (nowInNanos - startInNanos) / tickInNanos;
+
+        while (tick <= currentTick) {
+            addScheduledEntries();
+            buckets[(int) (tick & mask)].expire(expiredEntries);
+            tick++;
+        }
+
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} the entry was due, only valid from the thread expiring the wheel
+     */
+    long dueInNanos(Entry entry) {
+        return startInNanos + entry.deadlineInNanos;
+    }
+
+    private void addScheduledEntries() {
+
+        Entry entry;
+
+        while (null != (entry = scheduledEntries.poll())) {
+
+            if (entry.cancelled) {
+                continue;
+            }
+
+            long deadlineTick = entry.deadlineInNanos / tickInNanos;
+            entry.remainingRounds = Math.max(0, (deadlineTick - tick) / buckets.length);
+            buckets[(int) (Math.max(deadlineTick, tick) & mask)].add(entry);
+
+        }
+
+    }
+
+    static final class Entry {
+
+        private final String processName;
+        private final String processSourceId;
+        private final long intervalInNanos;
+        private volatile boolean cancelled;
+
+        // Accessed only by the thread expiring the wheel
+        private long deadlineInNanos;
+        private long remainingRounds;
+        private Entry next;
+        private Entry previous;
+
+        Entry(String processName, String processSourceId, Duration interval) {
+            this.processName = processName;
+            this.processSourceId = processSourceId;
+            this.intervalInNanos = interval.toNanos();
+        }
+
+        String getProcessName() {
+            return processName;
+        }
+
+        String getProcessSourceId() {
+            return processSourceId;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Cancelled entries are unlinked from the wheel when their bucket is reached
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+    }
+
+    private static final class Bucket {
+
+        private Entry head;
+        private Entry tail;
+
+        private void add(Entry entry) {
+
+            entry.next = null;
+            entry.previous = tail;
+
+            if (null == tail) {
+                head = entry;
+            } else {
+                tail.next = entry;
+            }
+
+            tail = entry;
+
+        }
+
+        private void expire(Consumer<Entry> expiredEntries) {
+
+            Entry entry = head;
+
+            while (null != entry) {
+
+                Entry next = entry.next;
+
+                if (entry.cancelled) {
+                    remove(entry);
+                } else if (entry.remainingRounds <= 0) {
+                    remove(entry);
+                    expiredEntries.accept(entry);
+                } else {
+                    entry.remainingRounds--;
+                }
+
+                entry = next;
+
+            }
+
+        }
+
+        private void remove(Entry entry) {
+
+            if (null == entry.previous) {
+                head = entry.next;
+            } else {
+                entry.previous.next = entry.next;
+            }
+
+            if (null == entry.next) {
+                tail = entry.previous;
+            } else {
+                entry.next.previous = entry.previous;
+            }
+
+            entry.next = null;
+            entry.previous = null;
+
+        }
+
+    }
+
+}
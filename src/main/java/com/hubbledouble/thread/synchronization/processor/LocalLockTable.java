@@ -0,0 +1,159 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.processor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local lock table. Keeps the process names currently executed in this JVM so contenders
+ * from the same JVM are rejected, or queued, without going to the database.
+ * Locks are reentrant, the owner can lock again the process it holds and must unlock it as many times.
+ *
+ * @author Jorge Saldivar
+ */
+public class LocalLockTable {
+
+    private final ConcurrentMap<String, LocalLock> processLocks;
+
+    public LocalLockTable() {
+        this.processLocks = new ConcurrentHashMap<>();
+    }
+
+    public boolean tryLock(String processName, Object owner) {
+
+        try {
+            return tryLock(processName, owner, 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+    }
+
+    public boolean tryLock(String processName, Object owner, long timeoutNanos) throws InterruptedException {
+
+        LocalLock localLock = reference(processName);
+        boolean locked = false;
+
+        try {
+
+            synchronized (localLock) {
+
+                if (owner == localLock.owner) {
+                    localLock.holds++;
+                    locked = true;
+                    return true;
+                }
+
+                final long deadline = System.nanoTime() + timeoutNanos;
+                long remaining = timeoutNanos;
+
+                while (null != localLock.owner) {
+
+                    if (remaining <= 0) {
+                        return false;
+                    }
+
+                    TimeUnit.NANOSECONDS.timedWait(localLock, remaining);
+                    remaining = deadline - System.nanoTime();
+
+                }
+
+                localLock.owner = owner;
+                localLock.holds = 1;
+                locked = true;
+                return true;
+
+            }
+
+        } finally {
+
+            if (!locked) {
+                dereference(processName);
+            }
+
+        }
+
+    }
+
+    public void unlock(String processName, Object owner) {
+
+        LocalLock localLock = processLocks.get(processName);
+
+        if (null == localLock) {
+            return;
+        }
+
+        synchronized (localLock) {
+
+            if (owner != localLock.owner) {
+                return;
+            }
+
+            if (--localLock.holds == 0) {
+                localLock.owner = null;
+                localLock.notify();
+            }
+
+        }
+
+        dereference(processName);
+
+    }
+
+    public boolean isLockedBy(String processName, Object owner) {
+
+        LocalLock localLock = processLocks.get(processName);
+
+        if (null == localLock) {
+            return false;
+        }
+
+        synchronized (localLock) {
+            return owner == localLock.owner;
+        }
+
+    }
+
+    /**
+     * Entries stay in the table while they are owned or waited on, so every thread synchronizes on the same lock
+     */
+    private LocalLock reference(String processName) {
+
+        return processLocks.compute(processName, (name, localLock) -> {
+            LocalLock referenced = null == localLock ? new LocalLock() : localLock;
+            referenced.references++;
+            return referenced;
+        });
+
+    }
+
+    private void dereference(String processName) {
+        processLocks.computeIfPresent(processName, (name, localLock) -> --localLock.references == 0 ? null : localLock);
+    }
+
+    private static final class LocalLock {
+
+        private Object owner;
+        private int holds;
+        private int references;
+
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.processor;
+
+import com.hubbledouble.thread.synchronization.Claim;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link Claim} of the locks acquired by the {@link ThreadProcessor}
+ *
+ * @author Jorge Saldivar
+ */
+final class ProcessClaim implements Claim {
+
+    private final ThreadProcessor threadProcessor;
+    private final Set<String> processNames;
+    private final String processSourceId;
+    private final Object owner;
+    private final long claimedAt;
+    private final AtomicBoolean closed;
+
+    ProcessClaim(ThreadProcessor threadProcessor, Set<String> processNames, String processSourceId, Object owner, long claimedAt) {
+        this.threadProcessor = threadProcessor;
+        this.processNames = Collections.unmodifiableSet(new LinkedHashSet<>(processNames));
+        this.processSourceId = processSourceId;
+        this.owner = owner;
+        this.claimedAt = claimedAt;
+        this.closed = new AtomicBoolean();
+    }
+
+    @Override
+    public Set<String> getProcessNames() {
+        return processNames;
+    }
+
+    @Override
+    public void close() {
+
+        if (closed.compareAndSet(false, true) && !processNames.isEmpty()) {
+            threadProcessor.releaseClaim(processNames, processSourceId, owner, claimedAt);
+        }
+
+    }
+
+}
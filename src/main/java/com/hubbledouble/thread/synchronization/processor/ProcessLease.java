@@ -0,0 +1,84 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.processor;
+
+import com.hubbledouble.thread.synchronization.Lease;
+import com.hubbledouble.thread.synchronization.RunnableCode;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link Lease} of a lock acquired by the {@link ThreadProcessor}.
+ * A lease acquired while its thread already holds the lock is reentrant, it neither heartbeats nor releases
+ * the lock in the database, it only gives back its hold once closed.
+ *
+ * @author Jorge Saldivar
+ */
+final class ProcessLease implements Lease {
+
+    private final ThreadProcessor threadProcessor;
+    private final String processName;
+    private final String processSourceId;
+    private final Object owner;
+    private final boolean reentrant;
+    private final AtomicBoolean closed;
+
+    ProcessLease(ThreadProcessor threadProcessor, String processName, String processSourceId,
+                 Object owner, boolean reentrant) {
+        this.threadProcessor = threadProcessor;
+        this.processName = processName;
+        this.processSourceId = processSourceId;
+        this.owner = owner;
+        this.reentrant = reentrant;
+        this.closed = new AtomicBoolean();
+    }
+
+    @Override
+    public String getProcessName() {
+        return processName;
+    }
+
+    @Override
+    public boolean renew() {
+        checkOpen();
+        return threadProcessor.renewLease(processName, processSourceId);
+    }
+
+    @Override
+    public void execute(RunnableCode runnableCode) {
+        checkOpen();
+        threadProcessor.executeLeased(runnableCode);
+    }
+
+    @Override
+    public void close() {
+
+        if (closed.compareAndSet(false, true)) {
+            threadProcessor.releaseLease(processName, processSourceId, owner, reentrant);
+        }
+
+    }
+
+    private void checkOpen() {
+
+        if (closed.get()) {
+            throw new IllegalStateException("Lease of process " + processName + " is closed");
+        }
+
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.processor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Default executors used by the processors when none are provided
+ *
+ * @author Jorge Saldivar
+ */
+public final class ProcessorExecutors {
+
+    private ProcessorExecutors() {
+    }
+
+    /**
+     * Single daemon thread scheduling heartbeats and cleanup, so it never prevents the JVM from shutting down
+     */
+    public static ScheduledExecutorService scheduledExecutorService() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "thread-synchronization-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs background database operations in the scheduler thread itself
+     */
+    public static Executor backgroundExecutor() {
+        return Runnable::run;
+    }
+
+    public static Executor asyncExecutor() {
+        return ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Executor starting a new virtual thread per task. Looked up at runtime so the library still runs on Java 8.
+     *
+     * @throws UnsupportedOperationException - Running on a JVM older than Java 21
+     */
+    public static ExecutorService virtualThreadExecutor() {
+
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+        }
+
+    }
+
+}
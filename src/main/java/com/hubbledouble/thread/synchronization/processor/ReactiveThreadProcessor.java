@@ -0,0 +1,139 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.processor;
+
+import com.hubbledouble.thread.synchronization.LockSettings;
+import com.hubbledouble.thread.synchronization.exception.RunnableCodeException;
+import com.hubbledouble.thread.synchronization.exception.ThreadSynchronizationException;
+import com.hubbledouble.thread.synchronization.service.ReactiveLockService;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Non blocking thread process. Same as {@link ThreadProcessor} built on reactive streams,
+ * heartbeats are driven by the reactor scheduler so holding a lock doesn't block any thread.
+ *
+ * @author Jorge Saldivar
+ */
+public class ReactiveThreadProcessor {
+
+    private final ReactiveLockService reactiveLockService;
+    private final LocalLockTable localLockTable;
+    private final LockSettings defaultLockSettings;
+    private final Map<String, LockSettings> processLockSettings;
+    private static final String JVM_NAME = ManagementFactory.getRuntimeMXBean().getName();
+
+    public ReactiveThreadProcessor(ReactiveLockService reactiveLockService) {
+        this(reactiveLockService, LockSettings.DEFAULT);
+    }
+
+    public ReactiveThreadProcessor(ReactiveLockService reactiveLockService, LockSettings lockSettings) {
+        this(reactiveLockService, lockSettings, Collections.emptyMap());
+    }
+
+    /**
+     * @param defaultLockSettings - Timings of every lock without settings of its own
+     * @param processLockSettings - Timings of specific locks, keyed by process name
+     */
+    public ReactiveThreadProcessor(ReactiveLockService reactiveLockService, LockSettings defaultLockSettings,
+                                   Map<String, LockSettings> processLockSettings) {
+        this.reactiveLockService = reactiveLockService;
+        this.localLockTable = new LocalLockTable();
+        this.defaultLockSettings = defaultLockSettings;
+        this.processLockSettings = new HashMap<>(processLockSettings);
+    }
+
+    public Mono<Boolean> execute(String processName, Supplier<Mono<?>> code) {
+
+        return Mono.defer(() -> {
+
+            final Object owner = new Object();
+
+            // Other subscriber in this JVM is executing the process, no need to ask the database
+            if (!localLockTable.tryLock(processName, owner)) {
+                return Mono.just(false);
+            }
+
+            final String processSourceId = getSourceId();
+            final LockSettings lockSettings = getLockSettings(processName);
+
+            return reactiveLockService
+                    .acquireLock(processName, processSourceId, lockSettings.getExpiration())
+                    .onErrorMap(ThreadSynchronizationException::new)
+                    .flatMap(acquired -> acquired ?
+                            Mono.usingWhen(
+                                    Mono.fromSupplier(() -> startHeartbeat(processName, processSourceId, lockSettings.getHeartbeatInterval())),
+                                    heartbeat -> codeExecution(code),
+                                    heartbeat -> releaseLock(processName, processSourceId, heartbeat),
+                                    (heartbeat, throwable) -> releaseLock(processName, processSourceId, heartbeat),
+                                    heartbeat -> releaseLock(processName, processSourceId, heartbeat)) :
+                            Mono.just(false))
+                    .doFinally(signalType -> localLockTable.unlock(processName, owner));
+
+        });
+
+    }
+
+    private Disposable startHeartbeat(String processName, String processSourceId, Duration heartbeatInterval) {
+
+        return Flux.interval(heartbeatInterval)
+                .concatMap(tick -> reactiveLockService
+                        .performHeartbeat(processName, processSourceId)
+                        // Empty resume due to the next heartbeat will retry, an error would end the interval
+                        .onErrorResume(e -> Mono.empty()))
+                .subscribe();
+
+    }
+
+    private Mono<Boolean> codeExecution(Supplier<Mono<?>> code) {
+
+        return Mono.defer(code)
+                .onErrorMap(RunnableCodeException::new)
+                .then(Mono.just(true));
+
+    }
+
+    private Mono<Void> releaseLock(String processName, String processSourceId, Disposable heartbeat) {
+
+        return Mono.defer(() -> {
+            heartbeat.dispose();
+            return reactiveLockService.releaseLock(processName, processSourceId);
+        });
+
+    }
+
+    private LockSettings getLockSettings(String processName) {
+        return processLockSettings.getOrDefault(processName, defaultLockSettings);
+    }
+
+    /**
+     * Executions are not bound to a thread, every execution gets its own source id
+     */
+    private String getSourceId() {
+        return JVM_NAME + "-" + UUID.randomUUID();
+    }
+
+}
@@ -0,0 +1,412 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.processor;
+
+import com.hubbledouble.thread.synchronization.LockSettings;
+import com.hubbledouble.thread.synchronization.RunnableCode;
+import com.hubbledouble.thread.synchronization.exception.RunnableCodeException;
+import com.hubbledouble.thread.synchronization.exception.ThreadSynchronizationException;
+import com.hubbledouble.thread.synchronization.service.ReadWriteLockService;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Read/write process. Readers of a process run in parallel across all nodes while writers run alone.
+ * <p>
+ * Readers of the same JVM share a single read hold in the database, acquired by the first reader
+ * and released by the last one. Once a writer is waiting, notified by the database or found on the read heartbeats,
+ * new readers are rejected so the writer is not starved.
+ *
+ * @author Jorge Saldivar
+ */
+public class ReadWriteProcessor implements AutoCloseable {
+
+    private static final String JVM_NAME = ManagementFactory.getRuntimeMXBean().getName();
+
+    private final ReadWriteLockService readWriteLockService;
+    private final HeartbeatProcessor readHeartbeatProcessor;
+    private final HeartbeatProcessor writeHeartbeatProcessor;
+    private final LocalLockTable localWriteLocks;
+    private final ConcurrentMap<String, LocalReaders> localReaders;
+    private final Executor backgroundExecutor;
+    private final LockSettings defaultLockSettings;
+    private final Map<String, LockSettings> processLockSettings;
+    private final String readerSourceId;
+
+    public ReadWriteProcessor(ReadWriteLockService readWriteLockService) {
+        this(readWriteLockService, ProcessorExecutors.scheduledExecutorService(), ProcessorExecutors.backgroundExecutor(),
+                LockSettings.DEFAULT, Collections.emptyMap());
+    }
+
+    /**
+     * @param scheduledExecutorService - Triggers the heartbeats
+     * @param backgroundExecutor - Runs the heartbeat database operations
+     * @param defaultLockSettings - Timings of every lock without its own settings
+     * @param processLockSettings - Timings of specific locks, keyed by process name
+     */
+    public ReadWriteProcessor(ReadWriteLockService readWriteLockService, ScheduledExecutorService scheduledExecutorService,
+                              Executor backgroundExecutor, LockSettings defaultLockSettings,
+                              Map<String, LockSettings> processLockSettings) {
+        this.readWriteLockService = readWriteLockService;
+        this.defaultLockSettings = defaultLockSettings;
+        this.processLockSettings = new HashMap<>(processLockSettings);
+        Duration heartbeatTick = HeartbeatProcessor.tick(defaultLockSettings, processLockSettings.values());
+        this.readHeartbeatProcessor =
+                new HeartbeatProcessor(this::performReadHeartbeats, scheduledExecutorService, backgroundExecutor, heartbeatTick);
+        this.writeHeartbeatProcessor =
+                new HeartbeatProcessor(readWriteLockService::performWriteHeartbeats, scheduledExecutorService, backgroundExecutor, heartbeatTick);
+        this.localWriteLocks = new LocalLockTable();
+        this.localReaders = new ConcurrentHashMap<>();
+        this.backgroundExecutor = backgroundExecutor;
+        this.readerSourceId = JVM_NAME + "-" + UUID.randomUUID();
+        readWriteLockService.watchWaitingWriters(this::triggerWaitingWritersCheck);
+    }
+
+    public boolean executeRead(String processName, RunnableCode runnableCode) {
+
+        // The writer reads what it's writing without a read hold of its own
+        if (localWriteLocks.isLockedBy(processName, Thread.currentThread())) {
+            RunnableCodes.execute(runnableCode);
+            return true;
+        }
+
+        if (!joinReaders(processName)) {
+            return false;
+        }
+
+        try {
+            RunnableCodes.execute(runnableCode);
+            return true;
+        } finally {
+            leaveReaders(processName);
+        }
+
+    }
+
+    public boolean executeWrite(String processName, Duration timeout, RunnableCode runnableCode) {
+
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        final Thread owner = Thread.currentThread();
+        final boolean reentrant = localWriteLocks.isLockedBy(processName, owner);
+
+        if (!tryLocalWriteLock(processName, owner, timeout)) {
+            return false;
+        }
+
+        if (reentrant) {
+
+            try {
+                RunnableCodes.execute(runnableCode);
+                return true;
+            } finally {
+                localWriteLocks.unlock(processName, owner);
+            }
+
+        }
+
+        final String processSourceId = JVM_NAME + "-" + owner.getId();
+        final LockSettings lockSettings = getLockSettings(processName);
+        boolean acquired = false;
+
+        try {
+
+            if (readWriteLockService.acquireWriteLock(processName, processSourceId, lockSettings.getExpiration(),
+                    Duration.ofNanos(Math.max(0, deadline - System.nanoTime())))) {
+
+                acquired = true;
+                writeHeartbeatProcessor.register(processName, processSourceId, lockSettings.getHeartbeatInterval());
+
+                RunnableCodes.execute(runnableCode);
+
+                return true;
+
+            }
+
+        } catch (RunnableCodeException e) {
+
+            throw e;
+
+        } catch (Exception e) {
+
+            throw new ThreadSynchronizationException(e);
+
+        } finally {
+
+            if (acquired) {
+                writeHeartbeatProcessor.unregister(processName);
+                readWriteLockService.releaseWriteLock(processName, processSourceId);
+            }
+
+            localWriteLocks.unlock(processName, owner);
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Stops the read and write heartbeats, holds still taken expire once their expiration passes
+     */
+    @Override
+    public void close() {
+        readHeartbeatProcessor.close();
+        writeHeartbeatProcessor.close();
+    }
+
+    /**
+     * The database is called outside of the monitor of the readers, so readers joining a hold already
+     * taken don't wait for it. Only readers arriving while the hold is being acquired or released wait for the outcome
+     */
+    private boolean joinReaders(String processName) {
+
+        final LocalReaders readers = localReaders.compute(processName, (name, localReader) -> {
+            LocalReaders referenced = null == localReader ? new LocalReaders() : localReader;
+            referenced.references++;
+            return referenced;
+        });
+
+        synchronized (readers) {
+
+            while (readers.changing) {
+                try {
+                    readers.wait();
+                } catch (InterruptedException e) {
+                    dereference(processName);
+                    Thread.currentThread().interrupt();
+                    throw new ThreadSynchronizationException(e);
+                }
+            }
+
+            if (readers.holders > 0) {
+
+                if (readers.draining) {
+                    dereference(processName);
+                    return false;
+                }
+
+                readers.holders++;
+                return true;
+
+            }
+
+            readers.changing = true;
+
+        }
+
+        final LockSettings lockSettings = getLockSettings(processName);
+        boolean acquired = false;
+
+        try {
+            acquired = readWriteLockService.acquireReadLock(processName, readerSourceId, lockSettings.getExpiration());
+        } catch (Exception e) {
+            throw new ThreadSynchronizationException(e);
+        } finally {
+
+            synchronized (readers) {
+
+                if (acquired) {
+                    readers.holders = 1;
+                    readHeartbeatProcessor.register(processName, readerSourceId, lockSettings.getHeartbeatInterval());
+                }
+
+                readers.changing = false;
+                readers.notifyAll();
+
+            }
+
+            if (!acquired) {
+                dereference(processName);
+            }
+
+        }
+
+        return acquired;
+
+    }
+
+    /**
+     * The hold is released as soon as the last reader of this JVM leaves, outside of the monitor of the readers
+     */
+    private void leaveReaders(String processName) {
+
+        final LocalReaders readers = localReaders.get(processName);
+        final boolean last;
+
+        synchronized (readers) {
+
+            last = --readers.holders == 0;
+
+            if (last) {
+                readers.draining = false;
+                readers.changing = true;
+                readHeartbeatProcessor.unregister(processName);
+            }
+
+        }
+
+        if (last) {
+
+            try {
+                readWriteLockService.releaseReadLock(processName, readerSourceId);
+            } finally {
+                synchronized (readers) {
+                    readers.changing = false;
+                    readers.notifyAll();
+                }
+            }
+
+        }
+
+        dereference(processName);
+
+    }
+
+    private void dereference(String processName) {
+        localReaders.computeIfPresent(processName, (name, readers) -> --readers.references == 0 ? null : readers);
+    }
+
+    private Set<String> performReadHeartbeats(Map<String, String> processSourceIds) {
+
+        Set<String> lostProcesses = readWriteLockService.performReadHeartbeats(processSourceIds);
+        Set<String> drainingProcesses = new HashSet<>(lostProcesses);
+        drainingProcesses.addAll(findWaitingWriters(processSourceIds.keySet()));
+        drain(drainingProcesses);
+
+        return lostProcesses;
+
+    }
+
+    private void triggerWaitingWritersCheck() {
+
+        try {
+            backgroundExecutor.execute(this::checkWaitingWriters);
+        } catch (Exception e) {
+            // Empty catch due to the next read heartbeat looks for waiting writers too
+        }
+
+    }
+
+    /**
+     * A writer started waiting somewhere, readers of this JVM stop joining its hold right away
+     * instead of on the next read heartbeat
+     */
+    private void checkWaitingWriters() {
+
+        Set<String> readProcesses = new HashSet<>();
+
+        localReaders.forEach((processName, readers) -> {
+            synchronized (readers) {
+                if (readers.holders > 0 && !readers.draining) {
+                    readProcesses.add(processName);
+                }
+            }
+        });
+
+        if (readProcesses.isEmpty()) {
+            return;
+        }
+
+        try {
+            drain(findWaitingWriters(readProcesses));
+        } catch (Exception e) {
+            // Empty catch due to the next read heartbeat looks for waiting writers too
+        }
+
+    }
+
+    /**
+     * Writer intents expire with the settings of their process, one query per distinct expiration
+     */
+    private Set<String> findWaitingWriters(Collection<String> readProcesses) {
+
+        Map<Duration, Set<String>> processNamesByExpiration = new HashMap<>();
+        for (String processName : readProcesses) {
+            processNamesByExpiration.computeIfAbsent(getLockSettings(processName).getExpiration(), expiration -> new HashSet<>())
+                    .add(processName);
+        }
+
+        Set<String> waitingWriters = new HashSet<>();
+        processNamesByExpiration.forEach((expiration, processNames) ->
+                waitingWriters.addAll(readWriteLockService.findWaitingWriters(processNames, expiration)));
+
+        return waitingWriters;
+
+    }
+
+    /**
+     * Readers already running finish, new ones can't join a hold that is lost or wanted by a writer
+     */
+    private void drain(Set<String> drainingProcesses) {
+
+        for (String processName : drainingProcesses) {
+
+            LocalReaders readers = localReaders.get(processName);
+
+            if (null != readers) {
+                synchronized (readers) {
+                    readers.draining = readers.holders > 0;
+                }
+            }
+
+        }
+
+    }
+
+    private boolean tryLocalWriteLock(String processName, Object owner, Duration timeout) {
+
+        try {
+            return localWriteLocks.tryLock(processName, owner, timeout.toNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ThreadSynchronizationException(e);
+        }
+
+    }
+
+    private LockSettings getLockSettings(String processName) {
+        return processLockSettings.getOrDefault(processName, defaultLockSettings);
+    }
+
+    /**
+     * Readers of a process in this JVM, entries stay in the map while referenced so every thread synchronizes on the same one
+     */
+    private static final class LocalReaders {
+
+        private int holders;
+        private int references;
+        private boolean draining;
+        /**
+         * The hold is being acquired or released in the database
+         */
+        private boolean changing;
+
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.hubbledouble.thread.synchronization.processor;
+
+import com.hubbledouble.thread.synchronization.RunnableCode;
+import com.hubbledouble.thread.synchronization.exception.RunnableCodeException;
+
+/**
+ * Runs the code of the executions, shared by the processors so its failures are wrapped the same way
+ *
+ * @author Jorge Saldivar
+ */
+final class RunnableCodes {
+
+    private RunnableCodes() {
+    }
+
+    /**
+     * @throws RunnableCodeException - The code failed, wrapped once no matter how many executions are nested
+     */
+    static void execute(RunnableCode runnableCode) {
+
+        try {
+            runnableCode.execute();
+        } catch (RunnableCodeException e) {
+            // Code of a nested execution failed, it's already wrapped
+            throw e;
+        } catch (Exception e) {
+            throw new RunnableCodeException(e);
+        }
+
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.processor;
+
+import com.hubbledouble.thread.synchronization.service.LockService;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Session process. Periodically sends the heartbeat of the session of this node,
+ * one write per period no matter how many locks are held, and releases the locks of expired sessions.
+ *
+ * @author Jorge Saldivar
+ */
+public class SessionProcessor implements AutoCloseable {
+
+    private final LockService lockService;
+    private final Executor executor;
+    private final AtomicBoolean performingHeartbeat;
+    private final ScheduledFuture<?> schedule;
+
+    public SessionProcessor(LockService lockService, Duration period) {
+        this(lockService, ProcessorExecutors.scheduledExecutorService(), ProcessorExecutors.backgroundExecutor(), period);
+    }
+
+    /**
+     * @param scheduledExecutorService - Triggers the session heartbeat every period
+     * @param executor - Runs the session database operations
+     */
+    public SessionProcessor(LockService lockService, ScheduledExecutorService scheduledExecutorService,
+                            Executor executor, Duration period) {
+        this.lockService = lockService;
+        this.executor = executor;
+        this.performingHeartbeat = new AtomicBoolean();
+        this.schedule = scheduledExecutorService.scheduleWithFixedDelay(
+                this::triggerHeartbeat,
+                0,
+                period.toMillis(),
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Stops the session heartbeats, the session expires unless other processor keeps it alive
+     */
+    @Override
+    public void close() {
+        schedule.cancel(false);
+    }
+
+    private void triggerHeartbeat() {
+
+        if (!performingHeartbeat.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(this::performHeartbeat);
+        } catch (Exception e) {
+            performingHeartbeat.set(false);
+        }
+
+    }
+
+    private void performHeartbeat() {
+
+        try {
+            lockService.performSessionHeartbeat();
+        } catch (Exception e) {
+            // Empty catch due to the next heartbeat will retry
+        } finally {
+            performingHeartbeat.set(false);
+        }
+
+    }
+
+}
@@ -16,20 +16,43 @@
 
 package com.hubbledouble.thread.synchronization.processor;
 
+import com.hubbledouble.thread.synchronization.AsyncRunnableCode;
+import com.hubbledouble.thread.synchronization.Claim;
+import com.hubbledouble.thread.synchronization.Lease;
+import com.hubbledouble.thread.synchronization.LockSettings;
 import com.hubbledouble.thread.synchronization.RunnableCode;
 import com.hubbledouble.thread.synchronization.exception.RunnableCodeException;
 import com.hubbledouble.thread.synchronization.exception.ThreadSynchronizationException;
+import com.hubbledouble.thread.synchronization.listener.LockListener;
+import com.hubbledouble.thread.synchronization.service.CompletionService;
 import com.hubbledouble.thread.synchronization.service.LockService;
 
 import java.lang.management.ManagementFactory;
 import java.time.Duration;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
 /**
  * Thread process. Main login to handle the processing including the locking mechanism on a high level as well
@@ -37,40 +60,264 @@ import java.util.concurrent.TimeUnit;
  *
  * @author Jorge Saldivar
  */
-public class ThreadProcessor {
+public class ThreadProcessor implements AutoCloseable {
 
     private final LockService lockService;
-
-    private final Map<String, ScheduledFuture<?>> processHeartbeatFutures;
-    private final ScheduledExecutorService scheduledExecutorService;
-    private static final Long HEARTBEAT_IN_SECONDS = 10l;
-    private static final Long LOCK_DURATION_IN_SECONDS = 30l;
+    private final CompletionService completionService;
+    private final LockListener lockListener;
+
+    private final HeartbeatProcessor heartbeatProcessor;
+    private final LocalLockTable localLockTable;
+    private final Executor asyncExecutor;
+    private final LockSettings defaultLockSettings;
+    private final Map<String, LockSettings> processLockSettings;
+    private final ConcurrentMap<String, CompletableFuture<Object>> sharedExecutions;
+    private static final String JVM_NAME = ManagementFactory.getRuntimeMXBean().getName();
+    private static final String PERMIT_SEPARATOR = "#permit-";
 
     public ThreadProcessor(LockService lockService) {
+        this(lockService, ProcessorExecutors.scheduledExecutorService(), ProcessorExecutors.backgroundExecutor(),
+                ProcessorExecutors.asyncExecutor(), LockSettings.DEFAULT, Collections.emptyMap());
+    }
+
+    /**
+     * @param scheduledExecutorService - Triggers the heartbeats
+     * @param backgroundExecutor - Runs the heartbeat database operations
+     * @param asyncExecutor - Default executor acquiring and releasing locks of asynchronous executions
+     * @param defaultLockSettings - Timings of every lock without its own settings
+     * @param processLockSettings - Timings of specific locks, keyed by process name
+     */
+    public ThreadProcessor(LockService lockService, ScheduledExecutorService scheduledExecutorService,
+                           Executor backgroundExecutor, Executor asyncExecutor,
+                           LockSettings defaultLockSettings, Map<String, LockSettings> processLockSettings) {
+        this(lockService, null, scheduledExecutorService, backgroundExecutor, asyncExecutor, defaultLockSettings, processLockSettings);
+    }
+
+    /**
+     * @param completionService - Records the processes executed once, required by
+     *                            {@link #executeOnce(String, Duration, RunnableCode)}
+     */
+    public ThreadProcessor(LockService lockService, CompletionService completionService,
+                           ScheduledExecutorService scheduledExecutorService,
+                           Executor backgroundExecutor, Executor asyncExecutor,
+                           LockSettings defaultLockSettings, Map<String, LockSettings> processLockSettings) {
+        this(lockService, completionService, scheduledExecutorService, backgroundExecutor, asyncExecutor,
+                defaultLockSettings, processLockSettings, LockListener.NONE);
+    }
+
+    /**
+     * @param lockListener - Notified of the executions and of how late the heartbeats are sent
+     */
+    public ThreadProcessor(LockService lockService, CompletionService completionService,
+                           ScheduledExecutorService scheduledExecutorService,
+                           Executor backgroundExecutor, Executor asyncExecutor,
+                           LockSettings defaultLockSettings, Map<String, LockSettings> processLockSettings,
+                           LockListener lockListener) {
         this.lockService = lockService;
-        this.processHeartbeatFutures = new HashMap<>();
-        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        this.lockListener = lockListener;
+        this.completionService = completionService;
+        this.defaultLockSettings = defaultLockSettings;
+        this.processLockSettings = new HashMap<>(processLockSettings);
+        this.heartbeatProcessor =
+                new HeartbeatProcessor(lockService::performHeartbeats, lockListener::onHeartbeatLag,
+                        scheduledExecutorService, backgroundExecutor, HeartbeatProcessor.tick(defaultLockSettings, processLockSettings.values()));
+        this.localLockTable = new LocalLockTable();
+        this.asyncExecutor = asyncExecutor;
+        this.sharedExecutions = new ConcurrentHashMap<>();
     }
 
     public boolean execute(String processName, RunnableCode runnableCode) {
+        return execute(processName, Duration.ZERO, runnableCode);
+    }
+
+    public boolean execute(String processName, Duration timeout, RunnableCode runnableCode) {
+        return execute(processName, getLockSettings(processName), timeout, runnableCode);
+    }
+
+    /**
+     * Executes the code holding all the locks at once, acquired together in a single database call.
+     * Locks are taken in their natural order and never waited on, so overlapping executions can't deadlock
+     */
+    public boolean execute(Collection<String> processNames, RunnableCode runnableCode) {
+
+        final SortedSet<String> sortedProcessNames = new TreeSet<>(processNames);
+
+        if (sortedProcessNames.isEmpty()) {
+            throw new IllegalArgumentException("At least one process name is required");
+        }
+
+        return executeNotified(sortedProcessNames, () -> executeProcesses(sortedProcessNames, runnableCode));
+
+    }
+
+    /**
+     * Executes the code holding one of the permits of the process, each permit is a lock of its own
+     */
+    public boolean executeWithPermits(String processName, int permits, RunnableCode runnableCode) {
+
+        if (permits < 1) {
+            throw new IllegalArgumentException("Permits must be positive");
+        }
+
+        final LockSettings lockSettings = getLockSettings(processName);
+        final List<String> permitNames = new ArrayList<>(permits);
+        // Contenders start at different permits so they don't all compete for the first free one
+        final int firstPermit = ThreadLocalRandom.current().nextInt(permits);
+
+        for (int i = 0; i < permits; i++) {
+            permitNames.add(processName + PERMIT_SEPARATOR + ((firstPermit + i) % permits));
+        }
+
+        final List<String> availablePermitNames;
+        try {
+            availablePermitNames = lockService.findAvailable(permitNames, lockSettings.getExpiration());
+        } catch (Exception e) {
+            throw new ThreadSynchronizationException(e);
+        }
+
+        for (String permitName : availablePermitNames) {
+            if (execute(permitName, lockSettings, Duration.ZERO, runnableCode)) {
+                return true;
+            }
+        }
+
+        return false;
+
+    }
+
+    private boolean execute(String processName, LockSettings lockSettings, Duration timeout, RunnableCode runnableCode) {
+        return executeNotified(Collections.singleton(processName), () -> executeProcess(processName, lockSettings, timeout, runnableCode));
+    }
+
+    /**
+     * Notifies the execution of each of the processes, started and done from the thread running it
+     */
+    private boolean executeNotified(Collection<String> processNames, BooleanSupplier execution) {
+
+        processNames.forEach(lockListener::onExecuteStart);
+        final long start = System.nanoTime();
+        LockListener.ExecuteOutcome outcome = LockListener.ExecuteOutcome.ERROR;
+
+        try {
+
+            final boolean executed = execution.getAsBoolean();
+            outcome = executed ? LockListener.ExecuteOutcome.EXECUTED : LockListener.ExecuteOutcome.REJECTED;
+            return executed;
+
+        } catch (RunnableCodeException e) {
+
+            outcome = LockListener.ExecuteOutcome.CODE_FAILED;
+            throw e;
+
+        } finally {
+            notifyExecute(processNames, outcome, start);
+        }
+
+    }
+
+    private LockListener.ExecuteOutcome executeOutcome(Boolean executed, Throwable throwable) {
+
+        if (null != throwable) {
+            return throwable instanceof RunnableCodeException
+                    ? LockListener.ExecuteOutcome.CODE_FAILED
+                    : LockListener.ExecuteOutcome.ERROR;
+        }
+
+        return executed ? LockListener.ExecuteOutcome.EXECUTED : LockListener.ExecuteOutcome.REJECTED;
+
+    }
+
+    private void notifyExecute(Collection<String> processNames, LockListener.ExecuteOutcome outcome, long start) {
+
+        final long duration = System.nanoTime() - start;
+
+        for (String processName : processNames) {
+            lockListener.onExecute(processName, outcome, duration);
+        }
+
+    }
+
+    private boolean executeProcesses(SortedSet<String> sortedProcessNames, RunnableCode runnableCode) {
+
+        final Thread owner = Thread.currentThread();
+        final List<String> localLocks = new ArrayList<>(sortedProcessNames.size());
+        final Map<String, Duration> processDurations = new HashMap<>();
+        Duration heartbeatInterval = null;
+
+        try {
+
+            for (String processName : sortedProcessNames) {
+
+                // This thread already holds the lock, through an outer execution or a lease
+                final boolean reentrant = localLockTable.isLockedBy(processName, owner);
+
+                if (!localLockTable.tryLock(processName, owner)) {
+                    return false;
+                }
+
+                localLocks.add(processName);
+
+                if (!reentrant) {
+                    LockSettings lockSettings = getLockSettings(processName);
+                    processDurations.put(processName, lockSettings.getExpiration());
+                    heartbeatInterval = null == heartbeatInterval || lockSettings.getHeartbeatInterval().compareTo(heartbeatInterval) < 0
+                            ? lockSettings.getHeartbeatInterval()
+                            : heartbeatInterval;
+                }
+
+            }
+
+            if (processDurations.isEmpty()) {
+                RunnableCodes.execute(runnableCode);
+                return true;
+            }
+
+            return executeLocked(processDurations, heartbeatInterval, runnableCode);
+
+        } finally {
+
+            for (String processName : localLocks) {
+                localLockTable.unlock(processName, owner);
+            }
+
+        }
+
+    }
+
+    private boolean executeProcess(String processName, LockSettings lockSettings, Duration timeout, RunnableCode runnableCode) {
+
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        final Thread owner = Thread.currentThread();
+        final boolean reentrant = localLockTable.isLockedBy(processName, owner);
+
+        // Other thread in this JVM is executing the process, wait for it locally instead of asking the database
+        if (!tryLocalLock(processName, owner, timeout)) {
+            return false;
+        }
+
+        // This thread already holds the lock, through an outer execution or a lease
+        if (reentrant) {
+
+            try {
+                RunnableCodes.execute(runnableCode);
+                return true;
+            } finally {
+                localLockTable.unlock(processName, owner);
+            }
+
+        }
 
         final String processSourceId = getSourceId();
+        boolean acquired = false;
 
         try {
 
-            if (lockService.acquireLock(processName, processSourceId, Duration.of(LOCK_DURATION_IN_SECONDS, ChronoUnit.SECONDS))) {
+            if (acquireLock(processName, processSourceId, lockSettings, Duration.ofNanos(deadline - System.nanoTime()))) {
 
-                processHeartbeatFutures.put(
-                        processName,
-                        scheduledExecutorService.scheduleWithFixedDelay(
-                                () -> lockService.performHeartbeat(processName, processSourceId),
-                                HEARTBEAT_IN_SECONDS,
-                                HEARTBEAT_IN_SECONDS,
-                                TimeUnit.SECONDS
-                        )
-                );
+                acquired = true;
+                heartbeatProcessor.register(processName, processSourceId, lockSettings.getHeartbeatInterval());
 
-                runnableCodeExecution(runnableCode);
+                RunnableCodes.execute(runnableCode);
 
                 return true;
 
@@ -78,7 +325,7 @@ public class ThreadProcessor {
 
         } catch (RunnableCodeException e) {
 
-            throw new RunnableCodeException(e);
+            throw e;
 
         } catch (Exception e) {
 
@@ -86,8 +333,59 @@ public class ThreadProcessor {
 
         } finally {
 
-            clearProcessHeartbeat(processName);
-            lockService.releaseLock(processName, processSourceId);
+            if (acquired) {
+                heartbeatProcessor.unregister(processName);
+                lockService.releaseLock(processName, processSourceId);
+            }
+
+            localLockTable.unlock(processName, owner);
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * All the locks share the shortest heartbeat interval, so their heartbeats fall due on the same tick
+     * and are renewed together in a single bulk write
+     */
+    private boolean executeLocked(Map<String, Duration> processDurations, Duration heartbeatInterval, RunnableCode runnableCode) {
+
+        final String processSourceId = getSourceId();
+        boolean acquired = false;
+
+        try {
+
+            if (lockService.acquireLocks(processDurations, processSourceId)) {
+
+                acquired = true;
+                for (String processName : processDurations.keySet()) {
+                    heartbeatProcessor.register(processName, processSourceId, heartbeatInterval);
+                }
+
+                RunnableCodes.execute(runnableCode);
+
+                return true;
+
+            }
+
+        } catch (RunnableCodeException e) {
+
+            throw e;
+
+        } catch (Exception e) {
+
+            throw new ThreadSynchronizationException(e);
+
+        } finally {
+
+            if (acquired) {
+                for (String processName : processDurations.keySet()) {
+                    heartbeatProcessor.unregister(processName);
+                }
+                lockService.releaseLocks(processDurations.keySet(), processSourceId);
+            }
 
         }
 
@@ -95,30 +393,445 @@ public class ThreadProcessor {
 
     }
 
-    private void runnableCodeExecution(RunnableCode runnableCode) {
+    public boolean executeOnce(String processName, Duration retention, RunnableCode runnableCode) {
+
+        if (null == completionService) {
+            throw new IllegalStateException("Completion records are not available to execute processes once");
+        }
+
+        if (isCompleted(processName)) {
+            return false;
+        }
+
+        final Optional<Lease> acquired = acquire(processName, Duration.ZERO);
+
+        if (!acquired.isPresent()) {
+            return false;
+        }
+
+        try (Lease lease = acquired.get()) {
+
+            // Other node may have completed the process while this one was acquiring the lock
+            if (isCompleted(processName)) {
+                return false;
+            }
+
+            lease.execute(runnableCode);
+
+            try {
+                completionService.complete(processName, retention);
+            } catch (Exception e) {
+                throw new ThreadSynchronizationException(e);
+            }
+
+            return true;
+
+        }
+
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> executeShared(String processName, Supplier<T> supplier) {
+
+        // Nested in its own execution, waiting for it would never end
+        if (localLockTable.isLockedBy(processName, Thread.currentThread())) {
+            return Optional.ofNullable(supplyValue(supplier));
+        }
+
+        final CompletableFuture<Object> execution = new CompletableFuture<>();
+        final CompletableFuture<Object> inFlightExecution = sharedExecutions.putIfAbsent(processName, execution);
+
+        if (null != inFlightExecution) {
+            return Optional.ofNullable((T) joinSharedExecution(inFlightExecution));
+        }
+
+        final AtomicReference<T> value = new AtomicReference<>();
+
+        try {
+
+            execute(processName, () -> value.set(supplier.get()));
+            sharedExecutions.remove(processName, execution);
+            execution.complete(value.get());
+            return Optional.ofNullable(value.get());
+
+        } catch (Throwable e) {
+
+            // Errors too, joiners would otherwise wait forever
+            sharedExecutions.remove(processName, execution);
+            execution.completeExceptionally(e);
+            throw e;
+
+        }
+
+    }
+
+    public Optional<Lease> acquire(String processName, Duration timeout) {
+
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        final Thread owner = Thread.currentThread();
+        final boolean reentrant = localLockTable.isLockedBy(processName, owner);
+
+        if (!tryLocalLock(processName, owner, timeout)) {
+            return Optional.empty();
+        }
+
+        final String processSourceId = getSourceId();
+
+        if (reentrant) {
+            return Optional.of(new ProcessLease(this, processName, processSourceId, owner, true));
+        }
+
+        final LockSettings lockSettings = getLockSettings(processName);
+
+        try {
+
+            if (acquireLock(processName, processSourceId, lockSettings, Duration.ofNanos(deadline - System.nanoTime()))) {
+                heartbeatProcessor.register(processName, processSourceId, lockSettings.getHeartbeatInterval());
+                return Optional.of(new ProcessLease(this, processName, processSourceId, owner, false));
+            }
+
+        } catch (Exception e) {
+
+            localLockTable.unlock(processName, owner);
+            throw new ThreadSynchronizationException(e);
+
+        }
+
+        localLockTable.unlock(processName, owner);
+        return Optional.empty();
+
+    }
+
+    /**
+     * Claims up to {@code max} of the candidates not held by other thread, with one read finding the free ones
+     * and one write acquiring them. Candidates are tried from a random offset so nodes claiming from the same
+     * candidates spread over different ones instead of colliding on the first free
+     */
+    public Claim claim(Collection<String> candidates, int max) {
+
+        if (max < 1) {
+            throw new IllegalArgumentException("Max must be positive");
+        }
+
+        final Thread owner = Thread.currentThread();
+        final long start = System.nanoTime();
+        final List<String> shuffledCandidates = new ArrayList<>(new LinkedHashSet<>(candidates));
+
+        if (shuffledCandidates.isEmpty()) {
+            return new ProcessClaim(this, Collections.emptySet(), getSourceId(), owner, start);
+        }
+
+        Collections.rotate(shuffledCandidates, ThreadLocalRandom.current().nextInt(shuffledCandidates.size()));
+        final Map<String, Duration> processDurations = new LinkedHashMap<>();
+
+        try {
+
+            // The read only narrows the candidates down, the write checks each lock against its own settings
+            for (String processName : lockService.findAvailable(shuffledCandidates, defaultLockSettings.getExpiration())) {
+
+                if (processDurations.size() == max) {
+                    break;
+                }
+
+                // Candidates held by this thread are skipped, a claim only releases the locks it acquired
+                if (!localLockTable.isLockedBy(processName, owner) && localLockTable.tryLock(processName, owner)) {
+                    processDurations.put(processName, getLockSettings(processName).getExpiration());
+                }
+
+            }
+
+            if (processDurations.isEmpty()) {
+                return new ProcessClaim(this, Collections.emptySet(), getSourceId(), owner, start);
+            }
+
+            final String processSourceId = getSourceId();
+            final Set<String> claimed = new LinkedHashSet<>(lockService.acquireAvailableLocks(processDurations, processSourceId));
+
+            Duration heartbeatInterval = null;
+            for (String processName : claimed) {
+                Duration interval = getLockSettings(processName).getHeartbeatInterval();
+                heartbeatInterval = null == heartbeatInterval || interval.compareTo(heartbeatInterval) < 0 ? interval : heartbeatInterval;
+            }
+
+            // A shared interval makes the heartbeats of the claim fall due together, renewed in a single bulk write
+            for (String processName : claimed) {
+                heartbeatProcessor.register(processName, processSourceId, heartbeatInterval);
+            }
+
+            for (String processName : processDurations.keySet()) {
+                if (!claimed.contains(processName)) {
+                    localLockTable.unlock(processName, owner);
+                    // Held by other node, the claim was rejected for it
+                    notifyExecute(Collections.singleton(processName), LockListener.ExecuteOutcome.REJECTED, start);
+                }
+            }
+
+            return new ProcessClaim(this, claimed, processSourceId, owner, start);
+
+        } catch (Exception e) {
+
+            for (String processName : processDurations.keySet()) {
+                localLockTable.unlock(processName, owner);
+            }
+
+            notifyExecute(processDurations.keySet(), LockListener.ExecuteOutcome.ERROR, start);
+
+            throw new ThreadSynchronizationException(e);
+
+        }
+
+    }
+
+    public CompletableFuture<Boolean> executeAsync(String processName, AsyncRunnableCode asyncRunnableCode) {
+        return executeAsync(processName, asyncRunnableCode, asyncExecutor);
+    }
+
+    public CompletableFuture<Boolean> executeAsync(String processName, AsyncRunnableCode asyncRunnableCode, Executor executor) {
+
+        final Object owner = new Object();
+        final long start = System.nanoTime();
+        final CompletableFuture<Boolean> execution = new CompletableFuture<>();
+
+        // Done on the thread completing the execution, it has no start notification
+        execution.whenComplete((executed, throwable) ->
+                notifyExecute(Collections.singleton(processName), executeOutcome(executed, throwable), start));
+
+        try {
+            executor.execute(() -> executeAsync(processName, asyncRunnableCode, executor, owner, execution));
+        } catch (RejectedExecutionException e) {
+            // Executor shut down or full, the caller gets the failure through the future
+            execution.completeExceptionally(e);
+        }
+
+        return execution;
+
+    }
+
+    /**
+     * Stops the heartbeats of the locks held, executions still running keep their lock until it expires
+     */
+    @Override
+    public void close() {
+        heartbeatProcessor.close();
+    }
+
+    private void executeAsync(String processName, AsyncRunnableCode asyncRunnableCode, Executor executor, Object owner,
+                              CompletableFuture<Boolean> execution) {
+
+        if (!localLockTable.tryLock(processName, owner)) {
+            execution.complete(false);
+            return;
+        }
+
+        final String processSourceId = getSourceId();
+        final LockSettings lockSettings = getLockSettings(processName);
+
+        try {
+
+            if (!lockService.acquireLock(processName, processSourceId, lockSettings.getExpiration())) {
+                localLockTable.unlock(processName, owner);
+                execution.complete(false);
+                return;
+            }
+
+        } catch (Exception e) {
+            localLockTable.unlock(processName, owner);
+            execution.completeExceptionally(new ThreadSynchronizationException(e));
+            return;
+        }
+
+        heartbeatProcessor.register(processName, processSourceId, lockSettings.getHeartbeatInterval());
+
+        CompletionStage<?> codeExecution;
+        try {
+            codeExecution = asyncRunnableCode.execute();
+        } catch (Exception e) {
+            codeExecution = failedStage(e);
+        }
+
+        if (null == codeExecution) {
+            codeExecution = CompletableFuture.completedFuture(null);
+        }
+
+        // The lock is held until the code completes, release is done on the executor not on the completing thread
+        codeExecution.whenComplete((result, throwable) -> {
+
+            Runnable release = () -> {
+
+                heartbeatProcessor.unregister(processName);
+                lockService.releaseLock(processName, processSourceId);
+                localLockTable.unlock(processName, owner);
+
+                if (null != throwable) {
+                    execution.completeExceptionally(toRunnableCodeException(unwrap(throwable)));
+                } else {
+                    execution.complete(true);
+                }
+
+            };
+
+            try {
+                executor.execute(release);
+            } catch (RejectedExecutionException e) {
+                // Executor shut down or full, the lock must be released anyway
+                release.run();
+            }
+
+        });
+
+    }
+
+    private boolean tryLocalLock(String processName, Object owner, Duration timeout) {
+
+        try {
+            return localLockTable.tryLock(processName, owner, timeout.toNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ThreadSynchronizationException(e);
+        }
+
+    }
+
+    private boolean acquireLock(String processName, String processSourceId, LockSettings lockSettings, Duration timeout) {
+
+        final Duration duration = lockSettings.getExpiration();
+
+        if (timeout.isNegative() || timeout.isZero()) {
+            return lockService.acquireLock(processName, processSourceId, duration);
+        }
+
+        return lockService.acquireLock(processName, processSourceId, duration, timeout);
+
+    }
+
+    private boolean isCompleted(String processName) {
 
         try {
-            runnableCode.execute();
+            return completionService.isCompleted(processName);
+        } catch (Exception e) {
+            throw new ThreadSynchronizationException(e);
+        }
+
+    }
+
+    private <T> T supplyValue(Supplier<T> supplier) {
+
+        try {
+            return supplier.get();
+        } catch (RunnableCodeException e) {
+            throw e;
         } catch (Exception e) {
             throw new RunnableCodeException(e);
         }
 
     }
 
-    private String getSourceId() {
-        return ManagementFactory.getRuntimeMXBean().getName();
+    private Object joinSharedExecution(CompletableFuture<Object> execution) {
+
+        try {
+            return execution.join();
+        } catch (CompletionException e) {
+
+            // Same exception type and cause the executing thread got, rethrown from this thread
+            if (e.getCause() instanceof RunnableCodeException) {
+                throw new RunnableCodeException(e.getCause().getCause());
+            }
+
+            if (e.getCause() instanceof ThreadSynchronizationException) {
+                throw new ThreadSynchronizationException(e.getCause().getCause());
+            }
+
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new ThreadSynchronizationException(e.getCause());
+
+        }
+
+    }
+
+    void executeLeased(RunnableCode runnableCode) {
+        RunnableCodes.execute(runnableCode);
+    }
+
+    boolean renewLease(String processName, String processSourceId) {
+
+        try {
+            return !lockService.performHeartbeats(Collections.singletonMap(processName, processSourceId)).contains(processName);
+        } catch (Exception e) {
+            throw new ThreadSynchronizationException(e);
+        }
+
+    }
+
+    void releaseLease(String processName, String processSourceId, Object owner, boolean reentrant) {
+
+        try {
+
+            if (!reentrant) {
+                heartbeatProcessor.unregister(processName);
+                lockService.releaseLock(processName, processSourceId);
+            }
+
+        } finally {
+            localLockTable.unlock(processName, owner);
+        }
+
     }
 
-    private void clearProcessHeartbeat(String processName) {
+    /**
+     * @param claimedAt - When the claim started, its executions last until the release
+     */
+    void releaseClaim(Set<String> processNames, String processSourceId, Object owner, long claimedAt) {
+
+        LockListener.ExecuteOutcome outcome = LockListener.ExecuteOutcome.ERROR;
+
+        try {
 
-        if (!processHeartbeatFutures.isEmpty() &&
-                processHeartbeatFutures.containsKey(processName) &&
-                !processHeartbeatFutures.get(processName).isCancelled()) {
+            for (String processName : processNames) {
+                heartbeatProcessor.unregister(processName);
+            }
 
-            processHeartbeatFutures.get(processName).cancel(true);
+            lockService.releaseLocks(processNames, processSourceId);
+            outcome = LockListener.ExecuteOutcome.EXECUTED;
+
+        } finally {
+
+            for (String processName : processNames) {
+                localLockTable.unlock(processName, owner);
+            }
+
+            notifyExecute(processNames, outcome, claimedAt);
 
         }
 
     }
 
+    private LockSettings getLockSettings(String processName) {
+        return processLockSettings.getOrDefault(processName, defaultLockSettings);
+    }
+
+    private CompletionStage<?> failedStage(Throwable throwable) {
+        CompletableFuture<?> failed = new CompletableFuture<>();
+        failed.completeExceptionally(throwable);
+        return failed;
+    }
+
+    private RunnableCodeException toRunnableCodeException(Throwable throwable) {
+        return throwable instanceof RunnableCodeException ? (RunnableCodeException) throwable : new RunnableCodeException(throwable);
+    }
+
+    private Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && null != throwable.getCause() ? throwable.getCause() : throwable;
+    }
+
+    private String getSourceId() {
+        return JVM_NAME + "-" + Thread.currentThread().getId();
+    }
+
 }
\ No newline at end of file
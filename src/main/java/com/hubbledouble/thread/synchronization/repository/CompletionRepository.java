@@ -0,0 +1,35 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.repository;
+
+import com.hubbledouble.thread.synchronization.domain.Completion;
+
+/**
+ * Operations used internally by this library to record completed processes in the database
+ *
+ * @author Jorge Saldivar
+ */
+public interface CompletionRepository {
+
+    /**
+     * @return the completion of the process, or null if it was never completed or its retention expired
+     */
+    Completion findByProcessName(String processName);
+
+    void save(Completion completion);
+
+}
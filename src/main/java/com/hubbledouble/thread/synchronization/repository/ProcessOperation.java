@@ -0,0 +1,93 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.repository;
+
+import java.time.Duration;
+
+/**
+ * Lock write that can be executed together with others in a single bulk write
+ *
+ * @author Jorge Saldivar
+ */
+public final class ProcessOperation {
+
+    public enum Type {
+        ACQUIRE,
+        RELEASE
+    }
+
+    /**
+     * What an operation of a bulk write did
+     */
+    public enum Result {
+        // Lock acquired as a new lock, or released
+        APPLIED,
+        // Lock acquired over one left expired, it was held before
+        TAKEN_OVER,
+        // Lock still held by other process
+        REJECTED
+    }
+
+    private final Type type;
+    private final String processName;
+    private final String processSourceId;
+    private final String sessionId;
+    private final Duration expiration;
+
+    private ProcessOperation(Type type, String processName, String processSourceId, String sessionId, Duration expiration) {
+        this.type = type;
+        this.processName = processName;
+        this.processSourceId = processSourceId;
+        this.sessionId = sessionId;
+        this.expiration = expiration;
+    }
+
+    /**
+     * Same as {@link ProcessRepository#acquireLock(String, String, String, Duration)}
+     */
+    public static ProcessOperation acquire(String processName, String processSourceId, String sessionId, Duration expiration) {
+        return new ProcessOperation(Type.ACQUIRE, processName, processSourceId, sessionId, expiration);
+    }
+
+    /**
+     * Same as {@link ProcessRepository#releaseLock(String, String)}
+     */
+    public static ProcessOperation release(String processName, String processSourceId) {
+        return new ProcessOperation(Type.RELEASE, processName, processSourceId, null, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getProcessName() {
+        return processName;
+    }
+
+    public String getProcessSourceId() {
+        return processSourceId;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public Duration getExpiration() {
+        return expiration;
+    }
+
+}
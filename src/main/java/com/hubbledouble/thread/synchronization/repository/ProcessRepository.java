@@ -17,8 +17,15 @@
 package com.hubbledouble.thread.synchronization.repository;
 
 import com.hubbledouble.thread.synchronization.domain.Process;
+import org.bson.types.ObjectId;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Operations used internally by this library to interact with the database
@@ -29,16 +36,74 @@ public interface ProcessRepository {
 
     Process findByProcessName(String processName);
 
+    List<Process> findByProcessNames(Collection<String> processNames);
+
     Process findByProcessNameAndProcessSourceId(String processName, String processSourceId);
 
-    boolean insertLock(String processName, String processSourceId);
+    /**
+     * Atomically inserts the lock or takes it over when its heartbeat is older than {@code expiration}.
+     * Without expiration a lock held by other process is never taken over, it's only acquired once released.
+     * The age of the heartbeat is measured by the repository, on the database clock when it runs on server time.
+     * Locks of a session have no heartbeat, they are never taken over, only deleted once their session expires
+     *
+     * @param sessionId - Session the lock belongs to, or null when the lock keeps its own heartbeat
+     * @return the lock document now owned by {@code processSourceId}, or null if other process holds it
+     */
+    Process acquireLock(String processName, String processSourceId, String sessionId, Duration expiration);
+
+    /**
+     * Deletes the lock only if it's still owned by {@code processSourceId}
+     */
+    void releaseLock(String processName, String processSourceId);
+
+    /**
+     * Acquires all the locks in a single ordered bulk write, stopping at the first lock held by other process.
+     * The locks acquired before it are released, so either all the locks are acquired or none
+     *
+     * @param acquireOperations - Acquire operations, in the order the locks are taken
+     * @return true if all the locks were acquired
+     */
+    boolean acquireLocks(List<ProcessOperation> acquireOperations);
+
+    /**
+     * Deletes the locks still owned by {@code processSourceId} in a single write
+     */
+    void releaseLocks(Collection<String> processNames, String processSourceId);
 
-    boolean transferLock(Process process, String processSourceId);
+    /**
+     * Executes all the operations in a single unordered bulk write
+     *
+     * @return for each operation in the same order, what it did.
+     *          An acquire is rejected when other process holds the lock
+     */
+    List<ProcessOperation.Result> executeBulk(List<ProcessOperation> processOperations);
 
     void performHeartBeat(Process process);
 
+    /**
+     * Renews the heartbeat of all the given locks in a single bulk write
+     *
+     * @param processSourceIds - Process source id owning each lock, keyed by process name
+     * @return process names whose lock is no longer owned by the given source id and could not be renewed
+     */
+    Set<String> performHeartBeats(Map<String, String> processSourceIds);
+
     void delete(Process process);
 
     void deleteProcessOlderThan(Instant date);
 
+    void deleteBySessionIds(Collection<String> sessionIds);
+
+    /**
+     * @return the distinct sessions referenced by locks
+     */
+    Set<String> findSessionIds();
+
+    /**
+     * Notifies the id of every lock document deleted from now on, from this or any other node.
+     * Notifications are delivered on a best effort basis, they can stop for a while until the database is reachable again.
+     * Null is notified each time notifications start, deletes before it were possibly missed
+     */
+    void watchReleases(Consumer<ObjectId> releaseListener);
+
 }
\ No newline at end of file
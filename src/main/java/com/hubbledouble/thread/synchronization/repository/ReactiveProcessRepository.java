@@ -0,0 +1,43 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.repository;
+
+import com.hubbledouble.thread.synchronization.domain.Process;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Non blocking operations used internally by this library to interact with the database
+ *
+ * @author Jorge Saldivar
+ */
+public interface ReactiveProcessRepository {
+
+    /**
+     * Atomically inserts the lock or takes it over when its heartbeat is older than {@code expiration},
+     * without expiration a lock held by other process is never taken over
+     *
+     * @return the lock document now owned by {@code processSourceId}, or empty if other process holds it
+     */
+    Mono<Process> acquireLock(String processName, String processSourceId, Duration expiration);
+
+    Mono<Boolean> performHeartBeat(String processName, String processSourceId);
+
+    Mono<Void> releaseLock(String processName, String processSourceId);
+
+}
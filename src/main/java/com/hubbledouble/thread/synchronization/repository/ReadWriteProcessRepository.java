@@ -0,0 +1,81 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Operations used internally by this library to interact with the read/write locks in the database.
+ * Holders whose heartbeat is older than {@code expiredBefore} are ignored, as if they had released the lock.
+ *
+ * @author Jorge Saldivar
+ */
+public interface ReadWriteProcessRepository {
+
+    /**
+     * Adds a reader unless there is a writer, or a writer waiting for the readers to finish
+     */
+    boolean acquireReadLock(String processName, String processSourceId, Instant expiredBefore);
+
+    /**
+     * Flags the writer as waiting for the readers to finish, or renews the flag if it was already waiting.
+     * Fails if other writer holds the lock or is already waiting
+     */
+    boolean acquireWriteIntent(String processName, String processSourceId, Instant expiredBefore);
+
+    /**
+     * Turns the intent of the writer into the write lock once there are no readers left
+     */
+    boolean acquireWriteLock(String processName, String processSourceId, Instant expiredBefore);
+
+    /**
+     * @return the process names with a writer waiting for the readers to finish
+     */
+    Set<String> findWithWriterIntent(Collection<String> processNames, Instant expiredBefore);
+
+    void releaseWriteIntent(String processName, String processSourceId);
+
+    void releaseReadLock(String processName, String processSourceId);
+
+    void releaseWriteLock(String processName, String processSourceId);
+
+    /**
+     * @param processSourceIds - Process source id of the reader, keyed by process name
+     * @return process names whose reader is no longer registered and could not be renewed
+     */
+    Set<String> performReadHeartBeats(Map<String, String> processSourceIds);
+
+    /**
+     * @param processSourceIds - Process source id of the writer, keyed by process name
+     * @return process names whose writer is no longer the given source id and could not be renewed
+     */
+    Set<String> performWriteHeartBeats(Map<String, String> processSourceIds);
+
+    /**
+     * Notifies the changes of every lock from now on, from this or any other node.
+     * Notifications are delivered on a best effort basis, they can stop for a while until the database is reachable again.
+     *
+     * @param releaseListener - Notified of readers, writers or waiting writers leaving a lock.
+     *                        Also notified each time notifications start, releases before it were possibly missed
+     * @param writerIntentListener - Notified of writers starting or still waiting for the readers to finish
+     */
+    void watchChanges(Runnable releaseListener, Runnable writerIntentListener);
+
+}
@@ -0,0 +1,54 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.repository;
+
+import com.hubbledouble.thread.synchronization.domain.Session;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Operations used internally by this library to keep node sessions in the database
+ *
+ * @author Jorge Saldivar
+ */
+public interface SessionRepository {
+
+    void insert(Session session);
+
+    /**
+     * @return false if the session no longer exists, it expired and was deleted by other node
+     */
+    boolean performHeartBeat(String sessionId);
+
+    List<String> findSessionIdsOlderThan(Duration expiration);
+
+    /**
+     * Atomically deletes the session unless it sent a heartbeat within the expiration
+     *
+     * @return true if the session was deleted, false if it's alive or was already deleted
+     */
+    boolean deleteSessionOlderThan(String sessionId, Duration expiration);
+
+    /**
+     * @return the given session ids that still exist
+     */
+    Set<String> findExistingSessionIds(Collection<String> sessionIds);
+
+}
@@ -0,0 +1,323 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.repository.impl;
+
+import com.hubbledouble.thread.synchronization.domain.Process;
+import com.hubbledouble.thread.synchronization.exception.ThreadSynchronizationException;
+import com.hubbledouble.thread.synchronization.repository.ProcessOperation;
+import com.hubbledouble.thread.synchronization.repository.ProcessRepository;
+import org.bson.types.ObjectId;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Group commit of lock writes. Acquires and releases requested concurrently by many threads
+ * are gathered for up to a window, or until the batch is full, and sent in a single bulk write,
+ * so lock throughput is bound by the database write capacity instead of round trips.
+ * Any other operation goes straight to the underlying repository.
+ * <p>
+ * Operations of a batch run unordered, which is safe as long as a process name is never acquired and released
+ * by the same batch, the local lock table of this JVM ensures there is a single operation in flight per process.
+ * <p>
+ * Callers wait for their batch up to a write timeout. An operation timed out before its batch is sent is cancelled
+ * and never written, one already sent may still be written, always before any later batch.
+ * If the writer thread stops, or the repository is closed, every operation still waiting fails instead of hanging.
+ *
+ * @author Jorge Saldivar
+ */
+public class BatchingProcessRepositoryImpl implements ProcessRepository, AutoCloseable {
+
+    private static final Duration WRITE_TIMEOUT = Duration.ofMinutes(1);
+
+    private final ProcessRepository processRepository;
+    private final long windowInNanos;
+    private final int maxBatchSize;
+    private final long writeTimeoutInNanos;
+    private final BlockingQueue<PendingOperation> pendingOperations;
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile Throwable stopCause;
+
+    /**
+     * @param processRepository - Repository executing the bulk writes
+     * @param window - Maximum time an operation waits for others to join its batch
+     * @param maxBatchSize - Batches are sent right away once they reach this size
+     */
+    public BatchingProcessRepositoryImpl(ProcessRepository processRepository, Duration window, int maxBatchSize) {
+        this(processRepository, window, maxBatchSize, WRITE_TIMEOUT);
+    }
+
+    /**
+     * @param processRepository - Repository executing the bulk writes
+     * @param window - Maximum time an operation waits for others to join its batch
+     * @param maxBatchSize - Batches are sent right away once they reach this size
+     * @param writeTimeout - Maximum time a caller waits for the bulk write of its operation
+     */
+    public BatchingProcessRepositoryImpl(ProcessRepository processRepository, Duration window, int maxBatchSize,
+                                         Duration writeTimeout) {
+        this.processRepository = processRepository;
+        this.windowInNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.writeTimeoutInNanos = writeTimeout.toNanos();
+        this.pendingOperations = new LinkedBlockingQueue<>();
+
+        this.writer = new Thread(this::writeBatches, "thread-synchronization-batch");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public Process findByProcessName(String processName) {
+        return processRepository.findByProcessName(processName);
+    }
+
+    @Override
+    public List<Process> findByProcessNames(Collection<String> processNames) {
+        return processRepository.findByProcessNames(processNames);
+    }
+
+    @Override
+    public Process findByProcessNameAndProcessSourceId(String processName, String processSourceId) {
+        return processRepository.findByProcessNameAndProcessSourceId(processName, processSourceId);
+    }
+
+    /**
+     * @return the lock as written by this process, without the id assigned by the database,
+     *          or null if other process holds it. The bulk write doesn't read the generation back,
+     *          it's 1 for a new lock and 2 for a lock taken over
+     */
+    @Override
+    public Process acquireLock(String processName, String processSourceId, String sessionId, Duration expiration) {
+
+        ProcessOperation.Result result = write(ProcessOperation.acquire(processName, processSourceId, sessionId, expiration));
+
+        if (ProcessOperation.Result.REJECTED == result) {
+            return null;
+        }
+
+        Process process = new Process(processName, processSourceId);
+        process.setSessionId(sessionId);
+        process.setGeneration(ProcessOperation.Result.TAKEN_OVER == result ? 2L : 1L);
+        return process;
+
+    }
+
+    @Override
+    public void releaseLock(String processName, String processSourceId) {
+        write(ProcessOperation.release(processName, processSourceId));
+    }
+
+    /**
+     * Already a single bulk write, not grouped with other operations as it must run in order
+     */
+    @Override
+    public boolean acquireLocks(List<ProcessOperation> acquireOperations) {
+        return processRepository.acquireLocks(acquireOperations);
+    }
+
+    @Override
+    public void releaseLocks(Collection<String> processNames, String processSourceId) {
+        processRepository.releaseLocks(processNames, processSourceId);
+    }
+
+    @Override
+    public List<ProcessOperation.Result> executeBulk(List<ProcessOperation> processOperations) {
+        return processRepository.executeBulk(processOperations);
+    }
+
+    @Override
+    public void performHeartBeat(Process process) {
+        processRepository.performHeartBeat(process);
+    }
+
+    @Override
+    public Set<String> performHeartBeats(Map<String, String> processSourceIds) {
+        return processRepository.performHeartBeats(processSourceIds);
+    }
+
+    @Override
+    public void delete(Process process) {
+        processRepository.delete(process);
+    }
+
+    @Override
+    public void deleteProcessOlderThan(Instant date) {
+        processRepository.deleteProcessOlderThan(date);
+    }
+
+    @Override
+    public void deleteBySessionIds(Collection<String> sessionIds) {
+        processRepository.deleteBySessionIds(sessionIds);
+    }
+
+    @Override
+    public Set<String> findSessionIds() {
+        return processRepository.findSessionIds();
+    }
+
+    @Override
+    public void watchReleases(Consumer<ObjectId> releaseListener) {
+        processRepository.watchReleases(releaseListener);
+    }
+
+    /**
+     * Stops the writer thread, operations not written yet fail
+     */
+    @Override
+    public void close() {
+        closed = true;
+        writer.interrupt();
+    }
+
+    private ProcessOperation.Result write(ProcessOperation processOperation) {
+
+        PendingOperation pendingOperation = new PendingOperation(processOperation);
+        pendingOperations.add(pendingOperation);
+
+        if (null != stopCause) {
+            // Writer stopped after this operation was queued, nothing drains the queue anymore
+            pendingOperation.result.completeExceptionally(stopCause);
+        }
+
+        try {
+            return pendingOperation.result.get(writeTimeoutInNanos, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new ThreadSynchronizationException(e.getCause());
+        } catch (TimeoutException e) {
+            // Skipped if not sent yet, otherwise an acquired lock expires or is released by the session heartbeat
+            pendingOperation.result.cancel(false);
+            throw new ThreadSynchronizationException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ThreadSynchronizationException(e);
+        }
+
+    }
+
+    private void writeBatches() {
+
+        List<PendingOperation> batch = new ArrayList<>(maxBatchSize);
+        Throwable cause = null;
+
+        try {
+
+            // The flag stops the writer even if the interruption is swallowed by a bulk write
+            while (!closed) {
+                collectBatch(batch);
+                writeBatch(batch);
+                batch.clear();
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cause = e;
+        } catch (Throwable e) {
+            cause = e;
+            throw e;
+        } finally {
+
+            stopCause = new IllegalStateException("Batch writer stopped", cause);
+            batch.forEach(pendingOperation -> pendingOperation.result.completeExceptionally(stopCause));
+
+            PendingOperation pendingOperation;
+            while (null != (pendingOperation = pendingOperations.poll())) {
+                pendingOperation.result.completeExceptionally(stopCause);
+            }
+
+        }
+
+    }
+
+    private void collectBatch(List<PendingOperation> batch) throws InterruptedException {
+
+        batch.add(pendingOperations.take());
+        final long deadline = System.nanoTime() + windowInNanos;
+
+        while (batch.size() < maxBatchSize) {
+
+            // Operations already queued join the batch even when the window is over
+            PendingOperation pendingOperation = pendingOperations.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+
+            if (null == pendingOperation) {
+                return;
+            }
+
+            batch.add(pendingOperation);
+
+        }
+
+    }
+
+    private void writeBatch(List<PendingOperation> batch) {
+
+        // Callers timed out cancel their operation, a later operation of the same process only starts
+        // after the cancel, so both are never written together
+        batch.removeIf(pendingOperation -> pendingOperation.result.isCancelled());
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<ProcessOperation> processOperations = new ArrayList<>(batch.size());
+        for (PendingOperation pendingOperation : batch) {
+            processOperations.add(pendingOperation.processOperation);
+        }
+
+        try {
+
+            List<ProcessOperation.Result> results = processRepository.executeBulk(processOperations);
+
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(results.get(i));
+            }
+
+        } catch (RuntimeException e) {
+
+            for (PendingOperation pendingOperation : batch) {
+                pendingOperation.result.completeExceptionally(e);
+            }
+
+        }
+
+    }
+
+    private static final class PendingOperation {
+
+        private final ProcessOperation processOperation;
+        private final CompletableFuture<ProcessOperation.Result> result;
+
+        private PendingOperation(ProcessOperation processOperation) {
+            this.processOperation = processOperation;
+            this.result = new CompletableFuture<>();
+        }
+
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.hubbledouble.thread.synchronization.repository.impl;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Watches the changes of a collection in daemon threads, one per watch, until closed.
+ * A change stream ends on errors such as a primary step down, it's opened again after a backoff resuming
+ * after the last change seen, so changes in between are still notified.
+ *
+ * @author Jorge Saldivar
+ */
+class ChangeStreamWatcher implements AutoCloseable {
+
+    private static final long MIN_BACKOFF_IN_MILLIS = 100;
+    private static final long MAX_BACKOFF_IN_MILLIS = 60_000;
+    private static final int CHANGE_STREAM_FATAL_ERROR = 280;
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+
+    private final String threadName;
+    private final Set<Thread> watchers;
+    private final Set<MongoCursor<?>> cursors;
+    private volatile boolean closed;
+
+    ChangeStreamWatcher(String threadName) {
+        this.threadName = threadName;
+        this.watchers = ConcurrentHashMap.newKeySet();
+        this.cursors = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * @param onOpen - Called each time the change stream is opened, changes before it were possibly missed
+     * @param onChange - Called with every change matching the pipeline
+     */
+    void watch(MongoCollection<Document> collection, List<Bson> pipeline,
+               Runnable onOpen, Consumer<ChangeStreamDocument<Document>> onChange) {
+
+        if (closed) {
+            return;
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                watchChanges(collection, pipeline, onOpen, onChange);
+            } finally {
+                watchers.remove(Thread.currentThread());
+            }
+        }, threadName);
+        thread.setDaemon(true);
+        watchers.add(thread);
+        thread.start();
+
+    }
+
+    /**
+     * Stops watching. The change streams are closed, a watcher blocked waiting for the next change
+     * would not see the interruption otherwise
+     */
+    @Override
+    public void close() {
+
+        closed = true;
+        watchers.forEach(Thread::interrupt);
+
+        for (MongoCursor<?> cursor : cursors) {
+            try {
+                cursor.close();
+            } catch (RuntimeException e) {
+                // Empty catch due to the watcher stops anyway once interrupted
+            }
+        }
+
+    }
+
+    private void watchChanges(MongoCollection<Document> collection, List<Bson> pipeline,
+                              Runnable onOpen, Consumer<ChangeStreamDocument<Document>> onChange) {
+
+        BsonDocument resumeToken = null;
+        long backoffInMillis = MIN_BACKOFF_IN_MILLIS;
+
+        while (!closed && !Thread.currentThread().isInterrupted()) {
+
+            ChangeStreamIterable<Document> changeStream = collection.watch(pipeline);
+
+            if (null != resumeToken) {
+                changeStream = changeStream.resumeAfter(resumeToken);
+            }
+
+            try (MongoCursor<ChangeStreamDocument<Document>> cursor = changeStream.iterator()) {
+
+                cursors.add(cursor);
+
+                try {
+
+                    if (closed) {
+                        return;
+                    }
+
+                    onOpen.run();
+
+                    while (cursor.hasNext()) {
+
+                        ChangeStreamDocument<Document> change = cursor.next();
+                        resumeToken = change.getResumeToken();
+                        backoffInMillis = MIN_BACKOFF_IN_MILLIS;
+                        onChange.accept(change);
+
+                    }
+
+                } finally {
+                    cursors.remove(cursor);
+                }
+
+            } catch (MongoException e) {
+
+                if (CHANGE_STREAM_HISTORY_LOST == e.getCode() || CHANGE_STREAM_FATAL_ERROR == e.getCode()) {
+                    // Changes since the last one seen are gone from the oplog, start over from now on
+                    resumeToken = null;
+                }
+
+            } catch (RuntimeException e) {
+                // Empty catch due to change streams need a replica set, opening it is retried after the backoff
+            }
+
+            try {
+                Thread.sleep(backoffInMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            backoffInMillis = Math.min(backoffInMillis * 2, MAX_BACKOFF_IN_MILLIS);
+
+        }
+
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.repository.impl;
+
+import com.hubbledouble.thread.synchronization.domain.Completion;
+import com.hubbledouble.thread.synchronization.repository.CompletionRepository;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+
+/**
+ * Operations used internally by this library to record completed processes in mongo database
+ *
+ * @author Jorge Saldivar
+ */
+public class MongoCompletionRepositoryImpl implements CompletionRepository {
+
+    private static final String FIELD_ID = "_id";
+    private static final String FIELD_EXPIRES_AT = "expiresAt";
+    private final MongoOperations mongoOperations;
+    private volatile boolean indexEnsured;
+
+    public MongoCompletionRepositoryImpl(MongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public Completion findByProcessName(String processName) {
+
+        // Expired completions are removed by the database in the background, they may still be around for a while
+        Query find = new Query(Criteria.where(FIELD_ID).is(processName).and(FIELD_EXPIRES_AT).gt(Instant.now()));
+        return mongoOperations.findOne(find, Completion.class);
+
+    }
+
+    @Override
+    public void save(Completion completion) {
+
+        // Collection is only created by applications executing processes once, ensuring it concurrently is harmless
+        if (!indexEnsured) {
+            mongoOperations.indexOps(Completion.class).ensureIndex(new Index().on(FIELD_EXPIRES_AT, Sort.Direction.ASC).expire(0));
+            indexEnsured = true;
+        }
+
+        mongoOperations.save(completion);
+
+    }
+
+}
@@ -17,14 +17,28 @@
 package com.hubbledouble.thread.synchronization.repository.impl;
 
 import com.hubbledouble.thread.synchronization.domain.Process;
+import com.hubbledouble.thread.synchronization.repository.ProcessOperation;
 import com.hubbledouble.thread.synchronization.repository.ProcessRepository;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.IndexOptions;
-import com.mongodb.client.result.UpdateResult;
+import com.mongodb.client.model.changestream.OperationType;
 import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.index.IndexDefinition;
@@ -33,25 +47,72 @@ import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Operations used internally by this library to interact with mongo database
  *
  * @author Jorge Saldivar
  */
-public class MongoProcessRepositoryImpl implements ProcessRepository {
+public class MongoProcessRepositoryImpl implements ProcessRepository, AutoCloseable {
 
     private static final String FIELD_ID = "_id";
     private static final String FIELD_PROCESS_NAME = "processName";
     private static final String FIELD_PROCESS_SOURCE_ID = "processSourceId";
     private static final String FIELD_VERSION = "version";
     private static final String FIELD_HEARTBEAT = "heartbeat";
+    private static final String FIELD_SESSION_ID = "sessionId";
+    private static final String FIELD_GENERATION = "generation";
+    private static final String FIELD_OPERATION_TYPE = "operationType";
+    private static final Duration PROCESS_EXPIRATION = Duration.ofMinutes(10);
+    private static final int INDEX_OPTIONS_CONFLICT = 85;
+    private static final int DUPLICATE_KEY = 11000;
     private final MongoOperations mongoOperations;
+    private final boolean serverTime;
+    private final ChangeStreamWatcher releaseWatcher;
 
     public MongoProcessRepositoryImpl(MongoOperations mongoOperations) {
+        this(mongoOperations, PROCESS_EXPIRATION);
+    }
+
+    /**
+     * @param processExpiration - Locks whose heartbeat is older than this are removed by the database
+     */
+    public MongoProcessRepositoryImpl(MongoOperations mongoOperations, Duration processExpiration) {
+        this(mongoOperations, processExpiration, false);
+    }
+
+    /**
+     * @param processExpiration - Locks whose heartbeat is older than this are removed by the database
+     * @param serverTime - Heartbeats are stamped and compared with the clock of the database instead of the clock
+     *                   of each node, clock skew between nodes can't make a live lock look expired. Requires MongoDB 4.2
+     */
+    public MongoProcessRepositoryImpl(MongoOperations mongoOperations, Duration processExpiration, boolean serverTime) {
+
+        if (processExpiration.compareTo(Duration.ofSeconds(1)) < 0) {
+            throw new IllegalArgumentException("Process expiration must be at least one second");
+        }
+
         this.mongoOperations = mongoOperations;
+        this.serverTime = serverTime;
+        this.releaseWatcher = new ChangeStreamWatcher("thread-synchronization-release-watch");
         mongoOperations.indexOps(Process.class).ensureIndex(new Index().on(FIELD_PROCESS_NAME, Sort.Direction.ASC).unique());
+        mongoOperations.indexOps(Process.class).ensureIndex(new Index().on(FIELD_SESSION_ID, Sort.Direction.ASC).sparse());
+        ensureExpirationIndex(processExpiration);
+
     }
 
     @Override
@@ -63,6 +124,14 @@ public class MongoProcessRepositoryImpl implements ProcessRepository {
 
     }
 
+    @Override
+    public List<Process> findByProcessNames(Collection<String> processNames) {
+
+        Query find = new Query(Criteria.where(FIELD_PROCESS_NAME).in(processNames));
+        return mongoOperations.find(find, Process.class);
+
+    }
+
     @Override
     public Process findByProcessNameAndProcessSourceId(String processName, String processSourceId) {
 
@@ -75,35 +144,136 @@ public class MongoProcessRepositoryImpl implements ProcessRepository {
     }
 
     @Override
-    public boolean insertLock(String processName, String processSourceId) {
+    public Process acquireLock(String processName, String processSourceId, String sessionId, Duration expiration) {
 
         try {
-            mongoOperations.insert(new Process(processName, processSourceId));
-            return true;
+            return mongoOperations.findAndModify(
+                    createAcquireQuery(processName, expiration),
+                    createAcquireUpdate(processName, processSourceId, sessionId),
+                    FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    Process.class);
         } catch (DuplicateKeyException e) {
+            // Lock document exists and it's still alive, the upsert collided with the unique index
+            return null;
+        }
+
+    }
+
+    @Override
+    public void releaseLock(String processName, String processSourceId) {
+        mongoOperations.remove(createReleaseQuery(processName, processSourceId), Process.class);
+    }
+
+    @Override
+    public boolean acquireLocks(List<ProcessOperation> acquireOperations) {
+
+        if (acquireOperations.isEmpty()) {
+            return true;
+        }
+
+        BulkOperations bulkOperations = mongoOperations.bulkOps(BulkOperations.BulkMode.ORDERED, Process.class);
+        for (ProcessOperation acquireOperation : acquireOperations) {
+            bulkOperations.upsert(
+                    createAcquireQuery(acquireOperation.getProcessName(), acquireOperation.getExpiration()),
+                    createAcquireUpdate(acquireOperation.getProcessName(), acquireOperation.getProcessSourceId(), acquireOperation.getSessionId()));
+        }
+
+        try {
+            bulkOperations.execute();
+            return true;
+        } catch (BulkOperationException e) {
+
+            if (!isOnlyDuplicateKeys(e)) {
+                rollbackLocks(acquireOperations, acquireOperations.size(), e);
+                throw e;
+            }
+
+            // Ordered bulk stops at the first lock still alive, the ones before it were acquired
+            rollbackLocks(acquireOperations, e.getErrors().get(0).getIndex(), e);
             return false;
+
+        } catch (RuntimeException e) {
+            // Any of the upserts could be applied before the error
+            rollbackLocks(acquireOperations, acquireOperations.size(), e);
+            throw e;
         }
 
     }
 
     @Override
-    public boolean transferLock(Process process, String processSourceId) {
+    public void releaseLocks(Collection<String> processNames, String processSourceId) {
+
+        if (processNames.isEmpty()) {
+            return;
+        }
 
         Query find = new Query();
         find
-                .addCriteria(Criteria.where(FIELD_ID).is(process.getId()))
-                .addCriteria(Criteria.where(FIELD_PROCESS_NAME).is(process.getProcessName()))
-                .addCriteria(Criteria.where(FIELD_VERSION).is(process.getVersion()));
+                .addCriteria(Criteria.where(FIELD_PROCESS_NAME).in(processNames))
+                .addCriteria(Criteria.where(FIELD_PROCESS_SOURCE_ID).is(processSourceId));
+        mongoOperations.remove(find, Process.class);
+
+    }
+
+    @Override
+    public List<ProcessOperation.Result> executeBulk(List<ProcessOperation> processOperations) {
+
+        List<ProcessOperation.Result> results =
+                new ArrayList<>(Collections.nCopies(processOperations.size(), ProcessOperation.Result.APPLIED));
+
+        if (processOperations.isEmpty()) {
+            return results;
+        }
+
+        BulkOperations bulkOperations = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, Process.class);
+        for (ProcessOperation processOperation : processOperations) {
 
-        Update update = createUpdate(process, processSourceId);
+            if (ProcessOperation.Type.ACQUIRE == processOperation.getType()) {
+                bulkOperations.upsert(
+                        createAcquireQuery(processOperation.getProcessName(), processOperation.getExpiration()),
+                        createAcquireUpdate(processOperation.getProcessName(), processOperation.getProcessSourceId(), processOperation.getSessionId()));
+            } else {
+                bulkOperations.remove(createReleaseQuery(processOperation.getProcessName(), processOperation.getProcessSourceId()));
+            }
+
+        }
+
+        BulkWriteResult bulkWriteResult;
 
         try {
-            UpdateResult updateResult = mongoOperations.upsert(find, update, Process.class);
-            return null != updateResult && updateResult.getMatchedCount() > 0;
-        } catch (DuplicateKeyException e) {
-            return false;
+            bulkWriteResult = bulkOperations.execute();
+        } catch (BulkOperationException e) {
+
+            if (!isOnlyDuplicateKeys(e)) {
+                throw e;
+            }
+
+            // Unordered bulk applies every other operation, acquires of locks still alive fail with duplicate key
+            for (BulkWriteError error : e.getErrors()) {
+                results.set(error.getIndex(), ProcessOperation.Result.REJECTED);
+            }
+
+            bulkWriteResult = e.getResult();
+
+        }
+
+        Set<Integer> insertedIndexes = new HashSet<>();
+        for (BulkWriteUpsert upsert : bulkWriteResult.getUpserts()) {
+            insertedIndexes.add(upsert.getIndex());
         }
 
+        for (int i = 0; i < processOperations.size(); i++) {
+
+            // An acquire not inserted updated an expired lock, same as a generation above 1
+            if (ProcessOperation.Type.ACQUIRE == processOperations.get(i).getType()
+                    && ProcessOperation.Result.APPLIED == results.get(i) && !insertedIndexes.contains(i)) {
+                results.set(i, ProcessOperation.Result.TAKEN_OVER);
+            }
+
+        }
+
+        return results;
+
     }
 
     @Override
@@ -120,6 +290,47 @@ public class MongoProcessRepositoryImpl implements ProcessRepository {
 
     }
 
+    @Override
+    public Set<String> performHeartBeats(Map<String, String> processSourceIds) {
+
+        if (processSourceIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        BulkOperations bulkOperations = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, Process.class);
+        processSourceIds.forEach((processName, processSourceId) -> {
+
+            Query find = new Query();
+            find
+                    .addCriteria(Criteria.where(FIELD_PROCESS_NAME).is(processName))
+                    .addCriteria(Criteria.where(FIELD_PROCESS_SOURCE_ID).is(processSourceId));
+
+            Update update = setHeartbeat(new Update())
+                    .set(FIELD_VERSION, UUID.randomUUID().toString());
+
+            bulkOperations.updateOne(find, update);
+
+        });
+
+        if (bulkOperations.execute().getMatchedCount() == processSourceIds.size()) {
+            return Collections.emptySet();
+        }
+
+        // Bulk results only report totals, look up which locks are no longer owned
+        Query find = new Query(Criteria.where(FIELD_PROCESS_NAME).in(processSourceIds.keySet()));
+        find.fields().include(FIELD_PROCESS_NAME).include(FIELD_PROCESS_SOURCE_ID);
+
+        Set<String> lostProcesses = new HashSet<>(processSourceIds.keySet());
+        for (Process process : mongoOperations.find(find, Process.class)) {
+            if (Objects.equals(processSourceIds.get(process.getProcessName()), process.getProcessSourceId())) {
+                lostProcesses.remove(process.getProcessName());
+            }
+        }
+
+        return lostProcesses;
+
+    }
+
     @Override
     public void delete(Process process) {
         mongoOperations.remove(process);
@@ -131,19 +342,210 @@ public class MongoProcessRepositoryImpl implements ProcessRepository {
         Criteria criteria = new Criteria();
         criteria.orOperator(
                 Criteria.where(FIELD_HEARTBEAT).lte(date),
-                Criteria.where(FIELD_HEARTBEAT).exists(false));
+                Criteria.where(FIELD_HEARTBEAT).exists(false).and(FIELD_SESSION_ID).exists(false));
 
         Query find = new Query(criteria);
-        mongoOperations.findAllAndRemove(find, Process.class);
+        mongoOperations.remove(find, Process.class);
+
+    }
+
+    @Override
+    public void deleteBySessionIds(Collection<String> sessionIds) {
+
+        Query find = new Query(Criteria.where(FIELD_SESSION_ID).in(sessionIds));
+        mongoOperations.remove(find, Process.class);
+
+    }
+
+    @Override
+    public Set<String> findSessionIds() {
+
+        Query find = new Query(Criteria.where(FIELD_SESSION_ID).exists(true));
+        return new HashSet<>(mongoOperations.findDistinct(find, FIELD_SESSION_ID, Process.class, String.class));
+
+    }
+
+    @Override
+    public void watchReleases(Consumer<ObjectId> releaseListener) {
+
+        final List<Bson> pipeline =
+                Collections.singletonList(Aggregates.match(Filters.eq(FIELD_OPERATION_TYPE, OperationType.DELETE.getValue())));
+
+        releaseWatcher.watch(
+                mongoOperations.getCollection(mongoOperations.getCollectionName(Process.class)),
+                pipeline,
+                // Stream open, releases before this point were possibly missed
+                () -> releaseListener.accept(null),
+                change -> releaseListener.accept(change.getDocumentKey().getObjectId(FIELD_ID).getValue()));
+
+    }
+
+    /**
+     * Stops watching releases
+     */
+    @Override
+    public void close() {
+        releaseWatcher.close();
+    }
+
+    /**
+     * The expiration is rounded up to whole seconds, an expiration of 0 would remove live locks
+     */
+    private void ensureExpirationIndex(Duration processExpiration) {
+
+        final long expireAfterSeconds = processExpiration.getSeconds() + (processExpiration.getNano() > 0 ? 1 : 0);
+
+        try {
+            mongoOperations.indexOps(Process.class)
+                    .ensureIndex(new Index().on(FIELD_HEARTBEAT, Sort.Direction.ASC).expire(expireAfterSeconds, TimeUnit.SECONDS));
+        } catch (DataAccessException e) {
+
+            if (!isIndexOptionsConflict(e)) {
+                throw e;
+            }
+
+            // Index already exists with other expiration, update it in place
+            mongoOperations.executeCommand(
+                    new Document("collMod", mongoOperations.getCollectionName(Process.class))
+                            .append("index", new Document("keyPattern", new Document(FIELD_HEARTBEAT, 1))
+                                    .append("expireAfterSeconds", expireAfterSeconds)));
+
+        }
+
+    }
+
+    private void rollbackLocks(List<ProcessOperation> acquireOperations, int acquiredCount, RuntimeException cause) {
+
+        List<String> acquiredProcessNames = new ArrayList<>(acquiredCount);
+
+        for (ProcessOperation acquireOperation : acquireOperations.subList(0, acquiredCount)) {
+            acquiredProcessNames.add(acquireOperation.getProcessName());
+        }
+
+        try {
+            releaseLocks(acquiredProcessNames, acquireOperations.get(0).getProcessSourceId());
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+            throw cause;
+        }
+
+    }
+
+    /**
+     * Duplicate key is the only write error meaning a lock is held by other process,
+     * any other error or a write concern error leaves the outcome unknown
+     */
+    private boolean isOnlyDuplicateKeys(BulkOperationException e) {
+
+        if (e.getCause() instanceof MongoBulkWriteException
+                && null != ((MongoBulkWriteException) e.getCause()).getWriteConcernError()) {
+            return false;
+        }
+
+        for (BulkWriteError error : e.getErrors()) {
+            if (DUPLICATE_KEY != error.getCode()) {
+                return false;
+            }
+        }
+
+        return !e.getErrors().isEmpty();
+
+    }
+
+    private boolean isIndexOptionsConflict(DataAccessException e) {
+        return e.getCause() instanceof MongoException && INDEX_OPTIONS_CONFLICT == ((MongoException) e.getCause()).getCode();
+    }
+
+    private Query createAcquireQuery(String processName, Duration expiration) {
+
+        if (null == expiration) {
+            // Only a lock left without heartbeat nor session is taken over, a held one never is
+            return new Query(Criteria.where(FIELD_PROCESS_NAME).is(processName)
+                    .and(FIELD_HEARTBEAT).exists(false).and(FIELD_SESSION_ID).exists(false));
+        }
+
+        return new Query(
+                Criteria.where(FIELD_PROCESS_NAME).is(processName)
+                        .orOperator(
+                                isHeartbeatOlderThan(expiration),
+                                Criteria.where(FIELD_HEARTBEAT).exists(false).and(FIELD_SESSION_ID).exists(false)));
+
+    }
+
+    /**
+     * On server time the age of the heartbeat is computed by the database with its own clock, $$NOW
+     */
+    private Criteria isHeartbeatOlderThan(Duration expiration) {
+
+        if (!serverTime) {
+            return Criteria.where(FIELD_HEARTBEAT).lte(Instant.now().minus(expiration));
+        }
+
+        Document expiredBefore = new Document("$subtract", Arrays.asList("$$NOW", expiration.toMillis()));
+        return Criteria.where(FIELD_HEARTBEAT).exists(true)
+                .and("$expr").is(new Document("$lte", Arrays.asList("$" + FIELD_HEARTBEAT, expiredBefore)));
+
+    }
+
+    private Update setHeartbeat(Update update) {
+        return serverTime ? update.currentDate(FIELD_HEARTBEAT) : update.set(FIELD_HEARTBEAT, Instant.now());
+    }
+
+    /**
+     * The generation is only incremented, an upsert inserting the lock starts it at 1
+     */
+    private Update createAcquireUpdate(String processName, String processSourceId, String sessionId) {
+
+        Update update = null == sessionId
+                ? createUpdate(new Process(processName, processSourceId), processSourceId).unset(FIELD_SESSION_ID)
+                : createSessionUpdate(new Process(processName, processSourceId), sessionId);
+
+        // Id derived from the name, a release notification is matched to its process without reading it
+        return update.inc(FIELD_GENERATION, 1).setOnInsert(FIELD_ID, Process.idOf(processName));
+
+    }
+
+    private Query createReleaseQuery(String processName, String processSourceId) {
+
+        Query find = new Query();
+        find
+                .addCriteria(Criteria.where(FIELD_PROCESS_NAME).is(processName))
+                .addCriteria(Criteria.where(FIELD_PROCESS_SOURCE_ID).is(processSourceId));
+        return find;
 
     }
 
     private Update createUpdate(Process process, String processSourceId) {
 
         process.setProcessSourceId(processSourceId);
+        process.setVersion();
+
+        if (serverTime) {
+            // Null fields are not written, the heartbeat is stamped by the database
+            process.setHeartbeat(null);
+            return setHeartbeat(toUpdate(process));
+        }
+
         process.setHeartbeat();
+        return toUpdate(process);
+
+    }
+
+    /**
+     * The session heartbeat keeps the lock alive, without its own heartbeat it's not removed by the expiration index
+     */
+    private Update createSessionUpdate(Process process, String sessionId) {
+
+        process.setSessionId(sessionId);
+        process.setHeartbeat(null);
         process.setVersion();
 
+        return toUpdate(process).unset(FIELD_HEARTBEAT);
+
+    }
+
+    private Update toUpdate(Process process) {
+
         BasicDBObject basicDBObject = new BasicDBObject();
         mongoOperations.getConverter().write(process, basicDBObject);
         BasicDBObject updateDoc = new BasicDBObject("$set", basicDBObject);
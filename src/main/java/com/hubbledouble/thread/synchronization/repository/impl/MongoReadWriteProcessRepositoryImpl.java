@@ -0,0 +1,311 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.repository.impl;
+
+import com.hubbledouble.thread.synchronization.domain.ReadWriteProcess;
+import com.hubbledouble.thread.synchronization.repository.ReadWriteProcessRepository;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.function.Predicate;
+
+/**
+ * Operations used internally by this library to interact with the read/write locks in mongo database
+ *
+ * @author Jorge Saldivar
+ */
+public class MongoReadWriteProcessRepositoryImpl implements ReadWriteProcessRepository, AutoCloseable {
+
+    private static final String FIELD_PROCESS_NAME = "processName";
+    private static final String FIELD_READERS = "readers";
+    private static final String FIELD_WRITER = "writer";
+    private static final String FIELD_WRITER_INTENT = "writerIntent";
+    private static final String FIELD_PROCESS_SOURCE_ID = "processSourceId";
+    private static final String FIELD_HEARTBEAT = "heartbeat";
+    private static final String FIELD_OPERATION_TYPE = "operationType";
+    private static final String FIELD_UPDATED_FIELDS = "updateDescription.updatedFields";
+    private static final String FIELD_REMOVED_FIELDS = "updateDescription.removedFields";
+    private final MongoOperations mongoOperations;
+    private final ChangeStreamWatcher changeWatcher;
+
+    public MongoReadWriteProcessRepositoryImpl(MongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+        this.changeWatcher = new ChangeStreamWatcher("thread-synchronization-read-write-watch");
+        mongoOperations.indexOps(ReadWriteProcess.class).ensureIndex(new Index().on(FIELD_PROCESS_NAME, Sort.Direction.ASC).unique());
+    }
+
+    @Override
+    public boolean acquireReadLock(String processName, String processSourceId, Instant expiredBefore) {
+
+        Query find = new Query(
+                Criteria.where(FIELD_PROCESS_NAME).is(processName)
+                        .andOperator(
+                                isFree(FIELD_WRITER, expiredBefore),
+                                isFree(FIELD_WRITER_INTENT, expiredBefore)));
+
+        Update update = new Update().push(FIELD_READERS, holder(processSourceId));
+
+        return upsert(find, update);
+
+    }
+
+    @Override
+    public boolean acquireWriteIntent(String processName, String processSourceId, Instant expiredBefore) {
+
+        Query find = new Query(
+                Criteria.where(FIELD_PROCESS_NAME).is(processName)
+                        .andOperator(
+                                isFree(FIELD_WRITER, expiredBefore),
+                                new Criteria().orOperator(
+                                        isFree(FIELD_WRITER_INTENT, expiredBefore),
+                                        Criteria.where(FIELD_WRITER_INTENT + "." + FIELD_PROCESS_SOURCE_ID).is(processSourceId))));
+
+        Update update = new Update().set(FIELD_WRITER_INTENT, holder(processSourceId));
+
+        return upsert(find, update);
+
+    }
+
+    @Override
+    public boolean acquireWriteLock(String processName, String processSourceId, Instant expiredBefore) {
+
+        // Readers whose heartbeat expired don't count, they are dropped along with the write in a single round trip
+        Query find = new Query(
+                Criteria.where(FIELD_PROCESS_NAME).is(processName)
+                        .and(FIELD_WRITER_INTENT + "." + FIELD_PROCESS_SOURCE_ID).is(processSourceId)
+                        .and(FIELD_READERS).not().elemMatch(Criteria.where(FIELD_HEARTBEAT).gt(expiredBefore)));
+
+        Update update = new Update()
+                .set(FIELD_WRITER, holder(processSourceId))
+                .unset(FIELD_WRITER_INTENT)
+                .unset(FIELD_READERS);
+
+        return mongoOperations.updateFirst(find, update, ReadWriteProcess.class).getModifiedCount() > 0;
+
+    }
+
+    @Override
+    public Set<String> findWithWriterIntent(Collection<String> processNames, Instant expiredBefore) {
+
+        Query find = new Query(
+                Criteria.where(FIELD_PROCESS_NAME).in(processNames)
+                        .and(FIELD_WRITER_INTENT + "." + FIELD_HEARTBEAT).gt(expiredBefore));
+        find.fields().include(FIELD_PROCESS_NAME);
+
+        return mongoOperations.find(find, ReadWriteProcess.class).stream()
+                .map(ReadWriteProcess::getProcessName)
+                .collect(Collectors.toSet());
+
+    }
+
+    @Override
+    public void releaseWriteIntent(String processName, String processSourceId) {
+
+        Query find = new Query(
+                Criteria.where(FIELD_PROCESS_NAME).is(processName)
+                        .and(FIELD_WRITER_INTENT + "." + FIELD_PROCESS_SOURCE_ID).is(processSourceId));
+
+        mongoOperations.updateFirst(find, new Update().unset(FIELD_WRITER_INTENT), ReadWriteProcess.class);
+        removeIfUnused(processName);
+
+    }
+
+    @Override
+    public void releaseReadLock(String processName, String processSourceId) {
+
+        Query find = new Query(Criteria.where(FIELD_PROCESS_NAME).is(processName));
+        Update update = new Update().pull(FIELD_READERS, new Document(FIELD_PROCESS_SOURCE_ID, processSourceId));
+
+        mongoOperations.updateFirst(find, update, ReadWriteProcess.class);
+        removeIfUnused(processName);
+
+    }
+
+    @Override
+    public void releaseWriteLock(String processName, String processSourceId) {
+
+        Query find = new Query(
+                Criteria.where(FIELD_PROCESS_NAME).is(processName)
+                        .and(FIELD_WRITER + "." + FIELD_PROCESS_SOURCE_ID).is(processSourceId));
+
+        mongoOperations.updateFirst(find, new Update().unset(FIELD_WRITER), ReadWriteProcess.class);
+        removeIfUnused(processName);
+
+    }
+
+    @Override
+    public Set<String> performReadHeartBeats(Map<String, String> processSourceIds) {
+
+        return performHeartBeats(
+                processSourceIds,
+                FIELD_READERS + "." + FIELD_PROCESS_SOURCE_ID,
+                FIELD_READERS + ".$." + FIELD_HEARTBEAT,
+                process -> process.getReaders().stream()
+                        .anyMatch(reader -> Objects.equals(processSourceIds.get(process.getProcessName()), reader.getProcessSourceId())));
+
+    }
+
+    @Override
+    public Set<String> performWriteHeartBeats(Map<String, String> processSourceIds) {
+
+        return performHeartBeats(
+                processSourceIds,
+                FIELD_WRITER + "." + FIELD_PROCESS_SOURCE_ID,
+                FIELD_WRITER + "." + FIELD_HEARTBEAT,
+                process -> null != process.getWriter()
+                        && Objects.equals(processSourceIds.get(process.getProcessName()), process.getWriter().getProcessSourceId()));
+
+    }
+
+    /**
+     * Readers leaving rewrite the whole readers array, writers and waiting writers leaving are unset.
+     * Heartbeats only set nested fields and are left out
+     */
+    @Override
+    public void watchChanges(Runnable releaseListener, Runnable writerIntentListener) {
+
+        final List<Bson> pipeline = Collections.singletonList(Aggregates.match(Filters.or(
+                Filters.eq(FIELD_OPERATION_TYPE, OperationType.DELETE.getValue()),
+                Filters.exists(FIELD_UPDATED_FIELDS + "." + FIELD_READERS),
+                Filters.exists(FIELD_UPDATED_FIELDS + "." + FIELD_WRITER_INTENT),
+                Filters.exists(FIELD_REMOVED_FIELDS + ".0"))));
+
+        changeWatcher.watch(
+                mongoOperations.getCollection(mongoOperations.getCollectionName(ReadWriteProcess.class)),
+                pipeline,
+                releaseListener,
+                change -> {
+
+                    if (null != change.getUpdateDescription()
+                            && null != change.getUpdateDescription().getUpdatedFields()
+                            && change.getUpdateDescription().getUpdatedFields().containsKey(FIELD_WRITER_INTENT)) {
+                        writerIntentListener.run();
+                    } else {
+                        releaseListener.run();
+                    }
+
+                });
+
+    }
+
+    /**
+     * Stops watching changes
+     */
+    @Override
+    public void close() {
+        changeWatcher.close();
+    }
+
+    private Set<String> performHeartBeats(Map<String, String> processSourceIds, String sourceIdField, String heartbeatField,
+                                          Predicate<ReadWriteProcess> isHeld) {
+
+        if (processSourceIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        BulkOperations bulkOperations = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, ReadWriteProcess.class);
+        processSourceIds.forEach((processName, processSourceId) -> {
+
+            Query find = new Query(Criteria.where(FIELD_PROCESS_NAME).is(processName).and(sourceIdField).is(processSourceId));
+            bulkOperations.updateOne(find, new Update().set(heartbeatField, Instant.now()));
+
+        });
+
+        if (bulkOperations.execute().getMatchedCount() == processSourceIds.size()) {
+            return Collections.emptySet();
+        }
+
+        // Bulk results only report totals, look up which holds are gone
+        Query find = new Query(Criteria.where(FIELD_PROCESS_NAME).in(processSourceIds.keySet()));
+
+        Set<String> lostProcesses = new HashSet<>(processSourceIds.keySet());
+        for (ReadWriteProcess process : mongoOperations.find(find, ReadWriteProcess.class)) {
+            if (isHeld.test(process)) {
+                lostProcesses.remove(process.getProcessName());
+            }
+        }
+
+        return lostProcesses;
+
+    }
+
+    private boolean upsert(Query find, Update update) {
+
+        try {
+            UpdateResult updateResult = mongoOperations.upsert(find, update, ReadWriteProcess.class);
+            return updateResult.getMatchedCount() > 0 || null != updateResult.getUpsertedId();
+        } catch (DuplicateKeyException e) {
+            // Lock document exists and it doesn't allow this hold, the upsert collided with the unique index
+            return false;
+        }
+
+    }
+
+    /**
+     * Lock documents are removed once nobody holds them, so they don't pile up
+     */
+    private void removeIfUnused(String processName) {
+
+        Query find = new Query(
+                Criteria.where(FIELD_PROCESS_NAME).is(processName)
+                        .and(FIELD_WRITER).exists(false)
+                        .and(FIELD_WRITER_INTENT).exists(false)
+                        .orOperator(
+                                Criteria.where(FIELD_READERS).exists(false),
+                                Criteria.where(FIELD_READERS).size(0)));
+
+        mongoOperations.remove(find, ReadWriteProcess.class);
+
+    }
+
+    private Criteria isFree(String holderField, Instant expiredBefore) {
+
+        return new Criteria().orOperator(
+                Criteria.where(holderField).exists(false),
+                Criteria.where(holderField + "." + FIELD_HEARTBEAT).lte(expiredBefore));
+
+    }
+
+    private Document holder(String processSourceId) {
+
+        return new Document(FIELD_PROCESS_SOURCE_ID, processSourceId)
+                .append(FIELD_HEARTBEAT, Instant.now());
+
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.repository.impl;
+
+import com.hubbledouble.thread.synchronization.domain.Session;
+import com.hubbledouble.thread.synchronization.repository.SessionRepository;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Operations used internally by this library to keep node sessions in mongo database
+ *
+ * @author Jorge Saldivar
+ */
+public class MongoSessionRepositoryImpl implements SessionRepository {
+
+    private static final String FIELD_ID = "_id";
+    private static final String FIELD_HEARTBEAT = "heartbeat";
+    private final MongoOperations mongoOperations;
+    private final boolean serverTime;
+
+    public MongoSessionRepositoryImpl(MongoOperations mongoOperations) {
+        this(mongoOperations, false);
+    }
+
+    /**
+     * @param serverTime - Heartbeats are stamped and compared with the clock of the database. Requires MongoDB 4.2
+     */
+    public MongoSessionRepositoryImpl(MongoOperations mongoOperations, boolean serverTime) {
+        this.mongoOperations = mongoOperations;
+        this.serverTime = serverTime;
+        // No expiration index, sessions must only be removed together with their locks
+        mongoOperations.indexOps(Session.class).ensureIndex(new Index().on(FIELD_HEARTBEAT, Sort.Direction.ASC));
+    }
+
+    @Override
+    public void insert(Session session) {
+
+        if (!serverTime) {
+            mongoOperations.insert(session);
+            return;
+        }
+
+        // Upsert of a new id, the first heartbeat is stamped by the database as well
+        Query find = new Query(Criteria.where(FIELD_ID).is(session.getId()));
+        mongoOperations.upsert(find, setHeartbeat(new Update()), Session.class);
+
+    }
+
+    @Override
+    public boolean performHeartBeat(String sessionId) {
+
+        Query find = new Query(Criteria.where(FIELD_ID).is(sessionId));
+        UpdateResult updateResult = mongoOperations.updateFirst(find, setHeartbeat(new Update()), Session.class);
+        return updateResult.getMatchedCount() > 0;
+
+    }
+
+    @Override
+    public List<String> findSessionIdsOlderThan(Duration expiration) {
+
+        Query find = new Query(isHeartbeatOlderThan(expiration));
+        find.fields().include(FIELD_ID);
+
+        return mongoOperations.find(find, Session.class).stream()
+                .map(Session::getId)
+                .collect(Collectors.toList());
+
+    }
+
+    @Override
+    public boolean deleteSessionOlderThan(String sessionId, Duration expiration) {
+
+        Query find = new Query(new Criteria().andOperator(Criteria.where(FIELD_ID).is(sessionId), isHeartbeatOlderThan(expiration)));
+        return null != mongoOperations.findAndRemove(find, Session.class);
+
+    }
+
+    @Override
+    public Set<String> findExistingSessionIds(Collection<String> sessionIds) {
+
+        Query find = new Query(Criteria.where(FIELD_ID).in(sessionIds));
+        find.fields().include(FIELD_ID);
+
+        return mongoOperations.find(find, Session.class).stream()
+                .map(Session::getId)
+                .collect(Collectors.toSet());
+
+    }
+
+    private Criteria isHeartbeatOlderThan(Duration expiration) {
+
+        if (!serverTime) {
+            return Criteria.where(FIELD_HEARTBEAT).lte(Instant.now().minus(expiration));
+        }
+
+        Document expiredBefore = new Document("$subtract", Arrays.asList("$$NOW", expiration.toMillis()));
+        return Criteria.where(FIELD_HEARTBEAT).exists(true)
+                .and("$expr").is(new Document("$lte", Arrays.asList("$" + FIELD_HEARTBEAT, expiredBefore)));
+
+    }
+
+    private Update setHeartbeat(Update update) {
+        return serverTime ? update.currentDate(FIELD_HEARTBEAT) : update.set(FIELD_HEARTBEAT, Instant.now());
+    }
+
+}
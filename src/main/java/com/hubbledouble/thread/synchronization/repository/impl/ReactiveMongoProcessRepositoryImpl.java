@@ -0,0 +1,163 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.repository.impl;
+
+import com.hubbledouble.thread.synchronization.domain.Process;
+import com.hubbledouble.thread.synchronization.repository.ReactiveProcessRepository;
+import com.mongodb.MongoException;
+import org.bson.Document;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non blocking operations used internally by this library to interact with mongo database
+ *
+ * @author Jorge Saldivar
+ */
+public class ReactiveMongoProcessRepositoryImpl implements ReactiveProcessRepository {
+
+    private static final String FIELD_PROCESS_NAME = "processName";
+    private static final String FIELD_PROCESS_SOURCE_ID = "processSourceId";
+    private static final String FIELD_VERSION = "version";
+    private static final String FIELD_HEARTBEAT = "heartbeat";
+    private static final Duration PROCESS_EXPIRATION = Duration.ofMinutes(10);
+    private static final int INDEX_OPTIONS_CONFLICT = 85;
+    private final ReactiveMongoOperations reactiveMongoOperations;
+    private final Duration processExpiration;
+    private final Mono<Void> indexes;
+    private volatile boolean indexesEnsured;
+
+    public ReactiveMongoProcessRepositoryImpl(ReactiveMongoOperations reactiveMongoOperations) {
+        this(reactiveMongoOperations, PROCESS_EXPIRATION);
+    }
+
+    /**
+     * @param processExpiration - Locks whose heartbeat is older than this are removed by the database
+     */
+    public ReactiveMongoProcessRepositoryImpl(ReactiveMongoOperations reactiveMongoOperations, Duration processExpiration) {
+        if (processExpiration.compareTo(Duration.ofSeconds(1)) < 0) {
+            throw new IllegalArgumentException("Process expiration must be at least one second");
+        }
+
+        this.reactiveMongoOperations = reactiveMongoOperations;
+        this.processExpiration = processExpiration;
+        // Created on first use, so constructing the repository doesn't block. Only success is remembered,
+        // a failure is retried by the next operation
+        this.indexes = Mono.defer(() -> indexesEnsured
+                ? Mono.<Void>empty()
+                : Mono.when(
+                        reactiveMongoOperations.indexOps(Process.class).ensureIndex(new Index().on(FIELD_PROCESS_NAME, Sort.Direction.ASC).unique()),
+                        ensureExpirationIndex())
+                .doOnSuccess(ignored -> indexesEnsured = true));
+    }
+
+    @Override
+    public Mono<Process> acquireLock(String processName, String processSourceId, Duration expiration) {
+
+        // Without expiration only a lock left without heartbeat is taken over, a held one never is
+        Query find = null == expiration
+                ? new Query(Criteria.where(FIELD_PROCESS_NAME).is(processName).and(FIELD_HEARTBEAT).exists(false))
+                : new Query(
+                        Criteria.where(FIELD_PROCESS_NAME).is(processName)
+                                .orOperator(
+                                        Criteria.where(FIELD_HEARTBEAT).lte(Instant.now().minus(expiration)),
+                                        Criteria.where(FIELD_HEARTBEAT).exists(false)));
+
+        Update update = new Update()
+                .set(FIELD_PROCESS_SOURCE_ID, processSourceId)
+                .set(FIELD_VERSION, UUID.randomUUID().toString())
+                .set(FIELD_HEARTBEAT, Instant.now());
+
+        return indexes.then(
+                reactiveMongoOperations
+                        .findAndModify(find, update, FindAndModifyOptions.options().upsert(true).returnNew(true), Process.class)
+                        // Lock document exists and it's still alive, the upsert collided with the unique index
+                        .onErrorResume(DuplicateKeyException.class, e -> Mono.empty()));
+
+    }
+
+    @Override
+    public Mono<Boolean> performHeartBeat(String processName, String processSourceId) {
+
+        Update update = new Update()
+                .set(FIELD_HEARTBEAT, Instant.now())
+                .set(FIELD_VERSION, UUID.randomUUID().toString());
+
+        return reactiveMongoOperations
+                .updateFirst(findByProcessNameAndProcessSourceId(processName, processSourceId), update, Process.class)
+                .map(updateResult -> updateResult.getMatchedCount() > 0);
+
+    }
+
+    @Override
+    public Mono<Void> releaseLock(String processName, String processSourceId) {
+
+        return reactiveMongoOperations
+                .remove(findByProcessNameAndProcessSourceId(processName, processSourceId), Process.class)
+                .then();
+
+    }
+
+    /**
+     * The expiration is rounded up to whole seconds, an expiration of 0 would remove live locks
+     */
+    private Mono<String> ensureExpirationIndex() {
+
+        final long expireAfterSeconds = processExpiration.getSeconds() + (processExpiration.getNano() > 0 ? 1 : 0);
+
+        return reactiveMongoOperations.indexOps(Process.class)
+                .ensureIndex(new Index().on(FIELD_HEARTBEAT, Sort.Direction.ASC).expire(expireAfterSeconds, TimeUnit.SECONDS))
+                // Index already exists with other expiration, update it in place
+                .onErrorResume(this::isIndexOptionsConflict, e -> reactiveMongoOperations
+                        .executeCommand(new Document("collMod", reactiveMongoOperations.getCollectionName(Process.class))
+                                .append("index", new Document("keyPattern", new Document(FIELD_HEARTBEAT, 1))
+                                        .append("expireAfterSeconds", expireAfterSeconds)))
+                        .thenReturn(FIELD_HEARTBEAT));
+
+    }
+
+    private boolean isIndexOptionsConflict(Throwable throwable) {
+
+        Throwable cause = throwable instanceof DataAccessException ? throwable.getCause() : throwable;
+        return cause instanceof MongoException && INDEX_OPTIONS_CONFLICT == ((MongoException) cause).getCode();
+
+    }
+
+    private Query findByProcessNameAndProcessSourceId(String processName, String processSourceId) {
+
+        Query find = new Query();
+        find
+                .addCriteria(Criteria.where(FIELD_PROCESS_NAME).is(processName))
+                .addCriteria(Criteria.where(FIELD_PROCESS_SOURCE_ID).is(processSourceId));
+        return find;
+
+    }
+
+}
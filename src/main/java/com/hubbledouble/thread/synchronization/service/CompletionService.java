@@ -0,0 +1,38 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.service;
+
+import java.time.Duration;
+
+/**
+ * Interface used to provide the completion records of processes executed once, hiding the data layer
+ *
+ * @author Jorge Saldivar
+ */
+public interface CompletionService {
+
+    /**
+     * @return true if the process was completed and its retention did not expire yet
+     */
+    boolean isCompleted(String processName);
+
+    /**
+     * @param retention - How long the process is considered completed
+     */
+    void complete(String processName, Duration retention);
+
+}
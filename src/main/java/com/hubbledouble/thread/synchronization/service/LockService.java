@@ -17,6 +17,10 @@
 package com.hubbledouble.thread.synchronization.service;
 
 import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Interface used to provide main functionality for the lock mechanism hiding the data layer
@@ -25,10 +29,55 @@ import java.time.Duration;
  */
 public interface LockService {
 
+    /**
+     * @param duration - How old the heartbeat of a lock must be for it to be taken over,
+     *                 or null to only acquire the lock once released and never take it over
+     */
     boolean acquireLock(String processName, String processSourceId, Duration duration);
 
+    /**
+     * Same as {@link #acquireLock(String, String, Duration)} but waits up to {@code timeout} for the lock to be released
+     */
+    boolean acquireLock(String processName, String processSourceId, Duration duration, Duration timeout);
+
+    /**
+     * Acquires all the locks at once or none of them. Locks are always taken in the same canonical order,
+     * so nodes competing for overlapping locks never end up holding a part of them each
+     *
+     * @param processDurations - How old the heartbeat of each lock must be for it to be taken over, keyed by process name
+     */
+    boolean acquireLocks(Map<String, Duration> processDurations, String processSourceId);
+
+    /**
+     * Acquires with a single write every lock not held by other process, the rest are skipped
+     *
+     * @param processDurations - How old the heartbeat of each lock must be for it to be taken over, keyed by process name
+     * @return the process names acquired
+     */
+    List<String> acquireAvailableLocks(Map<String, Duration> processDurations, String processSourceId);
+
+    /**
+     * Finds with a single read which of the locks are free or could be taken over
+     *
+     * @param duration - How old the heartbeat of a lock must be for it to be taken over
+     * @return the available process names, in the given order
+     */
+    List<String> findAvailable(Collection<String> processNames, Duration duration);
+
     void performHeartbeat(String processName, String processSourceId);
 
+    Set<String> performHeartbeats(Map<String, String> processSourceIds);
+
     void releaseLock(String processName, String processSourceId);
 
+    void releaseLocks(Collection<String> processNames, String processSourceId);
+
+    void deleteExpiredLocks();
+
+    /**
+     * Renews the session of this node and deletes the expired sessions of other nodes along with their locks.
+     * Does nothing unless locks are held through a session
+     */
+    void performSessionHeartbeat();
+
 }
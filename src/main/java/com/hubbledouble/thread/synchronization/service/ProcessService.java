@@ -17,6 +17,15 @@
 package com.hubbledouble.thread.synchronization.service;
 
 import com.hubbledouble.thread.synchronization.domain.Process;
+import com.hubbledouble.thread.synchronization.repository.ProcessOperation;
+import org.bson.types.ObjectId;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Interface used to provide main functionality hiding the data layer
@@ -27,16 +36,32 @@ public interface ProcessService {
 
     Process findByProcessName(String processName);
 
+    List<Process> findByProcessNames(Collection<String> processNames);
+
     Process findByProcessNameAndProcessSourceId(String processName, String processSourceId);
 
-    boolean insertLock(String processName, String processSourceId);
+    Process acquireLock(String processName, String processSourceId, String sessionId, Duration expiration);
+
+    void releaseLock(String processName, String processSourceId);
+
+    boolean acquireLocks(List<ProcessOperation> acquireOperations);
+
+    void releaseLocks(Collection<String> processNames, String processSourceId);
 
-    boolean transferLock(Process process, String processSourceId);
+    List<ProcessOperation.Result> executeBulk(List<ProcessOperation> processOperations);
 
     void performHeartbeat(Process process);
 
+    Set<String> performHeartbeats(Map<String, String> processSourceIds);
+
     void delete(Process process);
 
     void deleteOldCompletedProcesses();
 
+    void deleteBySessionIds(Collection<String> sessionIds);
+
+    Set<String> findSessionIds();
+
+    void watchReleases(Consumer<ObjectId> releaseListener);
+
 }
@@ -0,0 +1,61 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Interface used to provide the shared/exclusive lock mechanism hiding the data layer
+ *
+ * @author Jorge Saldivar
+ */
+public interface ReadWriteLockService {
+
+    /**
+     * @param duration - How old the heartbeat of a holder must be for its hold to be ignored
+     */
+    boolean acquireReadLock(String processName, String processSourceId, Duration duration);
+
+    /**
+     * Waits up to {@code timeout} for the readers to finish. While waiting new readers are rejected
+     *
+     * @param duration - How old the heartbeat of a holder must be for its hold to be ignored
+     */
+    boolean acquireWriteLock(String processName, String processSourceId, Duration duration, Duration timeout);
+
+    /**
+     * @return the process names with a writer waiting for the readers to finish
+     */
+    Set<String> findWaitingWriters(Collection<String> processNames, Duration duration);
+
+    /**
+     * Notifies writers starting to wait for the readers to finish, in this or any other node, on a best effort basis
+     */
+    void watchWaitingWriters(Runnable waitingWriterListener);
+
+    Set<String> performReadHeartbeats(Map<String, String> processSourceIds);
+
+    Set<String> performWriteHeartbeats(Map<String, String> processSourceIds);
+
+    void releaseReadLock(String processName, String processSourceId);
+
+    void releaseWriteLock(String processName, String processSourceId);
+
+}
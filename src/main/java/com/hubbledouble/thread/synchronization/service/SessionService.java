@@ -0,0 +1,48 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.service;
+
+import java.time.Duration;
+
+/**
+ * Interface used to provide node sessions hiding the data layer
+ *
+ * @author Jorge Saldivar
+ */
+public interface SessionService {
+
+    /**
+     * @return id of the new session
+     */
+    String openSession();
+
+    /**
+     * @return false if the session expired, its locks were released and it must not be used anymore
+     */
+    boolean performHeartbeat(String sessionId);
+
+    /**
+     * Deletes the sessions whose heartbeat is older than the expiration together with all their locks
+     */
+    void deleteExpiredSessions(Duration expiration);
+
+    /**
+     * Deletes the locks whose session no longer exists, left behind by a node stopped while deleting expired sessions
+     */
+    void deleteOrphanLocks();
+
+}
@@ -0,0 +1,118 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.service.impl;
+
+import com.hubbledouble.thread.synchronization.domain.Completion;
+import com.hubbledouble.thread.synchronization.repository.CompletionRepository;
+import com.hubbledouble.thread.synchronization.service.CompletionService;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Main functionality for interacting with the {@link CompletionRepository}.
+ * Completions seen once are kept locally until their retention expires, a completed process doesn't change.
+ * Expired completions are evicted oldest first while looking up others, keys of per period processes are not
+ * looked up again once their period is over.
+ *
+ * @author Jorge Saldivar
+ */
+public class CompletionServiceImpl implements CompletionService {
+
+    private final CompletionRepository completionRepository;
+    private final ConcurrentMap<String, Instant> completions;
+    private final Queue<Map.Entry<String, Instant>> completionOrder;
+
+    public CompletionServiceImpl(CompletionRepository completionRepository) {
+        this.completionRepository = completionRepository;
+        this.completions = new ConcurrentHashMap<>();
+        this.completionOrder = new ConcurrentLinkedQueue<>();
+    }
+
+    @Override
+    public boolean isCompleted(String processName) {
+
+        final Instant now = Instant.now();
+        evictExpired(now);
+        Instant expiresAt = completions.get(processName);
+
+        if (null != expiresAt) {
+
+            if (now.isBefore(expiresAt)) {
+                return true;
+            }
+
+            completions.remove(processName, expiresAt);
+
+        }
+
+        Completion completion = completionRepository.findByProcessName(processName);
+
+        if (null == completion) {
+            return false;
+        }
+
+        cache(processName, completion.getExpiresAt());
+        return true;
+
+    }
+
+    @Override
+    public void complete(String processName, Duration retention) {
+
+        Completion completion = new Completion(processName, retention);
+        completionRepository.save(completion);
+        cache(processName, completion.getExpiresAt());
+
+    }
+
+    private void cache(String processName, Instant expiresAt) {
+        completions.put(processName, expiresAt);
+        completionOrder.add(new AbstractMap.SimpleImmutableEntry<>(processName, expiresAt));
+    }
+
+    private void evictExpired(Instant now) {
+
+        Map.Entry<String, Instant> oldest;
+
+        while (null != (oldest = completionOrder.peek()) && !now.isBefore(oldest.getValue())) {
+
+            oldest = completionOrder.poll();
+
+            if (null == oldest) {
+                return;
+            }
+
+            if (now.isBefore(oldest.getValue())) {
+                // Other thread evicted the expired one first, this one goes back
+                completionOrder.add(oldest);
+                return;
+            }
+
+            completions.remove(oldest.getKey(), oldest.getValue());
+
+        }
+
+    }
+
+}
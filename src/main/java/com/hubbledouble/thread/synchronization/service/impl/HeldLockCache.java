@@ -0,0 +1,137 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.service.impl;
+
+import com.hubbledouble.thread.synchronization.domain.Process;
+import org.bson.types.ObjectId;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Locks known to be held by other nodes. A lock can't be taken over before its heartbeat is older than the lock
+ * expiration, a rejected acquire is cached until then, counted from when the acquire was sent.
+ * Entries are dropped earlier when the lock is released, or once they reach the max age.
+ * Entries are keyed by lock id, derived from the process name, a release notification drops its entry
+ * without reading the lock.
+ * <p>
+ * An acquire is tracked from before it's sent, a release notified meanwhile discards its rejection instead of
+ * caching it. Releases of other locks don't affect it.
+ * <p>
+ * Locks written by versions with random ids can't be matched to their release, they are rejected until
+ * their cached expiration instead.
+ * <p>
+ * How long a lock stays cached is measured on the clock of this node, even when heartbeats are stamped
+ * by the database. The cache only rejects acquires, it never grants one: clock skew can delay taking over
+ * an expired lock by the skew, never by more than the max age, and never lets two processes hold it.
+ *
+ * @author Jorge Saldivar
+ */
+class HeldLockCache {
+
+    private final Duration maxAge;
+    private final ConcurrentMap<ObjectId, Entry> entries;
+
+    HeldLockCache(Duration maxAge) {
+        this.maxAge = maxAge;
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    boolean isHeld(String processName) {
+
+        final ObjectId processId = Process.idOf(processName);
+        Entry entry = entries.get(processId);
+
+        if (null == entry || null == entry.heldUntil) {
+            return false;
+        }
+
+        if (Instant.now().isBefore(entry.heldUntil)) {
+            return true;
+        }
+
+        entries.remove(processId, entry);
+        return false;
+
+    }
+
+    /**
+     * Tracks the releases of the lock before acquiring it
+     *
+     * @return the acquire to cache as rejected, or to untrack
+     */
+    Object track(String processName) {
+
+        Entry acquire = new Entry(null);
+        entries.put(Process.idOf(processName), acquire);
+        return acquire;
+
+    }
+
+    /**
+     * Caches the lock as held unless it was released since it was tracked
+     *
+     * @param sentAt - When the acquire was sent, the lock heartbeat can't be older than that by the duration
+     * @param duration - How old the heartbeat of the lock must be for it to be taken over
+     */
+    void reject(String processName, Object acquire, Instant sentAt, Duration duration) {
+
+        Instant heldUntil = Instant.now().plus(maxAge);
+
+        // Locks of a session have no heartbeat, they are only released along with their session
+        if (null != duration && sentAt.plus(duration).isBefore(heldUntil)) {
+            heldUntil = sentAt.plus(duration);
+        }
+
+        final ObjectId processId = Process.idOf(processName);
+
+        if (!Instant.now().isBefore(heldUntil)) {
+            entries.remove(processId, acquire);
+            return;
+        }
+
+        // Replaced only if still tracked, a release or other acquire of the lock could have run meanwhile
+        entries.replace(processId, (Entry) acquire, new Entry(heldUntil));
+
+    }
+
+    void untrack(String processName, Object acquire) {
+        entries.remove(Process.idOf(processName), acquire);
+    }
+
+    void invalidate(ObjectId processId) {
+        entries.remove(processId);
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+
+        // Null while the acquire is in flight
+        private final Instant heldUntil;
+
+        private Entry(Instant heldUntil) {
+            this.heldUntil = heldUntil;
+        }
+
+    }
+
+}
@@ -16,12 +16,31 @@
 
 package com.hubbledouble.thread.synchronization.service.impl;
 
+import com.hubbledouble.thread.synchronization.exception.ThreadSynchronizationException;
+import com.hubbledouble.thread.synchronization.listener.LockListener;
+import com.hubbledouble.thread.synchronization.repository.ProcessOperation;
 import com.hubbledouble.thread.synchronization.service.LockService;
 import com.hubbledouble.thread.synchronization.domain.Process;
 import com.hubbledouble.thread.synchronization.service.ProcessService;
+import com.hubbledouble.thread.synchronization.service.SessionService;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Main functionality for lock mechanism
@@ -30,27 +49,236 @@ import java.time.Instant;
  */
 public class LockServiceImpl implements LockService {
 
+    private static final long RELEASE_POLL_INTERVAL_IN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
     private final ProcessService processService;
+    private final ReleaseSignal releaseSignal;
+    private final AtomicBoolean watchingReleases;
+    private volatile boolean releasesWatched;
+    private final SessionService sessionService;
+    private final Duration sessionExpiration;
+    private final Map<String, String> processSessionIds;
+    private final Map<String, String> pendingSessionReleases;
+    private volatile String sessionId;
+    private final HeldLockCache heldLockCache;
+    private final LockListener lockListener;
+    private final Map<String, Long> processAcquiredAt;
 
     public LockServiceImpl(ProcessService processService) {
+        this(processService, null, null, null);
+    }
+
+    /**
+     * Session mode, locks reference the session of this node instead of sending their own heartbeats
+     *
+     * @param sessionService - Keeps the session of this node alive
+     * @param sessionExpiration - How old the heartbeat of a session must be for it and its locks to be deleted
+     */
+    public LockServiceImpl(ProcessService processService, SessionService sessionService, Duration sessionExpiration) {
+        this(processService, sessionService, sessionExpiration, null);
+    }
+
+    /**
+     * @param sessionService - Keeps the session of this node alive, or null when locks send their own heartbeats
+     * @param sessionExpiration - How old the heartbeat of a session must be for it and its locks to be deleted
+     * @param heldLockCacheMaxAge - How long locks seen held by other nodes are rejected without asking the database,
+     *                              or null to always ask it
+     */
+    public LockServiceImpl(ProcessService processService, SessionService sessionService, Duration sessionExpiration,
+                           Duration heldLockCacheMaxAge) {
+        this(processService, sessionService, sessionExpiration, heldLockCacheMaxAge, LockListener.NONE);
+    }
+
+    /**
+     * @param lockListener - Notified of the lifecycle of the locks
+     */
+    public LockServiceImpl(ProcessService processService, SessionService sessionService, Duration sessionExpiration,
+                           Duration heldLockCacheMaxAge, LockListener lockListener) {
         this.processService = processService;
+        this.releaseSignal = new ReleaseSignal();
+        this.watchingReleases = new AtomicBoolean();
+        this.sessionService = sessionService;
+        this.sessionExpiration = sessionExpiration;
+        this.processSessionIds = new ConcurrentHashMap<>();
+        this.pendingSessionReleases = new ConcurrentHashMap<>();
+        this.heldLockCache = null == heldLockCacheMaxAge ? null : new HeldLockCache(heldLockCacheMaxAge);
+        this.lockListener = lockListener;
+        this.processAcquiredAt = new ConcurrentHashMap<>();
     }
 
     @Override
     public boolean acquireLock(String processName, String processSourceId, Duration duration) {
 
-        processService.deleteOldCompletedProcesses();
-        Process process = processService.findByProcessName(processName);
+        lockListener.onAcquireStart(processName);
+        final long start = System.nanoTime();
 
-        if (null == process) {
-            return processService.insertLock(processName, processSourceId);
+        if (isCachedAsHeld(processName)) {
+            return notifyAcquire(processName, start, false, 0);
+        }
+
+        try {
+            return notifyAcquire(processName, start, tryAcquireLock(processName, processSourceId, duration), 1);
+        } catch (RuntimeException e) {
+            lockListener.onAcquire(processName, LockListener.AcquireOutcome.ERROR, System.nanoTime() - start, 1);
+            throw e;
+        }
+
+    }
+
+    @Override
+    public boolean acquireLock(String processName, String processSourceId, Duration duration, Duration timeout) {
+
+        lockListener.onAcquireStart(processName);
+        final long start = System.nanoTime();
+        final long deadline = start + timeout.toNanos();
+        int roundTrips = 0;
+
+        try {
+
+            while (true) {
+
+                long generation = releaseSignal.generation();
+
+                if (!isCachedAsHeld(processName)) {
+
+                    roundTrips++;
+
+                    if (tryAcquireLock(processName, processSourceId, duration)) {
+                        return notifyAcquire(processName, start, true, roundTrips);
+                    }
+
+                }
+
+                long remaining = deadline - System.nanoTime();
+
+                if (remaining <= 0) {
+                    return notifyAcquire(processName, start, false, roundTrips);
+                }
+
+                watchReleases();
+                // Polling bounds the wait in case release notifications are not available
+                releaseSignal.await(generation, Math.min(remaining, RELEASE_POLL_INTERVAL_IN_NANOS));
+
+            }
+
+        } catch (InterruptedException e) {
+            lockListener.onAcquire(processName, LockListener.AcquireOutcome.ERROR, System.nanoTime() - start, roundTrips);
+            Thread.currentThread().interrupt();
+            throw new ThreadSynchronizationException(e);
+        } catch (RuntimeException e) {
+            lockListener.onAcquire(processName, LockListener.AcquireOutcome.ERROR, System.nanoTime() - start, roundTrips);
+            throw e;
+        }
+
+    }
+
+    @Override
+    public boolean acquireLocks(Map<String, Duration> processDurations, String processSourceId) {
+
+        final SortedMap<String, Duration> sortedProcessDurations = new TreeMap<>(processDurations);
+
+        for (String processName : sortedProcessDurations.keySet()) {
+            if (isCachedAsHeld(processName)) {
+                return false;
+            }
+        }
+
+        final String lockSessionId = getSessionId();
+        List<ProcessOperation> acquireOperations = new ArrayList<>(sortedProcessDurations.size());
+
+        sortedProcessDurations.forEach((processName, duration) ->
+                acquireOperations.add(ProcessOperation.acquire(processName, processSourceId, lockSessionId, duration)));
+
+        sortedProcessDurations.keySet().forEach(lockListener::onAcquireStart);
+        final long start = System.nanoTime();
+        final boolean acquired;
+
+        try {
+            acquired = processService.acquireLocks(acquireOperations);
+        } catch (RuntimeException e) {
+            for (String processName : sortedProcessDurations.keySet()) {
+                lockListener.onAcquire(processName, LockListener.AcquireOutcome.ERROR, System.nanoTime() - start, 1);
+                releaseOnSessionHeartbeat(processName, processSourceId, lockSessionId);
+            }
+            throw e;
         }
 
-        if (!isProcessRunning(process, duration)) {
-            return processService.transferLock(process, processSourceId);
+        for (String processName : sortedProcessDurations.keySet()) {
+
+            notifyAcquire(processName, start, acquired, 1);
+
+            if (acquired) {
+                holdInSession(processName, lockSessionId);
+            }
+
         }
 
-        return false;
+        return acquired;
+
+    }
+
+    @Override
+    public List<String> acquireAvailableLocks(Map<String, Duration> processDurations, String processSourceId) {
+
+        final String lockSessionId = getSessionId();
+        List<ProcessOperation> acquireOperations = new ArrayList<>(processDurations.size());
+
+        processDurations.forEach((processName, duration) -> {
+            if (!isCachedAsHeld(processName)) {
+                acquireOperations.add(ProcessOperation.acquire(processName, processSourceId, lockSessionId, duration));
+            }
+        });
+
+        acquireOperations.forEach(acquireOperation -> lockListener.onAcquireStart(acquireOperation.getProcessName()));
+        final long start = System.nanoTime();
+        final List<ProcessOperation.Result> results;
+
+        try {
+            results = processService.executeBulk(acquireOperations);
+        } catch (RuntimeException e) {
+            for (ProcessOperation acquireOperation : acquireOperations) {
+                lockListener.onAcquire(acquireOperation.getProcessName(), LockListener.AcquireOutcome.ERROR, System.nanoTime() - start, 1);
+                releaseOnSessionHeartbeat(acquireOperation.getProcessName(), processSourceId, lockSessionId);
+            }
+            throw e;
+        }
+
+        List<String> acquired = new ArrayList<>();
+
+        for (int i = 0; i < acquireOperations.size(); i++) {
+
+            String processName = acquireOperations.get(i).getProcessName();
+
+            if (!notifyAcquire(processName, start, ProcessOperation.Result.REJECTED != results.get(i), 1)) {
+                continue;
+            }
+
+            acquired.add(processName);
+            holdInSession(processName, lockSessionId);
+
+            if (ProcessOperation.Result.TAKEN_OVER == results.get(i)) {
+                lockListener.onTakeover(processName);
+            }
+
+        }
+
+        return acquired;
+
+    }
+
+    @Override
+    public List<String> findAvailable(Collection<String> processNames, Duration duration) {
+
+        final Instant expiredBefore = expiredBefore(duration);
+        Set<String> available = new LinkedHashSet<>(processNames);
+
+        for (Process process : processService.findByProcessNames(processNames)) {
+            if (!isExpired(process, expiredBefore)) {
+                available.remove(process.getProcessName());
+            }
+        }
+
+        return new ArrayList<>(available);
 
     }
 
@@ -65,31 +293,325 @@ public class LockServiceImpl implements LockService {
 
     }
 
+    @Override
+    public Set<String> performHeartbeats(Map<String, String> processSourceIds) {
+
+        if (null == sessionService) {
+            return performLockHeartbeats(processSourceIds);
+        }
+
+        // Locks are kept alive by the session heartbeat, only the ones acquired by an expired session are lost
+        final String currentSessionId = sessionId;
+        Set<String> lostProcesses = new HashSet<>();
+
+        for (String processName : processSourceIds.keySet()) {
+            if (!Objects.equals(currentSessionId, processSessionIds.get(processName))) {
+                lostProcesses.add(processName);
+                lockListener.onRenewalFailure(processName);
+            }
+        }
+
+        return lostProcesses.isEmpty() ? Collections.emptySet() : lostProcesses;
+
+    }
+
     @Override
     public void releaseLock(String processName, String processSourceId) {
 
+        final String lockSessionId = processSessionIds.remove(processName);
+        notifyHold(processName);
+
+        lockListener.onReleaseStart(processName);
+        final long start = System.nanoTime();
+        boolean released = false;
+
         try {
+            processService.releaseLock(processName, processSourceId);
+            released = true;
+        } catch (Exception e) {
+            // Code recovers from this, a heartbeat lock expires on its own and a session lock is released later
+            releaseOnSessionHeartbeat(processName, processSourceId, lockSessionId);
+        } finally {
+            lockListener.onRelease(processName, released, System.nanoTime() - start);
+        }
 
-            Process process = processService.findByProcessNameAndProcessSourceId(processName, processSourceId);
+    }
 
-            if (null != process) {
-                processService.delete(process);
-            }
+    @Override
+    public void releaseLocks(Collection<String> processNames, String processSourceId) {
 
+        final Map<String, String> lockSessionIds = new HashMap<>();
+
+        for (String processName : processNames) {
+            lockSessionIds.put(processName, processSessionIds.remove(processName));
+            notifyHold(processName);
+            lockListener.onReleaseStart(processName);
+        }
+
+        final long start = System.nanoTime();
+        boolean released = false;
+
+        try {
+            processService.releaseLocks(processNames, processSourceId);
+            released = true;
         } catch (Exception e) {
-            // Empty catch due to code will recover from this
+            // Code recovers from this, heartbeat locks expire on their own and session locks are released later
+            lockSessionIds.forEach((processName, lockSessionId) ->
+                    releaseOnSessionHeartbeat(processName, processSourceId, lockSessionId));
+        } finally {
+            for (String processName : processNames) {
+                lockListener.onRelease(processName, released, System.nanoTime() - start);
+            }
+        }
+
+    }
+
+    @Override
+    public void deleteExpiredLocks() {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            processService.deleteOldCompletedProcesses();
+
+            if (null != sessionService) {
+                sessionService.deleteOrphanLocks();
+            }
+
+        } finally {
+            lockListener.onCleanup(System.nanoTime() - start);
+        }
+
+    }
+
+    @Override
+    public void performSessionHeartbeat() {
+
+        if (null == sessionService) {
+            return;
+        }
+
+        String currentSessionId = getSessionId();
+        retrySessionReleases();
+
+        if (!sessionService.performHeartbeat(currentSessionId)) {
+            // Other node found the session expired and released its locks, they are reported lost on their next heartbeat
+            openSession(currentSessionId);
+        }
+
+        sessionService.deleteExpiredSessions(sessionExpiration);
+
+    }
+
+    private boolean isCachedAsHeld(String processName) {
+        return null != heldLockCache && heldLockCache.isHeld(processName);
+    }
+
+    private boolean tryAcquireLock(String processName, String processSourceId, Duration duration) {
+
+        final String lockSessionId = getSessionId();
+        final Object trackedAcquire = trackAcquire(processName);
+        final Instant sentAt = Instant.now();
+        final Process process;
+
+        try {
+            process = processService.acquireLock(processName, processSourceId, lockSessionId, duration);
+        } catch (RuntimeException e) {
+            untrackAcquire(processName, trackedAcquire);
+            // The lock could be written even though the reply was lost
+            releaseOnSessionHeartbeat(processName, processSourceId, lockSessionId);
+            throw e;
+        }
+
+        if (null == process) {
+            if (null != trackedAcquire) {
+                heldLockCache.reject(processName, trackedAcquire, sentAt, duration);
+            }
+            return false;
+        }
+
+        untrackAcquire(processName, trackedAcquire);
+        holdInSession(processName, lockSessionId);
+
+        if (null != process.getGeneration() && process.getGeneration() > 1) {
+            lockListener.onTakeover(processName);
+        }
+
+        return true;
+
+    }
+
+    private void holdInSession(String processName, String lockSessionId) {
+
+        pendingSessionReleases.remove(processName);
+
+        if (null != lockSessionId) {
+            processSessionIds.put(processName, lockSessionId);
+        }
+
+    }
+
+    private void releaseOnSessionHeartbeat(String processName, String processSourceId, String lockSessionId) {
+
+        // Session locks have no heartbeat, nothing expires them while this node's session lives
+        if (null != lockSessionId) {
+            pendingSessionReleases.put(processName, processSourceId);
         }
 
     }
 
-    private boolean isProcessRunning(Process process, Duration duration) {
+    private void retrySessionReleases() {
+
+        pendingSessionReleases.forEach((processName, processSourceId) -> {
+
+            if (processSessionIds.containsKey(processName)) {
+                // Acquired again by this node since the release failed
+                pendingSessionReleases.remove(processName, processSourceId);
+                return;
+            }
+
+            try {
+                processService.releaseLock(processName, processSourceId);
+                pendingSessionReleases.remove(processName, processSourceId);
+            } catch (RuntimeException e) {
+                // Empty catch due to the release is retried on the next session heartbeat
+            }
+
+        });
+
+    }
+
+    private Set<String> performLockHeartbeats(Map<String, String> processSourceIds) {
 
-        Instant past = Instant.now().minus(duration.plusSeconds(duration.getSeconds()));
+        lockListener.onHeartbeatStart(processSourceIds.size());
+        final long start = System.nanoTime();
+        final Set<String> lostProcesses;
 
-        return null != process &&
-                null != process.getHeartbeat() &&
-                past.isBefore(process.getHeartbeat());
+        try {
+            lostProcesses = processService.performHeartbeats(processSourceIds);
+        } catch (RuntimeException e) {
+            lockListener.onHeartbeat(processSourceIds.size(), false, System.nanoTime() - start);
+            throw e;
+        }
+
+        lockListener.onHeartbeat(processSourceIds.size(), true, System.nanoTime() - start);
+        lostProcesses.forEach(lockListener::onRenewalFailure);
+
+        return lostProcesses;
+
+    }
+
+    private boolean notifyAcquire(String processName, long start, boolean acquired, int roundTrips) {
+
+        final long now = System.nanoTime();
+        lockListener.onAcquire(processName,
+                acquired ? LockListener.AcquireOutcome.ACQUIRED : LockListener.AcquireOutcome.BUSY, now - start, roundTrips);
+
+        if (acquired) {
+            processAcquiredAt.put(processName, now);
+        }
+
+        return acquired;
+
+    }
+
+    private void notifyHold(String processName) {
+
+        Long acquiredAt = processAcquiredAt.remove(processName);
+
+        if (null != acquiredAt) {
+            lockListener.onHold(processName, System.nanoTime() - acquiredAt);
+        }
+
+    }
+
+    /**
+     * @return the acquire tracked to cache its rejection, null if rejections are not cached
+     */
+    private Object trackAcquire(String processName) {
+
+        if (null == heldLockCache) {
+            return null;
+        }
+
+        watchReleases();
+
+        // Nothing would drop the lock once released
+        return releasesWatched ? heldLockCache.track(processName) : null;
+
+    }
+
+    private void untrackAcquire(String processName, Object trackedAcquire) {
+
+        if (null != trackedAcquire) {
+            heldLockCache.untrack(processName, trackedAcquire);
+        }
+
+    }
+
+    private String getSessionId() {
+
+        if (null == sessionService || null != sessionId) {
+            return sessionId;
+        }
+
+        return openSession(null);
+
+    }
+
+    private synchronized String openSession(String expiredSessionId) {
+
+        if (Objects.equals(expiredSessionId, sessionId)) {
+            sessionId = sessionService.openSession();
+        }
+
+        return sessionId;
+
+    }
+
+    private void watchReleases() {
+
+        if (watchingReleases.compareAndSet(false, true)) {
+            processService.watchReleases(processId -> {
+
+                if (null == processId) {
+                    // Notifications (re)started, cached locks could have been released meanwhile
+                    releasesWatched = true;
+                    if (null != heldLockCache) {
+                        heldLockCache.clear();
+                    }
+                } else if (null != heldLockCache) {
+                    heldLockCache.invalidate(processId);
+                }
+
+                releaseSignal.signal();
+
+            });
+        }
+
+    }
+
+    /**
+     * Same criteria the database uses to take over a lock, locks of a session are only released along with it.
+     * Measured on the clock of this node, it only filters candidates, the acquire checks it again on the database
+     */
+    private boolean isExpired(Process process, Instant expiredBefore) {
+
+        if (null == process.getHeartbeat()) {
+            return null == process.getSessionId();
+        }
+
+        return null != expiredBefore && !process.getHeartbeat().isAfter(expiredBefore);
+
+    }
 
+    /**
+     * A lock whose heartbeat is older than the returned instant is no longer running and can be taken over,
+     * without duration a held lock is never taken over
+     */
+    private Instant expiredBefore(Duration duration) {
+        return null == duration ? null : Instant.now().minus(duration);
     }
 
 }
@@ -17,11 +17,18 @@
 package com.hubbledouble.thread.synchronization.service.impl;
 
 import com.hubbledouble.thread.synchronization.domain.Process;
+import com.hubbledouble.thread.synchronization.repository.ProcessOperation;
 import com.hubbledouble.thread.synchronization.repository.ProcessRepository;
 import com.hubbledouble.thread.synchronization.service.ProcessService;
+import org.bson.types.ObjectId;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Main functionality for interacting with the {@link ProcessRepository}
@@ -30,10 +37,21 @@ import java.time.temporal.ChronoUnit;
  */
 public class ProcessServiceImpl implements ProcessService {
 
+    private static final Duration CLEANUP_HORIZON = Duration.ofMinutes(10);
+
     private final ProcessRepository processRepository;
+    private final Duration cleanupHorizon;
 
     public ProcessServiceImpl(ProcessRepository processRepository) {
+        this(processRepository, CLEANUP_HORIZON);
+    }
+
+    /**
+     * @param cleanupHorizon - Locks whose heartbeat is older than this are deleted as old completed processes
+     */
+    public ProcessServiceImpl(ProcessRepository processRepository, Duration cleanupHorizon) {
         this.processRepository = processRepository;
+        this.cleanupHorizon = cleanupHorizon;
     }
 
     @Override
@@ -41,19 +59,39 @@ public class ProcessServiceImpl implements ProcessService {
         return processRepository.findByProcessName(processName);
     }
 
+    @Override
+    public List<Process> findByProcessNames(Collection<String> processNames) {
+        return processRepository.findByProcessNames(processNames);
+    }
+
     @Override
     public Process findByProcessNameAndProcessSourceId(String processName, String processSourceId) {
         return processRepository.findByProcessNameAndProcessSourceId(processName, processSourceId);
     }
 
     @Override
-    public boolean insertLock(String processName, String processSourceId) {
-        return processRepository.insertLock(processName, processSourceId);
+    public Process acquireLock(String processName, String processSourceId, String sessionId, Duration expiration) {
+        return processRepository.acquireLock(processName, processSourceId, sessionId, expiration);
+    }
+
+    @Override
+    public void releaseLock(String processName, String processSourceId) {
+        processRepository.releaseLock(processName, processSourceId);
     }
 
     @Override
-    public boolean transferLock(Process process, String processSourceId) {
-        return processRepository.transferLock(process, processSourceId);
+    public boolean acquireLocks(List<ProcessOperation> acquireOperations) {
+        return processRepository.acquireLocks(acquireOperations);
+    }
+
+    @Override
+    public void releaseLocks(Collection<String> processNames, String processSourceId) {
+        processRepository.releaseLocks(processNames, processSourceId);
+    }
+
+    @Override
+    public List<ProcessOperation.Result> executeBulk(List<ProcessOperation> processOperations) {
+        return processRepository.executeBulk(processOperations);
     }
 
     @Override
@@ -61,6 +99,11 @@ public class ProcessServiceImpl implements ProcessService {
         processRepository.performHeartBeat(process);
     }
 
+    @Override
+    public Set<String> performHeartbeats(Map<String, String> processSourceIds) {
+        return processRepository.performHeartBeats(processSourceIds);
+    }
+
     @Override
     public void delete(Process process) {
         processRepository.delete(process);
@@ -68,8 +111,23 @@ public class ProcessServiceImpl implements ProcessService {
 
     @Override
     public void deleteOldCompletedProcesses() {
-        Instant past = Instant.now().minus(10, ChronoUnit.MINUTES);
+        Instant past = Instant.now().minus(cleanupHorizon);
         processRepository.deleteProcessOlderThan(past);
     }
 
+    @Override
+    public void deleteBySessionIds(Collection<String> sessionIds) {
+        processRepository.deleteBySessionIds(sessionIds);
+    }
+
+    @Override
+    public Set<String> findSessionIds() {
+        return processRepository.findSessionIds();
+    }
+
+    @Override
+    public void watchReleases(Consumer<ObjectId> releaseListener) {
+        processRepository.watchReleases(releaseListener);
+    }
+
 }
\ No newline at end of file
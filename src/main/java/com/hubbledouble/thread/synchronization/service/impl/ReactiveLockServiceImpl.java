@@ -0,0 +1,60 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.service.impl;
+
+import com.hubbledouble.thread.synchronization.service.ReactiveLockService;
+import com.hubbledouble.thread.synchronization.service.ReactiveProcessService;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Main non blocking functionality for lock mechanism
+ *
+ * @author Jorge Saldivar
+ */
+public class ReactiveLockServiceImpl implements ReactiveLockService {
+
+    private final ReactiveProcessService reactiveProcessService;
+
+    public ReactiveLockServiceImpl(ReactiveProcessService reactiveProcessService) {
+        this.reactiveProcessService = reactiveProcessService;
+    }
+
+    @Override
+    public Mono<Boolean> acquireLock(String processName, String processSourceId, Duration duration) {
+
+        return Mono.defer(() -> reactiveProcessService.acquireLock(processName, processSourceId, duration))
+                .hasElement();
+
+    }
+
+    @Override
+    public Mono<Boolean> performHeartbeat(String processName, String processSourceId) {
+        return reactiveProcessService.performHeartbeat(processName, processSourceId);
+    }
+
+    @Override
+    public Mono<Void> releaseLock(String processName, String processSourceId) {
+
+        return reactiveProcessService.releaseLock(processName, processSourceId)
+                // Empty resume due to code will recover from this
+                .onErrorResume(e -> Mono.empty());
+
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.service.impl;
+
+import com.hubbledouble.thread.synchronization.domain.Process;
+import com.hubbledouble.thread.synchronization.repository.ReactiveProcessRepository;
+import com.hubbledouble.thread.synchronization.service.ReactiveProcessService;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Main non blocking functionality hiding the data layer
+ *
+ * @author Jorge Saldivar
+ */
+public class ReactiveProcessServiceImpl implements ReactiveProcessService {
+
+    private final ReactiveProcessRepository reactiveProcessRepository;
+
+    public ReactiveProcessServiceImpl(ReactiveProcessRepository reactiveProcessRepository) {
+        this.reactiveProcessRepository = reactiveProcessRepository;
+    }
+
+    @Override
+    public Mono<Process> acquireLock(String processName, String processSourceId, Duration expiration) {
+        return reactiveProcessRepository.acquireLock(processName, processSourceId, expiration);
+    }
+
+    @Override
+    public Mono<Boolean> performHeartbeat(String processName, String processSourceId) {
+        return reactiveProcessRepository.performHeartBeat(processName, processSourceId);
+    }
+
+    @Override
+    public Mono<Void> releaseLock(String processName, String processSourceId) {
+        return reactiveProcessRepository.releaseLock(processName, processSourceId);
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.service.impl;
+
+import com.hubbledouble.thread.synchronization.exception.ThreadSynchronizationException;
+import com.hubbledouble.thread.synchronization.repository.ReadWriteProcessRepository;
+import com.hubbledouble.thread.synchronization.service.ReadWriteLockService;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Main functionality for the shared/exclusive lock mechanism
+ *
+ * @author Jorge Saldivar
+ */
+public class ReadWriteLockServiceImpl implements ReadWriteLockService {
+
+    private static final long RELEASE_POLL_INTERVAL_IN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ReadWriteProcessRepository readWriteProcessRepository;
+    private final ReleaseSignal releaseSignal;
+    private final List<Runnable> waitingWriterListeners;
+    private final AtomicBoolean watchingChanges;
+
+    public ReadWriteLockServiceImpl(ReadWriteProcessRepository readWriteProcessRepository) {
+        this.readWriteProcessRepository = readWriteProcessRepository;
+        this.releaseSignal = new ReleaseSignal();
+        this.waitingWriterListeners = new CopyOnWriteArrayList<>();
+        this.watchingChanges = new AtomicBoolean();
+    }
+
+    @Override
+    public boolean acquireReadLock(String processName, String processSourceId, Duration duration) {
+        return readWriteProcessRepository.acquireReadLock(processName, processSourceId, expiredBefore(duration));
+    }
+
+    @Override
+    public boolean acquireWriteLock(String processName, String processSourceId, Duration duration, Duration timeout) {
+
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        // The intent expires like any hold, renewed well before so new readers stay out only while this writer waits
+        final long intentRenewalInNanos = duration.toNanos() / 2;
+        long intentRenewedAt = 0;
+        boolean intent = false;
+
+        try {
+
+            while (true) {
+
+                long generation = releaseSignal.generation();
+                long now = System.nanoTime();
+
+                if (!intent || now - intentRenewedAt >= intentRenewalInNanos) {
+                    intent = readWriteProcessRepository.acquireWriteIntent(processName, processSourceId, expiredBefore(duration));
+                    intentRenewedAt = now;
+                }
+
+                if (intent && readWriteProcessRepository.acquireWriteLock(processName, processSourceId, expiredBefore(duration))) {
+                    return true;
+                }
+
+                long remaining = deadline - System.nanoTime();
+
+                if (remaining <= 0) {
+                    break;
+                }
+
+                watchChanges();
+                // Polling bounds the wait in case release notifications are not available
+                releaseSignal.await(generation,
+                        Math.min(remaining, Math.min(RELEASE_POLL_INTERVAL_IN_NANOS, intentRenewalInNanos)));
+
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            releaseWriteIntent(processName, processSourceId, intent);
+            throw new ThreadSynchronizationException(e);
+        }
+
+        releaseWriteIntent(processName, processSourceId, intent);
+        return false;
+
+    }
+
+    @Override
+    public Set<String> findWaitingWriters(Collection<String> processNames, Duration duration) {
+        return readWriteProcessRepository.findWithWriterIntent(processNames, expiredBefore(duration));
+    }
+
+    @Override
+    public void watchWaitingWriters(Runnable waitingWriterListener) {
+        waitingWriterListeners.add(waitingWriterListener);
+        watchChanges();
+    }
+
+    @Override
+    public Set<String> performReadHeartbeats(Map<String, String> processSourceIds) {
+        return readWriteProcessRepository.performReadHeartBeats(processSourceIds);
+    }
+
+    @Override
+    public Set<String> performWriteHeartbeats(Map<String, String> processSourceIds) {
+        return readWriteProcessRepository.performWriteHeartBeats(processSourceIds);
+    }
+
+    @Override
+    public void releaseReadLock(String processName, String processSourceId) {
+
+        try {
+            readWriteProcessRepository.releaseReadLock(processName, processSourceId);
+        } catch (Exception e) {
+            // Empty catch due to the hold expires once its heartbeat stops
+        }
+
+    }
+
+    @Override
+    public void releaseWriteLock(String processName, String processSourceId) {
+
+        try {
+            readWriteProcessRepository.releaseWriteLock(processName, processSourceId);
+        } catch (Exception e) {
+            // Empty catch due to the hold expires once its heartbeat stops
+        }
+
+    }
+
+    private void releaseWriteIntent(String processName, String processSourceId, boolean intent) {
+
+        if (!intent) {
+            return;
+        }
+
+        try {
+            readWriteProcessRepository.releaseWriteIntent(processName, processSourceId);
+        } catch (Exception e) {
+            // Empty catch due to the intent expires once this writer stops renewing it
+        }
+
+    }
+
+    private void watchChanges() {
+
+        if (watchingChanges.compareAndSet(false, true)) {
+            readWriteProcessRepository.watchChanges(
+                    releaseSignal::signal,
+                    () -> waitingWriterListeners.forEach(Runnable::run));
+        }
+
+    }
+
+    private Instant expiredBefore(Duration duration) {
+        return Instant.now().minus(duration);
+    }
+
+}
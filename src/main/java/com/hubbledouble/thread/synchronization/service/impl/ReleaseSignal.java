@@ -0,0 +1,52 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.service.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wakes up threads waiting for a lock whenever a lock is released.
+ * Waiters read the generation before trying to acquire so a release happening in between is not missed.
+ *
+ * @author Jorge Saldivar
+ */
+class ReleaseSignal {
+
+    private long generation;
+
+    synchronized long generation() {
+        return generation;
+    }
+
+    synchronized void signal() {
+        generation++;
+        notifyAll();
+    }
+
+    synchronized void await(long generation, long timeoutNanos) throws InterruptedException {
+
+        final long deadline = System.nanoTime() + timeoutNanos;
+        long remaining = timeoutNanos;
+
+        while (this.generation == generation && remaining > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.service.impl;
+
+import com.hubbledouble.thread.synchronization.domain.Session;
+import com.hubbledouble.thread.synchronization.repository.SessionRepository;
+import com.hubbledouble.thread.synchronization.service.ProcessService;
+import com.hubbledouble.thread.synchronization.service.SessionService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Main functionality for interacting with the {@link SessionRepository}
+ *
+ * @author Jorge Saldivar
+ */
+public class SessionServiceImpl implements SessionService {
+
+    private final SessionRepository sessionRepository;
+    private final ProcessService processService;
+
+    public SessionServiceImpl(SessionRepository sessionRepository, ProcessService processService) {
+        this.sessionRepository = sessionRepository;
+        this.processService = processService;
+    }
+
+    @Override
+    public String openSession() {
+
+        Session session = Session.newSession();
+        sessionRepository.insert(session);
+        return session.getId();
+
+    }
+
+    @Override
+    public boolean performHeartbeat(String sessionId) {
+        return sessionRepository.performHeartBeat(sessionId);
+    }
+
+    @Override
+    public void deleteExpiredSessions(Duration expiration) {
+
+        List<String> deletedSessionIds = new ArrayList<>();
+
+        // The session goes first and only while it's still expired, a late heartbeat in between keeps it and its locks.
+        // Deleting its locks first would leave the node holding a live session without its locks
+        for (String sessionId : sessionRepository.findSessionIdsOlderThan(expiration)) {
+            if (sessionRepository.deleteSessionOlderThan(sessionId, expiration)) {
+                deletedSessionIds.add(sessionId);
+            }
+        }
+
+        if (!deletedSessionIds.isEmpty()) {
+            processService.deleteBySessionIds(deletedSessionIds);
+        }
+
+    }
+
+    @Override
+    public void deleteOrphanLocks() {
+
+        Set<String> orphanSessionIds = processService.findSessionIds();
+
+        if (orphanSessionIds.isEmpty()) {
+            return;
+        }
+
+        // A lock is only written after its session, a session missing now is gone for good
+        orphanSessionIds.removeAll(sessionRepository.findExistingSessionIds(orphanSessionIds));
+
+        if (!orphanSessionIds.isEmpty()) {
+            processService.deleteBySessionIds(orphanSessionIds);
+        }
+
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.listener;
+
+import com.hubbledouble.thread.synchronization.ThreadSynchronization;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class ContentionTrackerTest {
+
+    @Test
+    public void test_getTopContended_MostContendedFirst() {
+
+        ContentionTracker contentionTracker = new ContentionTracker(10);
+
+        busy(contentionTracker, "report", 3);
+        busy(contentionTracker, "invoice", 5);
+        contentionTracker.onAcquire("invoice", LockListener.AcquireOutcome.ACQUIRED, 1_000_000, 4);
+        contentionTracker.onAcquire("payroll", LockListener.AcquireOutcome.ACQUIRED, 1_000_000, 1);
+        contentionTracker.onTakeover("report");
+
+        List<ContendedProcess> topContended = contentionTracker.getTopContended(5);
+
+        Assert.assertEquals(2, topContended.size());
+        Assert.assertEquals("invoice", topContended.get(0).getProcessName());
+        // Waiting acquire retried 3 times before acquiring the lock
+        Assert.assertEquals(8, topContended.get(0).getContentions());
+        Assert.assertEquals("report", topContended.get(1).getProcessName());
+        Assert.assertEquals(1, topContended.get(1).getTakeovers());
+
+    }
+
+    @Test
+    public void test_getTopContended_FullCapacity_KeepHeavyHittersAmongManyProcesses() {
+
+        ContentionTracker contentionTracker = new ContentionTracker(5);
+
+        for (int i = 0; i < 1000; i++) {
+            busy(contentionTracker, "tenant-" + i, 1);
+            if (i % 10 == 0) {
+                // Over a fifth of all contentions, above the share guaranteed to be tracked with 5 entries
+                busy(contentionTracker, "hot", 3);
+            }
+        }
+
+        ContendedProcess mostContended = contentionTracker.getTopContended(1).get(0);
+        Assert.assertEquals("hot", mostContended.getProcessName());
+        Assert.assertTrue(mostContended.getContentions() >= 300);
+        Assert.assertEquals(5, contentionTracker.getTopContended().size());
+
+        contentionTracker.reset();
+        Assert.assertTrue(contentionTracker.getTopContended().isEmpty());
+
+    }
+
+    @Test
+    public void test_getTopContended_UnevenContentions_ExactCountsInOrder() {
+
+        ContentionTracker contentionTracker = new ContentionTracker(20);
+        Map<String, Long> expectedContentions = new HashMap<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 2000; i++) {
+            String processName = "tenant-" + random.nextInt(20);
+            int roundTrips = 1 + random.nextInt(4);
+            contentionTracker.onAcquire(processName, LockListener.AcquireOutcome.BUSY, 1_000_000, roundTrips);
+            expectedContentions.merge(processName, (long) roundTrips, Long::sum);
+        }
+
+        List<ContendedProcess> topContended = contentionTracker.getTopContended();
+
+        Assert.assertEquals(20, topContended.size());
+        for (int i = 0; i < topContended.size(); i++) {
+            ContendedProcess contendedProcess = topContended.get(i);
+            Assert.assertEquals((long) expectedContentions.get(contendedProcess.getProcessName()), contendedProcess.getContentions());
+            Assert.assertEquals(0, contendedProcess.getError());
+            if (i > 0) {
+                Assert.assertTrue(topContended.get(i - 1).getContentions() >= contendedProcess.getContentions());
+            }
+        }
+
+    }
+
+    @Test
+    public void test_trackContention_NotBuilt_NotRegistered() throws Exception {
+
+        ObjectName objectName = new ObjectName("com.hubbledouble.thread.synchronization:type=ContentionTracker,name=unbuilt");
+        ThreadSynchronization.Builder builder = ThreadSynchronization.builder(null)
+                .trackContention(new ContentionTracker(10, "unbuilt"))
+                .batchWrites(Duration.ofMillis(1), 0);
+
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+
+        try {
+            builder.build();
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+        }
+
+    }
+
+    @Test
+    public void test_registerMBean_StableName_UnregisteredOnRequest() throws Exception {
+
+        ObjectName objectName = new ObjectName("com.hubbledouble.thread.synchronization:type=ContentionTracker,name=orders");
+        ContentionTracker contentionTracker = new ContentionTracker(10, "orders");
+
+        contentionTracker.registerMBean();
+        contentionTracker.registerMBean();
+        Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+
+        try {
+            new ContentionTracker(10, "orders").registerMBean();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+        }
+
+        contentionTracker.unregisterMBean();
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+
+    }
+
+    private void busy(ContentionTracker contentionTracker, String processName, int times) {
+        for (int i = 0; i < times; i++) {
+            contentionTracker.onAcquire(processName, LockListener.AcquireOutcome.BUSY, 1_000_000, 1);
+        }
+    }
+
+}
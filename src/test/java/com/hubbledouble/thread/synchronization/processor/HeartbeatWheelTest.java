@@ -0,0 +1,66 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.processor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HeartbeatWheelTest {
+
+    private static final long TICK_IN_NANOS = Duration.ofMillis(10).toNanos();
+
+    @Test
+    public void test_expire_EntriesBeyondOneRound_ExpireOnTheirDeadline() {
+        HeartbeatWheel heartbeatWheel = new HeartbeatWheel(Duration.ofMillis(10), 4);
+        long start = System.nanoTime();
+        HeartbeatWheel.Entry shortHeartbeat = new HeartbeatWheel.Entry("short", "source", Duration.ofMillis(20));
+        HeartbeatWheel.Entry longHeartbeat = new HeartbeatWheel.Entry("long", "source", Duration.ofMillis(100));
+        heartbeatWheel.schedule(shortHeartbeat);
+        heartbeatWheel.schedule(longHeartbeat);
+
+        Assert.assertTrue(expire(heartbeatWheel, start).isEmpty());
+        Assert.assertTrue(expire(heartbeatWheel, start + TICK_IN_NANOS).isEmpty());
+        Assert.assertEquals(1, expire(heartbeatWheel, start + 3 * TICK_IN_NANOS).size());
+        Assert.assertTrue(expire(heartbeatWheel, start + 8 * TICK_IN_NANOS).isEmpty());
+        List<HeartbeatWheel.Entry> expired = expire(heartbeatWheel, start + 12 * TICK_IN_NANOS);
+        Assert.assertEquals(1, expired.size());
+        Assert.assertSame(longHeartbeat, expired.get(0));
+    }
+
+    @Test
+    public void test_expire_CancelledEntry_NotExpired() {
+        HeartbeatWheel heartbeatWheel = new HeartbeatWheel(Duration.ofMillis(10), 4);
+        long start = System.nanoTime();
+        HeartbeatWheel.Entry heartbeat = new HeartbeatWheel.Entry("process", "source", Duration.ofMillis(20));
+        heartbeatWheel.schedule(heartbeat);
+        expire(heartbeatWheel, start);
+        heartbeat.cancel();
+
+        Assert.assertTrue(expire(heartbeatWheel, start + 10 * TICK_IN_NANOS).isEmpty());
+    }
+
+    private List<HeartbeatWheel.Entry> expire(HeartbeatWheel heartbeatWheel, long nowInNanos) {
+        List<HeartbeatWheel.Entry> expired = new ArrayList<>();
+        heartbeatWheel.expire(nowInNanos, expired::add);
+        return expired;
+    }
+
+}
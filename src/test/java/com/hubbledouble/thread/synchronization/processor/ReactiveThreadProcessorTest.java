@@ -0,0 +1,104 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.processor;
+
+import com.hubbledouble.thread.synchronization.LockSettings;
+import com.hubbledouble.thread.synchronization.collection.SimulatorProcessCollection;
+import com.hubbledouble.thread.synchronization.exception.RunnableCodeException;
+import com.hubbledouble.thread.synchronization.exception.ThreadSynchronizationException;
+import com.hubbledouble.thread.synchronization.service.impl.ReactiveLockServiceImpl;
+import com.hubbledouble.thread.synchronization.service.impl.SimulatorReactiveProcessServiceImpl;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+
+public class ReactiveThreadProcessorTest {
+
+    private ReactiveThreadProcessor reactiveThreadProcessor;
+    private SimulatorProcessCollection simulatorProcessCollection;
+    private static final String PROCESS_NAME = "addItems";
+
+    @Before
+    public void setup() {
+        simulatorProcessCollection = new SimulatorProcessCollection();
+        reactiveThreadProcessor =
+                new ReactiveThreadProcessor(
+                        new ReactiveLockServiceImpl(
+                                new SimulatorReactiveProcessServiceImpl(
+                                        simulatorProcessCollection.getProcessCollection())));
+    }
+
+    @Test
+    public void test_execute_HoldLockUntilCodeCompletes() {
+
+        Boolean executed = reactiveThreadProcessor.execute(PROCESS_NAME, () -> {
+
+            Assert.assertTrue(simulatorProcessCollection.getProcessCollection().containsKey(PROCESS_NAME));
+            Assert.assertFalse(reactiveThreadProcessor.execute(PROCESS_NAME, Mono::empty).block());
+            return Mono.delay(Duration.ofMillis(50));
+
+        }).block();
+
+        Assert.assertTrue(executed);
+        Assert.assertTrue(simulatorProcessCollection.getProcessCollection().isEmpty());
+
+    }
+
+    @Test
+    public void test_execute_ProcessLockSettings_HeartbeatAtProcessInterval() {
+
+        final String quickProcessName = "quickProcess";
+        reactiveThreadProcessor =
+                new ReactiveThreadProcessor(
+                        new ReactiveLockServiceImpl(
+                                new SimulatorReactiveProcessServiceImpl(
+                                        simulatorProcessCollection.getProcessCollection())),
+                        LockSettings.DEFAULT,
+                        Collections.singletonMap(quickProcessName, new LockSettings(Duration.ofMillis(200), Duration.ofMillis(50), 1)));
+
+        Assert.assertTrue(reactiveThreadProcessor.execute(quickProcessName, () -> Mono.delay(Duration.ofMillis(400))
+                .doOnNext(tick -> {
+                    Instant heartbeat = simulatorProcessCollection.getProcessCollection().get(quickProcessName).getHeartbeat();
+                    Assert.assertTrue(heartbeat.isAfter(Instant.now().minusMillis(200)));
+                })).block());
+
+    }
+
+    @Test(expected = RunnableCodeException.class)
+    public void test_execute_CustomCodeThrowException_PropagateAsRunnableCodeException() {
+
+        reactiveThreadProcessor.execute(PROCESS_NAME, () -> Mono.error(new RuntimeException())).block();
+
+    }
+
+    @Test(expected = ThreadSynchronizationException.class)
+    public void test_execute_InternalExceptionSuchAsDBDown_PropagateAsThreadSynchronizationException() {
+
+        reactiveThreadProcessor =
+                new ReactiveThreadProcessor(
+                        new ReactiveLockServiceImpl(
+                                new SimulatorReactiveProcessServiceImpl(null)));
+        reactiveThreadProcessor.execute(PROCESS_NAME, Mono::empty).block();
+
+    }
+
+}
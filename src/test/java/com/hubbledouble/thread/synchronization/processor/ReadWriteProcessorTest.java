@@ -0,0 +1,218 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.processor;
+
+import com.hubbledouble.thread.synchronization.LockSettings;
+import com.hubbledouble.thread.synchronization.repository.impl.SimulatorReadWriteProcessRepositoryImpl;
+import com.hubbledouble.thread.synchronization.service.ReadWriteLockService;
+import com.hubbledouble.thread.synchronization.service.impl.ReadWriteLockServiceImpl;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ReadWriteProcessorTest {
+
+    private static final String PROCESS_NAME = "catalog";
+
+    private ReadWriteProcessor readWriteProcessor;
+    private ReadWriteProcessor otherNodeReadWriteProcessor;
+
+    @Before
+    public void setup() {
+        ReadWriteLockService readWriteLockService = new ReadWriteLockServiceImpl(new SimulatorReadWriteProcessRepositoryImpl());
+        readWriteProcessor = new ReadWriteProcessor(readWriteLockService);
+        otherNodeReadWriteProcessor = new ReadWriteProcessor(readWriteLockService);
+    }
+
+    @Test
+    public void test_executeRead_ReadersInOtherNodes_ReadInParallel() {
+
+        AtomicBoolean readByOtherNode = new AtomicBoolean();
+        AtomicBoolean writtenByOtherNode = new AtomicBoolean(true);
+
+        Assert.assertTrue(readWriteProcessor.executeRead(PROCESS_NAME, () -> {
+
+            Thread thread = new Thread(() -> {
+                readByOtherNode.set(otherNodeReadWriteProcessor.executeRead(PROCESS_NAME, () -> {
+                }));
+                writtenByOtherNode.set(otherNodeReadWriteProcessor.executeWrite(PROCESS_NAME, Duration.ZERO, () -> {
+                }));
+            });
+            thread.start();
+            join(thread);
+
+        }));
+
+        Assert.assertTrue(readByOtherNode.get());
+        Assert.assertFalse(writtenByOtherNode.get());
+        Assert.assertTrue(otherNodeReadWriteProcessor.executeWrite(PROCESS_NAME, Duration.ZERO, () -> {
+        }));
+
+    }
+
+    @Test
+    public void test_executeWrite_WaitingForReaders_RejectNewReaders() {
+
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch finishReading = new CountDownLatch(1);
+        AtomicBoolean written = new AtomicBoolean();
+
+        Thread reader = new Thread(() -> readWriteProcessor.executeRead(PROCESS_NAME, () -> {
+            reading.countDown();
+            await(finishReading);
+        }));
+        reader.start();
+        await(reading);
+
+        Thread writer = new Thread(() ->
+                written.set(otherNodeReadWriteProcessor.executeWrite(PROCESS_NAME, Duration.ofSeconds(5), () -> {
+                })));
+        writer.start();
+        sleep(200);
+
+        Assert.assertFalse(otherNodeReadWriteProcessor.executeRead(PROCESS_NAME, () -> {
+        }));
+        Assert.assertFalse(written.get());
+
+        finishReading.countDown();
+        join(reader);
+        join(writer);
+        Assert.assertTrue(written.get());
+
+    }
+
+    @Test
+    public void test_executeWrite_WriterStartsWaiting_SameNodeReadersDrainedBeforeNextHeartbeat() {
+
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch finishReading = new CountDownLatch(1);
+        AtomicBoolean written = new AtomicBoolean();
+
+        Thread reader = new Thread(() -> readWriteProcessor.executeRead(PROCESS_NAME, () -> {
+            reading.countDown();
+            await(finishReading);
+        }));
+        reader.start();
+        await(reading);
+        Assert.assertTrue(readWriteProcessor.executeRead(PROCESS_NAME, () -> {
+        }));
+
+        Thread writer = new Thread(() ->
+                written.set(otherNodeReadWriteProcessor.executeWrite(PROCESS_NAME, Duration.ofSeconds(5), () -> {
+                })));
+        writer.start();
+        sleep(200);
+
+        // Read heartbeats are 10 seconds apart, the writer was notified instead
+        Assert.assertFalse(readWriteProcessor.executeRead(PROCESS_NAME, () -> {
+        }));
+
+        long start = System.nanoTime();
+        finishReading.countDown();
+        join(reader);
+        join(writer);
+        Assert.assertTrue(written.get());
+        Assert.assertTrue(System.nanoTime() - start < Duration.ofMillis(900).toNanos());
+
+    }
+
+    @Test
+    public void test_executeWrite_ReaderInOtherNode_WakeUpOnReleaseInsteadOfPolling() {
+
+        SimulatorReadWriteProcessRepositoryImpl readWriteProcessRepository = new SimulatorReadWriteProcessRepositoryImpl();
+        ReadWriteProcessor writerReadWriteProcessor = new ReadWriteProcessor(new ReadWriteLockServiceImpl(readWriteProcessRepository));
+        Assert.assertTrue(readWriteProcessRepository.acquireReadLock(PROCESS_NAME, "otherNode", Instant.now().minusSeconds(30)));
+
+        Thread reader = new Thread(() -> {
+            sleep(300);
+            readWriteProcessRepository.releaseReadLock(PROCESS_NAME, "otherNode");
+        });
+        reader.start();
+
+        long start = System.nanoTime();
+        Assert.assertTrue(writerReadWriteProcessor.executeWrite(PROCESS_NAME, Duration.ofSeconds(5), () -> {
+        }));
+
+        Assert.assertTrue(System.nanoTime() - start < Duration.ofMillis(900).toNanos());
+        // First attempt, again once release notifications start, and once the reader leaves
+        Assert.assertTrue(readWriteProcessRepository.getWriteAttempts() <= 3);
+        join(reader);
+
+    }
+
+    @Test
+    public void test_executeRead_ProcessLockSettings_WaitingWritersFoundWithProcessExpiration() {
+
+        Set<Duration> writerIntentExpirations = new CopyOnWriteArraySet<>();
+        ReadWriteLockService readWriteLockService = new ReadWriteLockServiceImpl(new SimulatorReadWriteProcessRepositoryImpl()) {
+            @Override
+            public Set<String> findWaitingWriters(Collection<String> processNames, Duration duration) {
+                writerIntentExpirations.add(duration);
+                return super.findWaitingWriters(processNames, duration);
+            }
+        };
+        LockSettings processLockSettings = new LockSettings(Duration.ofMillis(200), Duration.ofMillis(50), 1);
+        ReadWriteProcessor quickReadWriteProcessor = new ReadWriteProcessor(readWriteLockService,
+                ProcessorExecutors.scheduledExecutorService(), ProcessorExecutors.backgroundExecutor(), LockSettings.DEFAULT,
+                Collections.singletonMap(PROCESS_NAME, processLockSettings));
+
+        Assert.assertTrue(quickReadWriteProcessor.executeRead(PROCESS_NAME, () -> sleep(300)));
+
+        Assert.assertEquals(Collections.singleton(processLockSettings.getExpiration()), writerIntentExpirations);
+
+    }
+
+    private void sleep(long millis) {
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
+    private void await(CountDownLatch latch) {
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
+    private void join(Thread thread) {
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
+}
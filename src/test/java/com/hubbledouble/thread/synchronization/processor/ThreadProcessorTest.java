@@ -16,16 +16,42 @@
 
 package com.hubbledouble.thread.synchronization.processor;
 
+import com.hubbledouble.thread.synchronization.Claim;
+import com.hubbledouble.thread.synchronization.Lease;
+import com.hubbledouble.thread.synchronization.RunnableCode;
+import com.hubbledouble.thread.synchronization.LockSettings;
+import com.hubbledouble.thread.synchronization.domain.Process;
 import com.hubbledouble.thread.synchronization.exception.RunnableCodeException;
 import com.hubbledouble.thread.synchronization.exception.ThreadSynchronizationException;
+import com.hubbledouble.thread.synchronization.listener.LockListener;
 import com.hubbledouble.thread.synchronization.service.impl.LockServiceImpl;
 import com.hubbledouble.thread.synchronization.collection.SimulatorProcessCollection;
+import com.hubbledouble.thread.synchronization.service.impl.SimulatorCompletionServiceImpl;
 import com.hubbledouble.thread.synchronization.service.impl.SimulatorProcessServiceImpl;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ThreadProcessorTest {
 
@@ -52,6 +78,546 @@ public class ThreadProcessorTest {
         });
     }
 
+    @Test
+    public void test_execute_CustomCodeThrowException_SameWrappingWhenNested() {
+
+        final String addingItemsProcessName = "addItems";
+        final IllegalStateException failure = new IllegalStateException();
+
+        List<RunnableCodeException> thrown = new CopyOnWriteArrayList<>();
+        for (RunnableCode runnableCode : Arrays.<RunnableCode>asList(
+                () -> threadProcessor.execute(addingItemsProcessName, () -> {
+                    throw failure;
+                }),
+                () -> threadProcessor.execute(addingItemsProcessName, () ->
+                        threadProcessor.execute(addingItemsProcessName, () -> {
+                            throw failure;
+                        })),
+                () -> threadProcessor.execute("otherProcess", () ->
+                        threadProcessor.execute(addingItemsProcessName, () -> {
+                            throw failure;
+                        })))) {
+
+            try {
+                runnableCode.execute();
+            } catch (RunnableCodeException e) {
+                thrown.add(e);
+            } catch (Exception e) {
+                Assert.fail();
+            }
+
+        }
+
+        Assert.assertEquals(3, thrown.size());
+        for (RunnableCodeException e : thrown) {
+            Assert.assertSame(failure, e.getCause());
+        }
+
+    }
+
+    @Test
+    public void test_execute_ProcessRunningInSameJvm_RejectWithoutDatabase() {
+
+        final String addingItemsProcessName = "addItems";
+        AtomicBoolean executedByOtherThread = new AtomicBoolean(true);
+
+        Assert.assertTrue(threadProcessor.execute(addingItemsProcessName, () -> {
+
+            // With the lock gone from the database only the local lock table can reject the other thread
+            simulatorProcessCollection.getProcessCollection().remove(addingItemsProcessName);
+
+            Thread thread = new Thread(() ->
+                    executedByOtherThread.set(threadProcessor.execute(addingItemsProcessName, () -> {
+                    })));
+            thread.start();
+            join(thread);
+
+        }));
+
+        Assert.assertFalse(executedByOtherThread.get());
+        Assert.assertTrue(threadProcessor.execute(addingItemsProcessName, () -> {
+        }));
+
+    }
+
+    @Test
+    public void test_execute_WithTimeout_WaitForProcessRunningInSameJvm() {
+
+        final String addingItemsProcessName = "addItems";
+        AtomicBoolean executedByOtherThread = new AtomicBoolean();
+        Thread thread = new Thread(() ->
+                executedByOtherThread.set(threadProcessor.execute(addingItemsProcessName, Duration.ofSeconds(5), () -> {
+                })));
+
+        Assert.assertTrue(threadProcessor.execute(addingItemsProcessName, () -> {
+
+            thread.start();
+            sleep(100);
+            Assert.assertFalse(executedByOtherThread.get());
+
+        }));
+
+        join(thread);
+        Assert.assertTrue(executedByOtherThread.get());
+
+    }
+
+    @Test
+    public void test_execute_NestedInSameThread_ReenterWithoutDatabase() {
+
+        final String addingItemsProcessName = "addItems";
+        Set<String> items = new HashSet<>();
+
+        Assert.assertTrue(threadProcessor.execute(addingItemsProcessName, () -> {
+
+            simulatorProcessCollection.getProcessCollection().remove(addingItemsProcessName);
+            Assert.assertTrue(threadProcessor.execute(addingItemsProcessName, () -> items.add("nested_item")));
+            Assert.assertFalse(simulatorProcessCollection.getProcessCollection().containsKey(addingItemsProcessName));
+
+        }));
+
+        Assert.assertTrue(items.contains("nested_item"));
+
+    }
+
+    @Test
+    public void test_execute_ManyProcesses_AcquireAllOrNone() {
+
+        Map<String, Process> processCollection = simulatorProcessCollection.getProcessCollection();
+        processCollection.put("account-2", new Process("account-2", "otherNode"));
+
+        Assert.assertFalse(threadProcessor.execute(Arrays.asList("account-2", "account-1"), () -> {
+        }));
+        Assert.assertFalse(processCollection.containsKey("account-1"));
+
+        processCollection.remove("account-2");
+
+        Assert.assertTrue(threadProcessor.execute(Arrays.asList("account-2", "account-1"), () -> {
+
+            Assert.assertTrue(processCollection.containsKey("account-1"));
+            Assert.assertTrue(processCollection.containsKey("account-2"));
+            // Nested executions of any of the processes are reentrant
+            Assert.assertTrue(threadProcessor.execute("account-1", () -> {
+            }));
+
+        }));
+
+        Assert.assertTrue(processCollection.isEmpty());
+
+    }
+
+    @Test
+    public void test_claim_SomeCandidatesHeld_ClaimUpToMaxOfTheFreeOnes() {
+
+        Map<String, Process> processCollection = simulatorProcessCollection.getProcessCollection();
+        processCollection.put("tenant-1", new Process("tenant-1", "otherNode"));
+        List<String> candidates = Arrays.asList("tenant-1", "tenant-2", "tenant-3", "tenant-4");
+
+        try (Claim claim = threadProcessor.claim(candidates, 2)) {
+
+            Assert.assertEquals(2, claim.getProcessNames().size());
+            Assert.assertFalse(claim.getProcessNames().contains("tenant-1"));
+
+            for (String processName : claim.getProcessNames()) {
+                Assert.assertNotEquals("otherNode", processCollection.get(processName).getProcessSourceId());
+            }
+
+            try (Claim otherClaim = threadProcessor.claim(candidates, 4)) {
+                Assert.assertEquals(1, otherClaim.getProcessNames().size());
+            }
+
+        }
+
+        Assert.assertEquals(Collections.singleton("tenant-1"), processCollection.keySet());
+
+    }
+
+    @Test
+    public void test_acquire_LeaseCoversManyExecutions_HoldLockUntilClosed() {
+
+        final String addingItemsProcessName = "addItems";
+        Set<String> items = new HashSet<>();
+        AtomicBoolean executedByOtherThread = new AtomicBoolean(true);
+        Optional<Lease> acquired = threadProcessor.acquire(addingItemsProcessName, Duration.ZERO);
+
+        Assert.assertTrue(acquired.isPresent());
+        try (Lease lease = acquired.get()) {
+
+            Object process = simulatorProcessCollection.getProcessCollection().get(addingItemsProcessName);
+            lease.execute(() -> items.add("first_item"));
+            Assert.assertTrue(threadProcessor.execute(addingItemsProcessName, () -> items.add("second_item")));
+            Assert.assertTrue(lease.renew());
+            Assert.assertSame(process, simulatorProcessCollection.getProcessCollection().get(addingItemsProcessName));
+
+            Thread thread = new Thread(() ->
+                    executedByOtherThread.set(threadProcessor.execute(addingItemsProcessName, () -> {
+                    })));
+            thread.start();
+            join(thread);
+
+        }
+
+        Assert.assertEquals(2, items.size());
+        Assert.assertFalse(executedByOtherThread.get());
+        Assert.assertFalse(simulatorProcessCollection.getProcessCollection().containsKey(addingItemsProcessName));
+
+    }
+
+    @Test
+    public void test_executeWithPermits_AllPermitsHeld_Reject() throws Exception {
+
+        final String exportProcessName = "export";
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch finish = new CountDownLatch(1);
+        Runnable holdPermit = () -> threadProcessor.executeWithPermits(exportProcessName, 2, () -> {
+            started.countDown();
+            await(finish);
+        });
+
+        Thread first = new Thread(holdPermit);
+        Thread second = new Thread(holdPermit);
+        first.start();
+        second.start();
+        await(started);
+
+        Assert.assertFalse(threadProcessor.executeWithPermits(exportProcessName, 2, () -> {
+        }));
+
+        finish.countDown();
+        join(first);
+        join(second);
+        Assert.assertTrue(threadProcessor.executeWithPermits(exportProcessName, 2, () -> {
+        }));
+
+    }
+
+    @Test
+    public void test_executeOnce_CompletedProcess_SkipUntilRetentionExpires() {
+
+        final String reportProcessName = "dailyReport";
+        AtomicInteger executions = new AtomicInteger();
+        threadProcessor =
+                new ThreadProcessor(
+                        new LockServiceImpl(
+                                new SimulatorProcessServiceImpl(simulatorProcessCollection.getProcessCollection())),
+                        new SimulatorCompletionServiceImpl(),
+                        ProcessorExecutors.scheduledExecutorService(),
+                        ProcessorExecutors.backgroundExecutor(),
+                        ProcessorExecutors.asyncExecutor(),
+                        LockSettings.DEFAULT,
+                        Collections.emptyMap());
+
+        Assert.assertTrue(threadProcessor.executeOnce(reportProcessName, Duration.ofMillis(200), executions::incrementAndGet));
+        Assert.assertFalse(threadProcessor.executeOnce(reportProcessName, Duration.ofMillis(200), executions::incrementAndGet));
+        Assert.assertFalse(simulatorProcessCollection.getProcessCollection().containsKey(reportProcessName));
+
+        sleep(300);
+        Assert.assertTrue(threadProcessor.executeOnce(reportProcessName, Duration.ofMillis(200), executions::incrementAndGet));
+        Assert.assertEquals(2, executions.get());
+
+    }
+
+    @Test
+    public void test_executeShared_ProcessInFlight_ShareItsValue() throws Exception {
+
+        final String refreshProcessName = "refresh";
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        AtomicReference<Optional<String>> sharedValue = new AtomicReference<>();
+
+        Thread thread = new Thread(() -> sharedValue.set(threadProcessor.executeShared(refreshProcessName, () -> {
+            executions.incrementAndGet();
+            started.countDown();
+            await(finish);
+            return "refreshed";
+        })));
+        thread.start();
+        await(started);
+
+        CompletableFuture<Optional<String>> joined = CompletableFuture.supplyAsync(() ->
+                threadProcessor.executeShared(refreshProcessName, () -> {
+                    executions.incrementAndGet();
+                    return "recomputed";
+                }));
+        sleep(100);
+        Assert.assertFalse(joined.isDone());
+
+        finish.countDown();
+        join(thread);
+
+        Assert.assertEquals(Optional.of("refreshed"), sharedValue.get());
+        Assert.assertEquals(Optional.of("refreshed"), joined.get());
+        Assert.assertEquals(1, executions.get());
+
+    }
+
+    @Test
+    public void test_executeShared_ProcessInFlightFails_JoinersGetItsException() throws Exception {
+
+        final String refreshProcessName = "refresh";
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("Refresh failed");
+        AtomicReference<Throwable> executingException = new AtomicReference<>();
+
+        Thread thread = new Thread(() -> {
+            try {
+                threadProcessor.executeShared(refreshProcessName, () -> {
+                    started.countDown();
+                    await(finish);
+                    throw failure;
+                });
+            } catch (Throwable e) {
+                executingException.set(e);
+            }
+        });
+        thread.start();
+        await(started);
+
+        CompletableFuture<Optional<String>> joined = CompletableFuture.supplyAsync(() ->
+                threadProcessor.executeShared(refreshProcessName, () -> "recomputed"));
+        sleep(100);
+
+        finish.countDown();
+        join(thread);
+
+        try {
+            joined.join();
+            Assert.fail();
+        } catch (Exception e) {
+            Assert.assertSame(RunnableCodeException.class, e.getCause().getClass());
+            Assert.assertSame(executingException.get().getClass(), e.getCause().getClass());
+            Assert.assertSame(failure, e.getCause().getCause());
+            Assert.assertSame(failure, executingException.get().getCause());
+        }
+
+    }
+
+    @Test
+    public void test_executeShared_ProcessInFlightThrowsError_JoinersAndLaterCallersDontHang() throws Exception {
+
+        final String refreshProcessName = "refresh";
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+
+        Thread thread = new Thread(() -> {
+            try {
+                threadProcessor.executeShared(refreshProcessName, () -> {
+                    started.countDown();
+                    await(finish);
+                    throw new AssertionError("Refresh broken");
+                });
+            } catch (AssertionError e) {
+                // Expected, the executing thread gets the error
+            }
+        });
+        thread.start();
+        await(started);
+
+        CompletableFuture<Optional<String>> joined = CompletableFuture.supplyAsync(() ->
+                threadProcessor.executeShared(refreshProcessName, () -> "recomputed"));
+        sleep(100);
+
+        finish.countDown();
+        join(thread);
+
+        try {
+            joined.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof AssertionError);
+        }
+        Assert.assertEquals(Optional.of("recomputed"), threadProcessor.executeShared(refreshProcessName, () -> "recomputed"));
+
+    }
+
+    @Test
+    public void test_executeAsync_HoldLockUntilCodeCompletes() throws Exception {
+
+        final String addingItemsProcessName = "addItems";
+        CompletableFuture<Void> codeExecution = new CompletableFuture<>();
+
+        CompletableFuture<Boolean> execution =
+                threadProcessor.executeAsync(addingItemsProcessName, () -> codeExecution, ForkJoinPool.commonPool());
+        sleep(100);
+
+        Assert.assertFalse(execution.isDone());
+        Assert.assertTrue(simulatorProcessCollection.getProcessCollection().containsKey(addingItemsProcessName));
+        Assert.assertFalse(threadProcessor.executeAsync(addingItemsProcessName, () -> null, ForkJoinPool.commonPool()).get());
+
+        codeExecution.complete(null);
+        Assert.assertTrue(execution.get());
+        Assert.assertFalse(simulatorProcessCollection.getProcessCollection().containsKey(addingItemsProcessName));
+
+    }
+
+    @Test
+    public void test_executeAsync_ExecutorRejectsRelease_ReleaseOnCompletingThread() throws Exception {
+
+        final String addingItemsProcessName = "addItems";
+        CompletableFuture<Void> codeExecution = new CompletableFuture<>();
+        AtomicInteger executions = new AtomicInteger();
+
+        // Runs the execution itself, then behaves as a shut down executor
+        CompletableFuture<Boolean> execution = threadProcessor.executeAsync(addingItemsProcessName, () -> codeExecution, command -> {
+            if (executions.incrementAndGet() > 1) {
+                throw new RejectedExecutionException();
+            }
+            command.run();
+        });
+
+        Assert.assertTrue(simulatorProcessCollection.getProcessCollection().containsKey(addingItemsProcessName));
+
+        codeExecution.complete(null);
+        Assert.assertTrue(execution.get());
+        Assert.assertFalse(simulatorProcessCollection.getProcessCollection().containsKey(addingItemsProcessName));
+        Assert.assertTrue(threadProcessor.execute(addingItemsProcessName, () -> {
+        }));
+
+    }
+
+    @Test
+    public void test_executeAsync_ExecutorRejectsExecution_FailTheFutureInsteadOfThrowing() {
+
+        CompletableFuture<Boolean> execution = threadProcessor.executeAsync("addItems", () -> null, command -> {
+            throw new RejectedExecutionException();
+        });
+
+        try {
+            execution.join();
+            Assert.fail();
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+    }
+
+    @Test
+    public void test_execute_ProcessLockSettings_HeartbeatAtProcessInterval() {
+
+        final String quickProcessName = "quickProcess";
+        threadProcessor =
+                new ThreadProcessor(
+                        new LockServiceImpl(
+                                new SimulatorProcessServiceImpl(simulatorProcessCollection.getProcessCollection())),
+                        ProcessorExecutors.scheduledExecutorService(),
+                        ProcessorExecutors.backgroundExecutor(),
+                        ProcessorExecutors.asyncExecutor(),
+                        LockSettings.DEFAULT,
+                        Collections.singletonMap(quickProcessName, new LockSettings(Duration.ofMillis(200), Duration.ofMillis(50), 1)));
+
+        Assert.assertTrue(threadProcessor.execute(quickProcessName, () -> {
+
+            sleep(400);
+            Instant heartbeat = simulatorProcessCollection.getProcessCollection().get(quickProcessName).getHeartbeat();
+            Assert.assertTrue(heartbeat.isAfter(Instant.now().minusMillis(200)));
+
+        }));
+
+    }
+
+    @Test
+    public void test_close_ProcessRunning_StopHeartbeats() {
+
+        final String quickProcessName = "quickProcess";
+        threadProcessor =
+                new ThreadProcessor(
+                        new LockServiceImpl(
+                                new SimulatorProcessServiceImpl(simulatorProcessCollection.getProcessCollection())),
+                        ProcessorExecutors.scheduledExecutorService(),
+                        ProcessorExecutors.backgroundExecutor(),
+                        ProcessorExecutors.asyncExecutor(),
+                        LockSettings.DEFAULT,
+                        Collections.singletonMap(quickProcessName, new LockSettings(Duration.ofMillis(200), Duration.ofMillis(50), 1)));
+
+        Assert.assertTrue(threadProcessor.execute(quickProcessName, () -> {
+
+            threadProcessor.close();
+            sleep(100);
+            Instant heartbeat = simulatorProcessCollection.getProcessCollection().get(quickProcessName).getHeartbeat();
+            sleep(300);
+            Assert.assertEquals(heartbeat, simulatorProcessCollection.getProcessCollection().get(quickProcessName).getHeartbeat());
+
+        }));
+
+    }
+
+    @Test
+    public void test_execute_WithListener_NotifyExecutionsAndAcquires() {
+
+        List<String> notifications = new CopyOnWriteArrayList<>();
+        LockListener lockListener = new LockListener() {
+
+            @Override
+            public void onExecute(String processName, ExecuteOutcome outcome, long durationInNanos) {
+                notifications.add("execute " + processName + " " + outcome);
+            }
+
+            @Override
+            public void onAcquire(String processName, AcquireOutcome outcome, long durationInNanos, int roundTrips) {
+                notifications.add("acquire " + processName + " " + outcome + " " + roundTrips);
+            }
+
+        };
+        LockServiceImpl lockService = new LockServiceImpl(
+                new SimulatorProcessServiceImpl(simulatorProcessCollection.getProcessCollection()), null, null, null, lockListener);
+        threadProcessor = new ThreadProcessor(lockService, null,
+                ProcessorExecutors.scheduledExecutorService(), ProcessorExecutors.backgroundExecutor(), ProcessorExecutors.asyncExecutor(),
+                LockSettings.DEFAULT, Collections.emptyMap(), lockListener);
+
+        threadProcessor.execute("report", () -> {
+        });
+        simulatorProcessCollection.getProcessCollection().put("report", new Process("report", "otherNode"));
+        threadProcessor.execute("report", () -> {
+        });
+
+        Assert.assertEquals(
+                Arrays.asList(
+                        "acquire report ACQUIRED 1", "execute report EXECUTED",
+                        "acquire report BUSY 1", "execute report REJECTED"),
+                notifications);
+
+    }
+
+    @Test
+    public void test_executeManyAsyncAndClaim_WithListener_NotifyEveryExecution() throws Exception {
+
+        List<String> notifications = new CopyOnWriteArrayList<>();
+        LockListener lockListener = new LockListener() {
+
+            @Override
+            public void onExecuteStart(String processName) {
+                notifications.add("start " + processName);
+            }
+
+            @Override
+            public void onExecute(String processName, ExecuteOutcome outcome, long durationInNanos) {
+                notifications.add("execute " + processName + " " + outcome);
+            }
+
+        };
+        threadProcessor = new ThreadProcessor(new LockServiceImpl(new SimulatorProcessServiceImpl(simulatorProcessCollection.getProcessCollection())),
+                null, ProcessorExecutors.scheduledExecutorService(), ProcessorExecutors.backgroundExecutor(),
+                ProcessorExecutors.asyncExecutor(), LockSettings.DEFAULT, Collections.emptyMap(), lockListener);
+
+        threadProcessor.execute(Arrays.asList("b", "a"), () -> {
+        });
+        Assert.assertEquals(Arrays.asList("start a", "start b", "execute a EXECUTED", "execute b EXECUTED"), notifications);
+
+        notifications.clear();
+        Assert.assertTrue(threadProcessor.executeAsync("a", () -> null, Runnable::run).get());
+        Assert.assertEquals(Collections.singletonList("execute a EXECUTED"), notifications);
+
+        notifications.clear();
+        try (Claim claim = threadProcessor.claim(Collections.singletonList("a"), 1)) {
+            Assert.assertEquals(Collections.singleton("a"), claim.getProcessNames());
+            Assert.assertTrue(notifications.isEmpty());
+        }
+        Assert.assertEquals(Collections.singletonList("execute a EXECUTED"), notifications);
+
+    }
+
     @Test(expected = ThreadSynchronizationException.class)
     public void test_execute_InternalExceptionSuchAsDBDown_PropagateAsThreadSynchronizationException() {
         Set<String> items = new HashSet<>();
@@ -63,4 +629,34 @@ public class ThreadProcessorTest {
         threadProcessor.execute(addingItemsProcessName, () -> items.add("first_item"));
     }
 
+    private void sleep(long millis) {
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
+    private void await(CountDownLatch latch) {
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
+    private void join(Thread thread) {
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,298 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.hubbledouble.thread.synchronization.repository.impl;
+
+import com.hubbledouble.thread.synchronization.domain.Process;
+import com.hubbledouble.thread.synchronization.exception.ThreadSynchronizationException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class BatchingProcessRepositoryImplTest {
+
+    private static final String SOURCE_ID = "sourceId";
+    private static final String OTHER_SOURCE_ID = "otherSourceId";
+
+    private Map<String, Process> processCollection;
+    private SimulatorProcessRepositoryImpl processRepository;
+    private ExecutorService executorService;
+
+    @Before
+    public void init() {
+        processCollection = new HashMap<>();
+        processRepository = new SimulatorProcessRepositoryImpl(processCollection);
+        executorService = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void test_acquireLock_ConcurrentCallers_SingleBulkWrite() throws Exception {
+
+        BatchingProcessRepositoryImpl batchingRepository =
+                new BatchingProcessRepositoryImpl(processRepository, Duration.ofMillis(500), 10);
+
+        List<Future<Process>> results = acquireConcurrently(batchingRepository, Arrays.asList("a", "b", "c"));
+
+        for (Future<Process> result : results) {
+            Assert.assertNotNull(result.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(Collections.singletonList(3), processRepository.getBulkSizes());
+        Assert.assertEquals(3, processCollection.size());
+
+    }
+
+    @Test
+    public void test_acquireLock_BatchFull_WriteBeforeWindowEnds() throws Exception {
+
+        BatchingProcessRepositoryImpl batchingRepository =
+                new BatchingProcessRepositoryImpl(processRepository, Duration.ofMinutes(1), 2);
+
+        List<Future<Process>> results = acquireConcurrently(batchingRepository, Arrays.asList("a", "b"));
+
+        for (Future<Process> result : results) {
+            Assert.assertNotNull(result.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(Collections.singletonList(2), processRepository.getBulkSizes());
+
+    }
+
+    @Test
+    public void test_acquireLock_OneLockHeld_OnlyItsCallerBusy() throws Exception {
+
+        BatchingProcessRepositoryImpl batchingRepository =
+                new BatchingProcessRepositoryImpl(processRepository, Duration.ofMillis(500), 10);
+        Assert.assertNotNull(processRepository.acquireLock("a", OTHER_SOURCE_ID, null, Duration.ofMinutes(1)));
+
+        List<Future<Process>> results = acquireConcurrently(batchingRepository, Arrays.asList("a", "b"));
+
+        Assert.assertNull(results.get(0).get(5, TimeUnit.SECONDS));
+        Assert.assertNotNull(results.get(1).get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(OTHER_SOURCE_ID, processCollection.get("a").getProcessSourceId());
+        Assert.assertEquals(SOURCE_ID, processCollection.get("b").getProcessSourceId());
+
+    }
+
+    @Test
+    public void test_acquireLock_ExpiredLock_TakenOverWithGenerationAboveOne() throws Exception {
+
+        BatchingProcessRepositoryImpl batchingRepository =
+                new BatchingProcessRepositoryImpl(processRepository, Duration.ofMillis(500), 10);
+        Assert.assertNotNull(processRepository.acquireLock("a", OTHER_SOURCE_ID, null, Duration.ofMinutes(1)));
+        processCollection.get("a").setHeartbeat(Instant.now().minus(Duration.ofMinutes(2)));
+
+        List<Future<Process>> results = acquireConcurrently(batchingRepository, Arrays.asList("a", "b"));
+
+        Assert.assertEquals(Long.valueOf(2), results.get(0).get(5, TimeUnit.SECONDS).getGeneration());
+        Assert.assertEquals(Long.valueOf(1), results.get(1).get(5, TimeUnit.SECONDS).getGeneration());
+        Assert.assertEquals(SOURCE_ID, processCollection.get("a").getProcessSourceId());
+
+    }
+
+    @Test
+    public void test_releaseLock_BatchedWithAcquire_LockReleased() throws Exception {
+
+        BatchingProcessRepositoryImpl batchingRepository =
+                new BatchingProcessRepositoryImpl(processRepository, Duration.ofMillis(10), 10);
+
+        Assert.assertNotNull(batchingRepository.acquireLock("a", SOURCE_ID, null, Duration.ofMinutes(1)));
+        batchingRepository.releaseLock("a", SOURCE_ID);
+
+        Assert.assertTrue(processCollection.isEmpty());
+
+    }
+
+    @Test
+    public void test_acquireLock_BulkWriteFails_CallerGetsErrorAndWriterKeepsRunning() {
+
+        BatchingProcessRepositoryImpl batchingRepository =
+                new BatchingProcessRepositoryImpl(processRepository, Duration.ofMillis(10), 10);
+        processRepository.setBeforeBulk(() -> {
+            throw new IllegalStateException("Database unavailable");
+        });
+
+        try {
+            batchingRepository.acquireLock("a", SOURCE_ID, null, Duration.ofMinutes(1));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Database unavailable", e.getMessage());
+        }
+
+        processRepository.setBeforeBulk(() -> {
+        });
+
+        Assert.assertNotNull(batchingRepository.acquireLock("a", SOURCE_ID, null, Duration.ofMinutes(1)));
+
+    }
+
+    @Test
+    public void test_acquireLock_WriterThreadDies_CallersFailInsteadOfHanging() {
+
+        BatchingProcessRepositoryImpl batchingRepository =
+                new BatchingProcessRepositoryImpl(processRepository, Duration.ofMillis(10), 10);
+        processRepository.setBeforeBulk(() -> {
+            throw new AssertionError("Writer thread dies");
+        });
+
+        try {
+            batchingRepository.acquireLock("a", SOURCE_ID, null, Duration.ofMinutes(1));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof AssertionError);
+        }
+
+        try {
+            batchingRepository.acquireLock("b", SOURCE_ID, null, Duration.ofMinutes(1));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof AssertionError);
+        }
+
+    }
+
+    @Test
+    public void test_acquireLock_BulkWriteTooSlow_FailAfterWriteTimeout() throws InterruptedException {
+
+        CountDownLatch databaseReply = new CountDownLatch(1);
+        BatchingProcessRepositoryImpl batchingRepository =
+                new BatchingProcessRepositoryImpl(processRepository, Duration.ofMillis(10), 10, Duration.ofMillis(100));
+        processRepository.setBeforeBulk(() -> {
+            try {
+                databaseReply.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        try {
+            batchingRepository.acquireLock("a", SOURCE_ID, null, Duration.ofMinutes(1));
+            Assert.fail();
+        } catch (ThreadSynchronizationException e) {
+            Assert.assertNotNull(e.getCause());
+        } finally {
+            databaseReply.countDown();
+        }
+
+    }
+
+    @Test
+    public void test_acquireLock_TimedOutWhileQueued_NeverWritten() throws Exception {
+
+        CountDownLatch databaseReply = new CountDownLatch(1);
+        BatchingProcessRepositoryImpl batchingRepository =
+                new BatchingProcessRepositoryImpl(processRepository, Duration.ofMillis(10), 10, Duration.ofMillis(100));
+        processRepository.setBeforeBulk(() -> {
+            try {
+                databaseReply.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // Keeps the writer busy with the first batch
+        Future<Process> slowAcquire = executorService.submit(() -> batchingRepository.acquireLock("x", OTHER_SOURCE_ID, null, Duration.ofMinutes(1)));
+        Thread.sleep(50);
+
+        try {
+            batchingRepository.acquireLock("a", SOURCE_ID, null, Duration.ofMinutes(1));
+            Assert.fail();
+        } catch (ThreadSynchronizationException e) {
+            Assert.assertNotNull(e.getCause());
+        } finally {
+            databaseReply.countDown();
+        }
+
+        Assert.assertNotNull(batchingRepository.acquireLock("b", SOURCE_ID, null, Duration.ofMinutes(1)));
+        Assert.assertFalse(processCollection.containsKey("a"));
+        Assert.assertEquals(Arrays.asList(1, 1), processRepository.getBulkSizes());
+
+        try {
+            slowAcquire.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            // The slow acquire timed out as well, its bulk write was already sent
+        }
+        Assert.assertTrue(processCollection.containsKey("x"));
+
+    }
+
+    @Test
+    public void test_close_CallerWaitingForBatch_FailInsteadOfHanging() throws Exception {
+
+        BatchingProcessRepositoryImpl batchingRepository =
+                new BatchingProcessRepositoryImpl(processRepository, Duration.ofMinutes(1), 10);
+
+        List<Future<Process>> results = acquireConcurrently(batchingRepository, Collections.singletonList("a"));
+        Thread.sleep(50);
+        batchingRepository.close();
+
+        try {
+            results.get(0).get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        try {
+            batchingRepository.acquireLock("b", SOURCE_ID, null, Duration.ofMinutes(1));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Batch writer stopped", e.getMessage());
+        }
+        Assert.assertTrue(processRepository.getBulkSizes().isEmpty());
+
+    }
+
+    private List<Future<Process>> acquireConcurrently(BatchingProcessRepositoryImpl batchingRepository,
+                                                      List<String> processNames) throws InterruptedException {
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Process>> results = new ArrayList<>();
+
+        for (String processName : processNames) {
+            results.add(executorService.submit(() -> {
+                start.await();
+                return batchingRepository.acquireLock(processName, SOURCE_ID, null, Duration.ofMinutes(1));
+            }));
+        }
+
+        Thread.sleep(50);
+        start.countDown();
+        return results;
+
+    }
+
+}
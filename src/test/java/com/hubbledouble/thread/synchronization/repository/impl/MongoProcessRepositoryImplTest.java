@@ -0,0 +1,124 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.hubbledouble.thread.synchronization.repository.impl;
+
+import com.hubbledouble.thread.synchronization.domain.Process;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class MongoProcessRepositoryImplTest {
+
+    private static final String PROCESS_NAME = "processName";
+    private static final String SOURCE_ID = "sourceId";
+
+    private SimulatorMongoOperations simulatorMongoOperations;
+
+    @Before
+    public void init() {
+        simulatorMongoOperations = new SimulatorMongoOperations();
+    }
+
+    @Test
+    public void test_acquireLock_ServerTime_ExpiryComparedWithDatabaseClock() {
+
+        new MongoProcessRepositoryImpl(simulatorMongoOperations.getMongoOperations(), Duration.ofMinutes(10), true)
+                .acquireLock(PROCESS_NAME, SOURCE_ID, null, Duration.ofSeconds(30));
+
+        Document query = acquireQuery();
+        Document expired = query.getList("$or", Document.class).get(0);
+
+        Assert.assertEquals(PROCESS_NAME, query.get("processName"));
+        Assert.assertEquals(new Document("$exists", true), expired.get("heartbeat"));
+        Assert.assertEquals(
+                new Document("$lte", Arrays.asList("$heartbeat", new Document("$subtract", Arrays.asList("$$NOW", 30_000L)))),
+                expired.get("$expr"));
+
+    }
+
+    @Test
+    public void test_acquireLock_ServerTime_HeartbeatStampedByDatabase() {
+
+        new MongoProcessRepositoryImpl(simulatorMongoOperations.getMongoOperations(), Duration.ofMinutes(10), true)
+                .acquireLock(PROCESS_NAME, SOURCE_ID, null, Duration.ofSeconds(30));
+
+        Document update = acquireUpdate();
+
+        Assert.assertEquals(new Document("heartbeat", true), update.get("$currentDate"));
+        Assert.assertFalse(update.get("$set", Document.class).containsKey("heartbeat"));
+        Assert.assertEquals(SOURCE_ID, update.get("$set", Document.class).get("processSourceId"));
+
+    }
+
+    @Test
+    public void test_acquireLock_NodeTime_ExpiryAndHeartbeatFromNodeClock() {
+
+        new MongoProcessRepositoryImpl(simulatorMongoOperations.getMongoOperations(), Duration.ofMinutes(10), false)
+                .acquireLock(PROCESS_NAME, SOURCE_ID, null, Duration.ofSeconds(30));
+
+        Document expired = acquireQuery().getList("$or", Document.class).get(0);
+        Document update = acquireUpdate();
+
+        Assert.assertTrue(expired.get("heartbeat", Document.class).get("$lte") instanceof Date);
+        Assert.assertFalse(expired.containsKey("$expr"));
+        Assert.assertTrue(update.get("$set", Document.class).get("heartbeat") instanceof Date);
+        Assert.assertFalse(update.containsKey("$currentDate"));
+
+    }
+
+    @Test
+    public void test_acquireLock_Insert_IdDerivedFromProcessName() {
+
+        new MongoProcessRepositoryImpl(simulatorMongoOperations.getMongoOperations(), Duration.ofMinutes(10), false)
+                .acquireLock(PROCESS_NAME, SOURCE_ID, null, Duration.ofSeconds(30));
+
+        Assert.assertEquals(Process.idOf(PROCESS_NAME), acquireUpdate().get("$setOnInsert", Document.class).get("_id"));
+
+    }
+
+    @Test
+    public void test_deleteProcessOlderThan_RemoveWithoutReadingTheLocks() {
+
+        new MongoProcessRepositoryImpl(simulatorMongoOperations.getMongoOperations(), Duration.ofMinutes(10), false)
+                .deleteProcessOlderThan(Instant.now());
+
+        Assert.assertNotNull(simulatorMongoOperations.getLastArguments("remove"));
+        Assert.assertNull(simulatorMongoOperations.getLastArguments("findAllAndRemove"));
+
+    }
+
+    private Document acquireQuery() {
+        List<Object> arguments = Arrays.asList(simulatorMongoOperations.getLastArguments("findAndModify"));
+        return simulatorMongoOperations.mapQuery((Query) arguments.get(0), Process.class);
+    }
+
+    private Document acquireUpdate() {
+        List<Object> arguments = Arrays.asList(simulatorMongoOperations.getLastArguments("findAndModify"));
+        return simulatorMongoOperations.mapUpdate((Update) arguments.get(1), Process.class);
+    }
+
+}
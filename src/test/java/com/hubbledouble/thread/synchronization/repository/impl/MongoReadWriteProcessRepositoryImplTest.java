@@ -0,0 +1,57 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.hubbledouble.thread.synchronization.repository.impl;
+
+import com.hubbledouble.thread.synchronization.domain.ReadWriteProcess;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.Date;
+
+public class MongoReadWriteProcessRepositoryImplTest {
+
+    private static final String PROCESS_NAME = "processName";
+    private static final String SOURCE_ID = "sourceId";
+
+    @Test
+    public void test_acquireWriteLock_ExpiredReaders_IgnoredAndDroppedInSingleUpdate() {
+
+        SimulatorMongoOperations simulatorMongoOperations = new SimulatorMongoOperations();
+        Instant expiredBefore = Instant.now();
+
+        Assert.assertTrue(new MongoReadWriteProcessRepositoryImpl(simulatorMongoOperations.getMongoOperations())
+                .acquireWriteLock(PROCESS_NAME, SOURCE_ID, expiredBefore));
+
+        Object[] arguments = simulatorMongoOperations.getLastArguments("updateFirst");
+        Document query = simulatorMongoOperations.mapQuery((Query) arguments[0], ReadWriteProcess.class);
+        Document update = simulatorMongoOperations.mapUpdate((Update) arguments[1], ReadWriteProcess.class);
+
+        Assert.assertEquals(SOURCE_ID, query.get("writerIntent.processSourceId"));
+        Assert.assertEquals(
+                new Document("$not", new Document("$elemMatch", new Document("heartbeat", new Document("$gt", Date.from(expiredBefore))))),
+                query.get("readers"));
+        Assert.assertTrue(update.get("$unset", Document.class).containsKey("readers"));
+        Assert.assertTrue(update.get("$unset", Document.class).containsKey("writerIntent"));
+
+    }
+
+}
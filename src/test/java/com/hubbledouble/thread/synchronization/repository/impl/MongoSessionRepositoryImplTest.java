@@ -0,0 +1,65 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.hubbledouble.thread.synchronization.repository.impl;
+
+import com.hubbledouble.thread.synchronization.domain.Session;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+public class MongoSessionRepositoryImplTest {
+
+    private static final String SESSION_ID = "sessionId";
+
+    @Test
+    public void test_performHeartBeat_ServerTime_HeartbeatStampedByDatabase() {
+
+        SimulatorMongoOperations simulatorMongoOperations = new SimulatorMongoOperations();
+        new MongoSessionRepositoryImpl(simulatorMongoOperations.getMongoOperations(), true).performHeartBeat(SESSION_ID);
+
+        Object[] arguments = simulatorMongoOperations.getLastArguments("updateFirst");
+        Document update = simulatorMongoOperations.mapUpdate((Update) arguments[1], Session.class);
+
+        Assert.assertEquals(new Document("$currentDate", new Document("heartbeat", true)), update);
+
+    }
+
+    @Test
+    public void test_deleteSessionOlderThan_ServerTime_ExpiryComparedWithDatabaseClock() {
+
+        SimulatorMongoOperations simulatorMongoOperations = new SimulatorMongoOperations();
+        new MongoSessionRepositoryImpl(simulatorMongoOperations.getMongoOperations(), true)
+                .deleteSessionOlderThan(SESSION_ID, Duration.ofSeconds(5));
+
+        Object[] arguments = simulatorMongoOperations.getLastArguments("findAndRemove");
+        Document query = simulatorMongoOperations.mapQuery((Query) arguments[0], Session.class);
+        Document expired = query.getList("$and", Document.class).get(1);
+
+        Assert.assertEquals(new Document("_id", SESSION_ID), query.getList("$and", Document.class).get(0));
+        Assert.assertEquals(
+                new Document("$lte", Arrays.asList("$heartbeat", new Document("$subtract", Arrays.asList("$$NOW", 5_000L)))),
+                expired.get("$expr"));
+
+    }
+
+}
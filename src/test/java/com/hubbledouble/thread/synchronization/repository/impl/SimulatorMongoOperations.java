@@ -0,0 +1,118 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.hubbledouble.thread.synchronization.repository.impl;
+
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link MongoOperations} without a database, it records the arguments of each call and maps queries and updates
+ * the way they would be sent to the database
+ */
+public class SimulatorMongoOperations implements InvocationHandler {
+
+    private final MongoMappingContext mappingContext;
+    private final MappingMongoConverter converter;
+    private final Map<String, Object[]> lastArguments = new ConcurrentHashMap<>();
+    private final MongoOperations mongoOperations;
+
+    public SimulatorMongoOperations() {
+        this.mappingContext = new MongoMappingContext();
+        this.mappingContext.setSimpleTypeHolder(new MongoCustomConversions(Collections.emptyList()).getSimpleTypeHolder());
+        this.converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        this.converter.afterPropertiesSet();
+        this.mongoOperations = (MongoOperations) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{MongoOperations.class}, this);
+    }
+
+    public MongoOperations getMongoOperations() {
+        return mongoOperations;
+    }
+
+    /**
+     * @return arguments of the last call to the method, null if it wasn't called
+     */
+    public Object[] getLastArguments(String methodName) {
+        return lastArguments.get(methodName);
+    }
+
+    public Document mapQuery(Query query, Class<?> type) {
+        return new QueryMapper(converter).getMappedObject(query.getQueryObject(), mappingContext.getPersistentEntity(type));
+    }
+
+    public Document mapUpdate(Update update, Class<?> type) {
+        return new UpdateMapper(converter).getMappedObject(update.getUpdateObject(), mappingContext.getPersistentEntity(type));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+
+        lastArguments.put(method.getName(), null == args ? new Object[0] : args);
+
+        switch (method.getName()) {
+            case "indexOps":
+                return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{IndexOperations.class},
+                        (indexProxy, indexMethod, indexArgs) -> null);
+            case "getConverter":
+                return converter;
+            case "getCollectionName":
+                return mappingContext.getRequiredPersistentEntity((Class<?>) args[0]).getCollection();
+            case "updateFirst":
+                return UpdateResult.acknowledged(1, 1L, null);
+            default:
+                return defaultValue(method.getReturnType());
+        }
+
+    }
+
+    private Object defaultValue(Class<?> type) {
+
+        if (boolean.class == type) {
+            return false;
+        }
+
+        if (long.class == type) {
+            return 0L;
+        }
+
+        if (int.class == type) {
+            return 0;
+        }
+
+        return null;
+
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.hubbledouble.thread.synchronization.repository.impl;
+
+import com.hubbledouble.thread.synchronization.domain.Process;
+import com.hubbledouble.thread.synchronization.repository.ProcessOperation;
+import com.hubbledouble.thread.synchronization.repository.ProcessRepository;
+import com.hubbledouble.thread.synchronization.service.impl.SimulatorProcessServiceImpl;
+import org.bson.types.ObjectId;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+public class SimulatorProcessRepositoryImpl implements ProcessRepository {
+
+    private final SimulatorProcessServiceImpl processService;
+    private final List<Integer> bulkSizes = new CopyOnWriteArrayList<>();
+    private volatile Runnable beforeBulk = () -> {
+    };
+
+    public SimulatorProcessRepositoryImpl(Map<String, Process> processCollection) {
+        this.processService = new SimulatorProcessServiceImpl(processCollection);
+    }
+
+    /**
+     * Sizes of the bulk writes executed so far
+     */
+    public List<Integer> getBulkSizes() {
+        return bulkSizes;
+    }
+
+    /**
+     * Simulates a slow or failing database right before a bulk write is applied
+     */
+    public void setBeforeBulk(Runnable beforeBulk) {
+        this.beforeBulk = beforeBulk;
+    }
+
+    @Override
+    public Process findByProcessName(String processName) {
+        return processService.findByProcessName(processName);
+    }
+
+    @Override
+    public List<Process> findByProcessNames(Collection<String> processNames) {
+        return processService.findByProcessNames(processNames);
+    }
+
+    @Override
+    public Process findByProcessNameAndProcessSourceId(String processName, String processSourceId) {
+        return processService.findByProcessNameAndProcessSourceId(processName, processSourceId);
+    }
+
+    @Override
+    public Process acquireLock(String processName, String processSourceId, String sessionId, Duration expiration) {
+        return processService.acquireLock(processName, processSourceId, sessionId, expiration);
+    }
+
+    @Override
+    public void releaseLock(String processName, String processSourceId) {
+        processService.releaseLock(processName, processSourceId);
+    }
+
+    @Override
+    public boolean acquireLocks(List<ProcessOperation> acquireOperations) {
+        return processService.acquireLocks(acquireOperations);
+    }
+
+    @Override
+    public void releaseLocks(Collection<String> processNames, String processSourceId) {
+        processService.releaseLocks(processNames, processSourceId);
+    }
+
+    @Override
+    public List<ProcessOperation.Result> executeBulk(List<ProcessOperation> processOperations) {
+
+        beforeBulk.run();
+        bulkSizes.add(processOperations.size());
+        return processService.executeBulk(processOperations);
+
+    }
+
+    @Override
+    public void performHeartBeat(Process process) {
+        processService.performHeartbeat(process);
+    }
+
+    @Override
+    public Set<String> performHeartBeats(Map<String, String> processSourceIds) {
+        return processService.performHeartbeats(processSourceIds);
+    }
+
+    @Override
+    public void delete(Process process) {
+        processService.delete(process);
+    }
+
+    @Override
+    public void deleteProcessOlderThan(Instant date) {
+        processService.deleteOldCompletedProcesses();
+    }
+
+    @Override
+    public void deleteBySessionIds(Collection<String> sessionIds) {
+        processService.deleteBySessionIds(sessionIds);
+    }
+
+    @Override
+    public Set<String> findSessionIds() {
+        return processService.findSessionIds();
+    }
+
+    @Override
+    public void watchReleases(Consumer<ObjectId> releaseListener) {
+        processService.watchReleases(releaseListener);
+    }
+
+}
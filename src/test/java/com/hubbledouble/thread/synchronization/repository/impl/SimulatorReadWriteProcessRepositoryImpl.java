@@ -0,0 +1,211 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.repository.impl;
+
+import com.hubbledouble.thread.synchronization.domain.ReadWriteProcess;
+import com.hubbledouble.thread.synchronization.repository.ReadWriteProcessRepository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SimulatorReadWriteProcessRepositoryImpl implements ReadWriteProcessRepository {
+
+    private final Map<String, ReadWriteProcess> processCollection = new HashMap<>();
+    private final List<Runnable> releaseListeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> writerIntentListeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger writeAttempts = new AtomicInteger();
+
+    @Override
+    public synchronized boolean acquireReadLock(String processName, String processSourceId, Instant expiredBefore) {
+
+        ReadWriteProcess process = find(processName);
+
+        if (!isFree(process.getWriter(), expiredBefore) || !isFree(process.getWriterIntent(), expiredBefore)) {
+            return false;
+        }
+
+        process.getReaders().add(new ReadWriteProcess.Holder(processSourceId));
+        return true;
+
+    }
+
+    @Override
+    public boolean acquireWriteIntent(String processName, String processSourceId, Instant expiredBefore) {
+
+        synchronized (this) {
+
+            ReadWriteProcess process = find(processName);
+
+            if (!isFree(process.getWriter(), expiredBefore)
+                    || !(isFree(process.getWriterIntent(), expiredBefore) || isHeldBy(process.getWriterIntent(), processSourceId))) {
+                return false;
+            }
+
+            process.setWriterIntent(new ReadWriteProcess.Holder(processSourceId));
+
+        }
+
+        writerIntentListeners.forEach(Runnable::run);
+        return true;
+
+    }
+
+    @Override
+    public synchronized boolean acquireWriteLock(String processName, String processSourceId, Instant expiredBefore) {
+
+        writeAttempts.incrementAndGet();
+        ReadWriteProcess process = find(processName);
+        process.getReaders().removeIf(reader -> isFree(reader, expiredBefore));
+
+        if (!isHeldBy(process.getWriterIntent(), processSourceId) || !process.getReaders().isEmpty()) {
+            return false;
+        }
+
+        process.setWriter(new ReadWriteProcess.Holder(processSourceId));
+        process.setWriterIntent(null);
+        return true;
+
+    }
+
+    @Override
+    public synchronized Set<String> findWithWriterIntent(Collection<String> processNames, Instant expiredBefore) {
+
+        Set<String> processNamesWithWriterIntent = new HashSet<>();
+
+        for (String processName : processNames) {
+            if (!isFree(find(processName).getWriterIntent(), expiredBefore)) {
+                processNamesWithWriterIntent.add(processName);
+            }
+        }
+
+        return processNamesWithWriterIntent;
+
+    }
+
+    @Override
+    public void releaseWriteIntent(String processName, String processSourceId) {
+
+        synchronized (this) {
+            if (isHeldBy(find(processName).getWriterIntent(), processSourceId)) {
+                find(processName).setWriterIntent(null);
+            }
+        }
+
+        releaseListeners.forEach(Runnable::run);
+
+    }
+
+    @Override
+    public void releaseReadLock(String processName, String processSourceId) {
+
+        synchronized (this) {
+            find(processName).getReaders().removeIf(reader -> isHeldBy(reader, processSourceId));
+        }
+
+        releaseListeners.forEach(Runnable::run);
+
+    }
+
+    @Override
+    public void releaseWriteLock(String processName, String processSourceId) {
+
+        synchronized (this) {
+            if (isHeldBy(find(processName).getWriter(), processSourceId)) {
+                find(processName).setWriter(null);
+            }
+        }
+
+        releaseListeners.forEach(Runnable::run);
+
+    }
+
+    @Override
+    public synchronized Set<String> performReadHeartBeats(Map<String, String> processSourceIds) {
+
+        Set<String> lostProcesses = new HashSet<>();
+
+        processSourceIds.forEach((processName, processSourceId) -> {
+            ReadWriteProcess.Holder reader = find(processName).getReaders().stream()
+                    .filter(holder -> isHeldBy(holder, processSourceId))
+                    .findFirst()
+                    .orElse(null);
+            if (null != reader) {
+                reader.setHeartbeat();
+            } else {
+                lostProcesses.add(processName);
+            }
+        });
+
+        return lostProcesses;
+
+    }
+
+    @Override
+    public synchronized Set<String> performWriteHeartBeats(Map<String, String> processSourceIds) {
+
+        Set<String> lostProcesses = new HashSet<>();
+
+        processSourceIds.forEach((processName, processSourceId) -> {
+            ReadWriteProcess.Holder writer = find(processName).getWriter();
+            if (isHeldBy(writer, processSourceId)) {
+                writer.setHeartbeat();
+            } else {
+                lostProcesses.add(processName);
+            }
+        });
+
+        return lostProcesses;
+
+    }
+
+    @Override
+    public void watchChanges(Runnable releaseListener, Runnable writerIntentListener) {
+        releaseListeners.add(releaseListener);
+        writerIntentListeners.add(writerIntentListener);
+        releaseListener.run();
+    }
+
+    public int getWriteAttempts() {
+        return writeAttempts.get();
+    }
+
+    private ReadWriteProcess find(String processName) {
+
+        return processCollection.computeIfAbsent(processName, name -> {
+            ReadWriteProcess process = new ReadWriteProcess();
+            process.setProcessName(name);
+            return process;
+        });
+
+    }
+
+    private boolean isFree(ReadWriteProcess.Holder holder, Instant expiredBefore) {
+        return null == holder || !expiredBefore.isBefore(holder.getHeartbeat());
+    }
+
+    private boolean isHeldBy(ReadWriteProcess.Holder holder, String processSourceId) {
+        return null != holder && processSourceId.equals(holder.getProcessSourceId());
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.repository.impl;
+
+import com.hubbledouble.thread.synchronization.domain.Session;
+import com.hubbledouble.thread.synchronization.repository.SessionRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class SimulatorSessionRepositoryImpl implements SessionRepository {
+
+    private final Map<String, Instant> sessionCollection = new HashMap<>();
+    private volatile Runnable afterFindSessionIds = () -> {
+    };
+
+    public Map<String, Instant> getSessionCollection() {
+        return sessionCollection;
+    }
+
+    /**
+     * Simulates other nodes writing between reading the expired sessions and deleting them
+     */
+    public void setAfterFindSessionIds(Runnable afterFindSessionIds) {
+        this.afterFindSessionIds = afterFindSessionIds;
+    }
+
+    @Override
+    public synchronized void insert(Session session) {
+        sessionCollection.put(session.getId(), Instant.now());
+    }
+
+    @Override
+    public synchronized boolean performHeartBeat(String sessionId) {
+        return null != sessionCollection.computeIfPresent(sessionId, (id, heartbeat) -> Instant.now());
+    }
+
+    @Override
+    public List<String> findSessionIdsOlderThan(Duration expiration) {
+
+        final List<String> sessionIds;
+
+        synchronized (this) {
+            sessionIds = sessionCollection.entrySet().stream()
+                    .filter(session -> isOlderThan(session.getValue(), expiration))
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        }
+
+        afterFindSessionIds.run();
+        return sessionIds;
+
+    }
+
+    @Override
+    public synchronized boolean deleteSessionOlderThan(String sessionId, Duration expiration) {
+
+        Instant heartbeat = sessionCollection.get(sessionId);
+
+        if (null == heartbeat || !isOlderThan(heartbeat, expiration)) {
+            return false;
+        }
+
+        sessionCollection.remove(sessionId);
+        return true;
+
+    }
+
+    @Override
+    public synchronized Set<String> findExistingSessionIds(Collection<String> sessionIds) {
+        return sessionIds.stream().filter(sessionCollection::containsKey).collect(Collectors.toSet());
+    }
+
+    private boolean isOlderThan(Instant heartbeat, Duration expiration) {
+        return !Instant.now().minus(expiration).isBefore(heartbeat);
+    }
+
+}
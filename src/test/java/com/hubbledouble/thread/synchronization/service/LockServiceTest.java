@@ -18,15 +18,37 @@ package com.hubbledouble.thread.synchronization.service;
 
 import com.hubbledouble.thread.synchronization.collection.SimulatorProcessCollection;
 import com.hubbledouble.thread.synchronization.domain.Process;
+import com.hubbledouble.thread.synchronization.listener.FlightRecorderLockListener;
+import com.hubbledouble.thread.synchronization.listener.LockListener;
+import com.hubbledouble.thread.synchronization.listener.MicrometerLockMetrics;
+import com.hubbledouble.thread.synchronization.repository.impl.BatchingProcessRepositoryImpl;
+import com.hubbledouble.thread.synchronization.repository.impl.SimulatorProcessRepositoryImpl;
+import com.hubbledouble.thread.synchronization.repository.impl.SimulatorSessionRepositoryImpl;
 import com.hubbledouble.thread.synchronization.service.impl.LockServiceImpl;
+import com.hubbledouble.thread.synchronization.service.impl.ProcessServiceImpl;
+import com.hubbledouble.thread.synchronization.service.impl.SessionServiceImpl;
 import com.hubbledouble.thread.synchronization.service.impl.SimulatorProcessServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class LockServiceTest {
 
@@ -52,6 +74,192 @@ public class LockServiceTest {
 
     }
 
+    @Test
+    public void test_acquireLock_WithTimeout_WaitUntilReleased() {
+
+        lockService.acquireLock(PROCESS_NAME, SOURCE_ID, null);
+
+        Thread thread = new Thread(() -> {
+            sleep(100);
+            lockService.releaseLock(PROCESS_NAME, SOURCE_ID);
+        });
+        thread.start();
+
+        long start = System.nanoTime();
+        Assert.assertTrue(lockService.acquireLock(PROCESS_NAME, "otherSource", Duration.of(60, ChronoUnit.SECONDS), Duration.of(5, ChronoUnit.SECONDS)));
+        // Woken up by the release instead of polling
+        Assert.assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofMillis(900)) < 0);
+
+    }
+
+    @Test
+    public void test_acquireLock_WithTimeout_StillRunning() {
+
+        lockService.acquireLock(PROCESS_NAME, SOURCE_ID, null);
+        Assert.assertFalse(lockService.acquireLock(PROCESS_NAME, "otherSource", Duration.of(60, ChronoUnit.SECONDS), Duration.ofMillis(100)));
+
+    }
+
+    @Test
+    public void test_acquireLock_HeldLockCache_RejectWithoutDatabaseUntilReleased() {
+
+        ProcessService processService = new SimulatorProcessServiceImpl(simulatorProcessCollection.getProcessCollection());
+        LockService holderLockService = new LockServiceImpl(processService);
+        LockService cachingLockService = new LockServiceImpl(processService, null, null, Duration.ofMinutes(1));
+
+        Assert.assertTrue(holderLockService.acquireLock(PROCESS_NAME, SOURCE_ID, null));
+        Assert.assertFalse(cachingLockService.acquireLock(PROCESS_NAME, "otherSource", Duration.of(60, ChronoUnit.SECONDS)));
+
+        // Gone from the database without a release, still known as held
+        Process process = simulatorProcessCollection.getProcessCollection().remove(PROCESS_NAME);
+        Assert.assertFalse(cachingLockService.acquireLock(PROCESS_NAME, "otherSource", Duration.of(60, ChronoUnit.SECONDS)));
+
+        simulatorProcessCollection.getProcessCollection().put(PROCESS_NAME, process);
+        holderLockService.releaseLock(PROCESS_NAME, SOURCE_ID);
+        Assert.assertTrue(cachingLockService.acquireLock(PROCESS_NAME, "otherSource", Duration.of(60, ChronoUnit.SECONDS)));
+
+    }
+
+    @Test
+    public void test_acquireLock_HeldLockCache_ReleasedWhileCaching_NotCached() {
+
+        ProcessService processService = new SimulatorProcessServiceImpl(simulatorProcessCollection.getProcessCollection()) {
+            @Override
+            public Process acquireLock(String processName, String processSourceId, String sessionId, Duration expiration) {
+                Process process = super.acquireLock(processName, processSourceId, sessionId, expiration);
+                if (null == process) {
+                    // Released right after rejecting the acquire, before the rejection is cached
+                    releaseLock(processName, SOURCE_ID);
+                }
+                return process;
+            }
+        };
+        LockService holderLockService = new LockServiceImpl(processService);
+        LockService cachingLockService = new LockServiceImpl(processService, null, null, Duration.ofMinutes(1));
+
+        Assert.assertTrue(holderLockService.acquireLock(PROCESS_NAME, SOURCE_ID, null));
+        Assert.assertFalse(cachingLockService.acquireLock(PROCESS_NAME, "otherSource", Duration.of(60, ChronoUnit.SECONDS)));
+        Assert.assertTrue(cachingLockService.acquireLock(PROCESS_NAME, "otherSource", Duration.of(60, ChronoUnit.SECONDS)));
+
+    }
+
+    @Test
+    public void test_acquireLock_HeldLockCache_OtherLockReleasedWhileCaching_CachedWithoutReadingIt() {
+
+        AtomicInteger finds = new AtomicInteger();
+        ProcessService processService = new SimulatorProcessServiceImpl(simulatorProcessCollection.getProcessCollection()) {
+            @Override
+            public Process acquireLock(String processName, String processSourceId, String sessionId, Duration expiration) {
+                Process process = super.acquireLock(processName, processSourceId, sessionId, expiration);
+                if (null == process) {
+                    // Other lock released right after rejecting the acquire
+                    releaseLock("otherProcess", SOURCE_ID);
+                }
+                return process;
+            }
+
+            @Override
+            public Process findByProcessName(String processName) {
+                finds.incrementAndGet();
+                return super.findByProcessName(processName);
+            }
+        };
+        LockService holderLockService = new LockServiceImpl(processService);
+        LockService cachingLockService = new LockServiceImpl(processService, null, null, Duration.ofMinutes(1));
+
+        Assert.assertTrue(holderLockService.acquireLock(PROCESS_NAME, SOURCE_ID, null));
+        Assert.assertTrue(holderLockService.acquireLock("otherProcess", SOURCE_ID, null));
+        Assert.assertFalse(cachingLockService.acquireLock(PROCESS_NAME, "otherSource", Duration.of(60, ChronoUnit.SECONDS)));
+
+        // Gone from the database without a release, still known as held
+        simulatorProcessCollection.getProcessCollection().remove(PROCESS_NAME);
+        Assert.assertFalse(cachingLockService.acquireLock(PROCESS_NAME, "otherSource", Duration.of(60, ChronoUnit.SECONDS)));
+        Assert.assertEquals(0, finds.get());
+
+    }
+
+    @Test
+    public void test_acquireLock_WithMetrics_RecordOutcomesHoldsAndTakeovers() {
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        lockService = new LockServiceImpl(
+                new SimulatorProcessServiceImpl(simulatorProcessCollection.getProcessCollection()),
+                null, null, null,
+                new MicrometerLockMetrics(meterRegistry, processName -> processName.split("-")[0], 1));
+
+        Assert.assertTrue(lockService.acquireLock("account-1", SOURCE_ID, Duration.ofSeconds(60)));
+        Assert.assertFalse(lockService.acquireLock("account-1", "otherSource", Duration.ofSeconds(60)));
+        // Heartbeat older than the expiration, the lock is taken over
+        Assert.assertTrue(lockService.acquireLock("account-1", "otherSource", Duration.ofSeconds(-60)));
+        lockService.releaseLock("account-1", "otherSource");
+        Assert.assertTrue(lockService.acquireLock("tenant-1", SOURCE_ID, Duration.ofSeconds(60)));
+
+        Assert.assertEquals(2, meterRegistry.get("thread.synchronization.acquire")
+                .tags("group", "account", "outcome", "acquired").timer().count());
+        Assert.assertEquals(1, meterRegistry.get("thread.synchronization.acquire")
+                .tags("group", "account", "outcome", "busy").timer().count());
+        Assert.assertEquals(1, meterRegistry.get("thread.synchronization.takeovers").tags("group", "account").counter().count(), 0);
+        Assert.assertEquals(1, meterRegistry.get("thread.synchronization.hold").tags("group", "account").timer().count());
+        // Groups beyond the maximum are not tagged on their own
+        Assert.assertEquals(1, meterRegistry.get("thread.synchronization.acquire")
+                .tags("group", MicrometerLockMetrics.OTHER_GROUP, "outcome", "acquired").timer().count());
+
+    }
+
+    @Test
+    public void test_acquireLock_BatchedWrites_TakeoverNotified() {
+
+        AtomicInteger takeovers = new AtomicInteger();
+        BatchingProcessRepositoryImpl batchingRepository = new BatchingProcessRepositoryImpl(
+                new SimulatorProcessRepositoryImpl(simulatorProcessCollection.getProcessCollection()), Duration.ofMillis(1), 10);
+        lockService = new LockServiceImpl(new ProcessServiceImpl(batchingRepository), null, null, null,
+                new LockListener() {
+                    @Override
+                    public void onTakeover(String processName) {
+                        takeovers.incrementAndGet();
+                    }
+                });
+
+        try {
+            Assert.assertTrue(lockService.acquireLock(PROCESS_NAME, SOURCE_ID, Duration.ofSeconds(60)));
+            Assert.assertEquals(0, takeovers.get());
+            // Heartbeat older than the expiration, the lock is taken over
+            Assert.assertTrue(lockService.acquireLock(PROCESS_NAME, "otherSource", Duration.ofSeconds(-60)));
+            Assert.assertEquals(1, takeovers.get());
+        } finally {
+            batchingRepository.close();
+        }
+
+    }
+
+    @Test
+    public void test_acquireLock_WithFlightRecorder_EventSpansTheWait() throws IOException {
+
+        lockService = new LockServiceImpl(new SimulatorProcessServiceImpl(simulatorProcessCollection.getProcessCollection()),
+                null, null, null, new FlightRecorderLockListener());
+        Assert.assertTrue(lockService.acquireLock(PROCESS_NAME, SOURCE_ID, null));
+        Path file = Files.createTempFile("lock", ".jfr");
+
+        try (Recording recording = new Recording()) {
+
+            recording.enable("com.hubbledouble.thread.synchronization.Acquire").withThreshold(Duration.ofMillis(50));
+            recording.start();
+            Assert.assertFalse(lockService.acquireLock(PROCESS_NAME, "otherSource", Duration.ofSeconds(60)));
+            Assert.assertFalse(lockService.acquireLock(PROCESS_NAME, "otherSource", Duration.ofSeconds(60), Duration.ofMillis(200)));
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            Assert.assertEquals(1, events.size());
+            Assert.assertEquals("BUSY", events.get(0).getString("outcome"));
+            Assert.assertTrue(events.get(0).getDuration().compareTo(Duration.ofMillis(200)) >= 0);
+
+        } finally {
+            Files.delete(file);
+        }
+
+    }
+
     @Test
     public void test_performHeartbeat() {
 
@@ -63,6 +271,27 @@ public class LockServiceTest {
 
     }
 
+    @Test
+    public void test_performHeartbeats_ReportLostLocks() {
+
+        final String otherProcessName = "otherProcessName";
+        lockService.acquireLock(PROCESS_NAME, SOURCE_ID, null);
+        lockService.acquireLock(otherProcessName, "otherSource", null);
+        String version = simulatorProcessCollection.getProcessCollection().get(PROCESS_NAME).getVersion();
+
+        Map<String, String> processSourceIds = new HashMap<>();
+        processSourceIds.put(PROCESS_NAME, SOURCE_ID);
+        processSourceIds.put(otherProcessName, SOURCE_ID);
+        processSourceIds.put("missingProcessName", SOURCE_ID);
+        Set<String> lostProcesses = lockService.performHeartbeats(processSourceIds);
+
+        Assert.assertNotEquals(version, simulatorProcessCollection.getProcessCollection().get(PROCESS_NAME).getVersion());
+        Assert.assertEquals(2, lostProcesses.size());
+        Assert.assertTrue(lostProcesses.contains(otherProcessName));
+        Assert.assertTrue(lostProcesses.contains("missingProcessName"));
+
+    }
+
     @Test
     public void test_releaseLock() {
 
@@ -74,7 +303,7 @@ public class LockServiceTest {
     }
 
     @Test
-    public void test_acquireLock_RemoveAllOldProcesses() {
+    public void test_deleteExpiredLocks_RemoveAllOldProcesses() {
 
         Process process = new Process();
         process.setProcessName("oldProcess");
@@ -83,13 +312,15 @@ public class LockServiceTest {
 
         Assert.assertTrue(lockService.acquireLock(PROCESS_NAME, SOURCE_ID, Duration.of(60, ChronoUnit.SECONDS)));
         lockService.releaseLock(PROCESS_NAME, SOURCE_ID);
+        Assert.assertTrue(simulatorProcessCollection.getProcessCollection().containsKey("oldProcess"));
 
+        lockService.deleteExpiredLocks();
         Assert.assertTrue(simulatorProcessCollection.getProcessCollection().isEmpty());
 
     }
 
     @Test
-    public void test_acquireLock_DoNotRemoveOtherNewProcesses() {
+    public void test_deleteExpiredLocks_DoNotRemoveOtherNewProcesses() {
 
         Process process = new Process();
         process.setProcessName("newProcess");
@@ -98,10 +329,144 @@ public class LockServiceTest {
 
         Assert.assertTrue(lockService.acquireLock(PROCESS_NAME, SOURCE_ID, Duration.of(60, ChronoUnit.SECONDS)));
         lockService.releaseLock(PROCESS_NAME, SOURCE_ID);
+        lockService.deleteExpiredLocks();
 
         Assert.assertTrue(!simulatorProcessCollection.getProcessCollection().isEmpty());
         Assert.assertTrue(simulatorProcessCollection.getProcessCollection().containsKey("newProcess"));
 
     }
 
+    @Test
+    public void test_performSessionHeartbeat_KeepLocksWithoutHeartbeats() {
+
+        ProcessService processService = new SimulatorProcessServiceImpl(simulatorProcessCollection.getProcessCollection());
+        LockService sessionLockService =
+                new LockServiceImpl(processService, new SessionServiceImpl(new SimulatorSessionRepositoryImpl(), processService), Duration.ofMillis(100));
+
+        Assert.assertTrue(sessionLockService.acquireLock(PROCESS_NAME, SOURCE_ID, Duration.ofMillis(100)));
+        sleep(200);
+        sessionLockService.performSessionHeartbeat();
+
+        Process process = simulatorProcessCollection.getProcessCollection().get(PROCESS_NAME);
+        Assert.assertNull(process.getHeartbeat());
+        Assert.assertNotNull(process.getSessionId());
+        Assert.assertFalse(lockService.acquireLock(PROCESS_NAME, "otherSource", Duration.ofMillis(100)));
+        Assert.assertTrue(sessionLockService.performHeartbeats(Collections.singletonMap(PROCESS_NAME, SOURCE_ID)).isEmpty());
+
+    }
+
+    @Test
+    public void test_performSessionHeartbeat_ExpiredSession_ReleaseAllItsLocks() {
+
+        ProcessService processService = new SimulatorProcessServiceImpl(simulatorProcessCollection.getProcessCollection());
+        SimulatorSessionRepositoryImpl sessionRepository = new SimulatorSessionRepositoryImpl();
+        SessionService sessionService = new SessionServiceImpl(sessionRepository, processService);
+        LockService crashedLockService = new LockServiceImpl(processService, sessionService, Duration.ofMillis(100));
+        LockService sessionLockService = new LockServiceImpl(processService, sessionService, Duration.ofMillis(100));
+
+        Assert.assertTrue(crashedLockService.acquireLock(PROCESS_NAME, SOURCE_ID, null));
+        Assert.assertTrue(crashedLockService.acquireLock("otherProcessName", SOURCE_ID, null));
+        sleep(200);
+        sessionLockService.performSessionHeartbeat();
+
+        Assert.assertTrue(simulatorProcessCollection.getProcessCollection().isEmpty());
+        Assert.assertEquals(1, sessionRepository.getSessionCollection().size());
+
+        crashedLockService.performSessionHeartbeat();
+        Map<String, String> processSourceIds = new HashMap<>();
+        processSourceIds.put(PROCESS_NAME, SOURCE_ID);
+        processSourceIds.put("otherProcessName", SOURCE_ID);
+        Assert.assertEquals(2, crashedLockService.performHeartbeats(processSourceIds).size());
+
+    }
+
+    @Test
+    public void test_performSessionHeartbeat_HeartbeatBetweenFindAndDelete_KeepSessionAndItsLocks() {
+
+        ProcessService processService = new SimulatorProcessServiceImpl(simulatorProcessCollection.getProcessCollection());
+        SimulatorSessionRepositoryImpl sessionRepository = new SimulatorSessionRepositoryImpl();
+        SessionService sessionService = new SessionServiceImpl(sessionRepository, processService);
+        LockService lateLockService = new LockServiceImpl(processService, sessionService, Duration.ofMillis(100));
+        LockService sessionLockService = new LockServiceImpl(processService, sessionService, Duration.ofMillis(100));
+
+        Assert.assertTrue(lateLockService.acquireLock(PROCESS_NAME, SOURCE_ID, null));
+        sleep(200);
+
+        // The late node renews its session right after the other node found it expired
+        AtomicBoolean lateHeartbeat = new AtomicBoolean();
+        sessionRepository.setAfterFindSessionIds(() -> {
+            if (lateHeartbeat.compareAndSet(false, true)) {
+                lateLockService.performSessionHeartbeat();
+            }
+        });
+        sessionLockService.performSessionHeartbeat();
+
+        Assert.assertTrue(lateHeartbeat.get());
+        Assert.assertTrue(simulatorProcessCollection.getProcessCollection().containsKey(PROCESS_NAME));
+        Assert.assertTrue(lateLockService.performHeartbeats(Collections.singletonMap(PROCESS_NAME, SOURCE_ID)).isEmpty());
+        Assert.assertFalse(sessionLockService.acquireLock(PROCESS_NAME, "otherSource", null));
+
+    }
+
+    @Test
+    public void test_performSessionHeartbeat_SessionReleaseFailed_RetryRelease() {
+
+        AtomicBoolean failRelease = new AtomicBoolean(true);
+        ProcessService processService = new SimulatorProcessServiceImpl(simulatorProcessCollection.getProcessCollection()) {
+            @Override
+            public void releaseLock(String processName, String processSourceId) {
+                if (failRelease.get()) {
+                    throw new IllegalStateException("Release failed");
+                }
+                super.releaseLock(processName, processSourceId);
+            }
+        };
+        LockService sessionLockService = new LockServiceImpl(processService,
+                new SessionServiceImpl(new SimulatorSessionRepositoryImpl(), processService), Duration.ofMillis(100));
+
+        Assert.assertTrue(sessionLockService.acquireLock(PROCESS_NAME, SOURCE_ID, null));
+        sessionLockService.releaseLock(PROCESS_NAME, SOURCE_ID);
+        sessionLockService.performSessionHeartbeat();
+
+        Assert.assertTrue(simulatorProcessCollection.getProcessCollection().containsKey(PROCESS_NAME));
+
+        failRelease.set(false);
+        sessionLockService.performSessionHeartbeat();
+
+        Assert.assertFalse(simulatorProcessCollection.getProcessCollection().containsKey(PROCESS_NAME));
+
+    }
+
+    @Test
+    public void test_deleteExpiredLocks_LocksOfDeletedSession_RemoveOrphanLocks() {
+
+        ProcessService processService = new SimulatorProcessServiceImpl(simulatorProcessCollection.getProcessCollection());
+        LockService sessionLockService = new LockServiceImpl(processService,
+                new SessionServiceImpl(new SimulatorSessionRepositoryImpl(), processService), Duration.ofMillis(100));
+
+        Assert.assertTrue(sessionLockService.acquireLock(PROCESS_NAME, SOURCE_ID, null));
+
+        // Left behind by a node stopped between deleting an expired session and its locks
+        Process process = new Process("orphanProcess", "otherSource");
+        process.setSessionId("deletedSession");
+        process.setHeartbeat(null);
+        simulatorProcessCollection.getProcessCollection().put("orphanProcess", process);
+
+        sessionLockService.deleteExpiredLocks();
+
+        Assert.assertFalse(simulatorProcessCollection.getProcessCollection().containsKey("orphanProcess"));
+        Assert.assertTrue(simulatorProcessCollection.getProcessCollection().containsKey(PROCESS_NAME));
+
+    }
+
+    private void sleep(long millis) {
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.service.impl;
+
+import com.hubbledouble.thread.synchronization.service.CompletionService;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SimulatorCompletionServiceImpl implements CompletionService {
+
+    private final Map<String, Instant> completionCollection = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean isCompleted(String processName) {
+        Instant expiresAt = completionCollection.get(processName);
+        return null != expiresAt && Instant.now().isBefore(expiresAt);
+    }
+
+    @Override
+    public void complete(String processName, Duration retention) {
+        completionCollection.put(processName, Instant.now().plus(retention));
+    }
+
+}
@@ -17,15 +17,28 @@
 package com.hubbledouble.thread.synchronization.service.impl;
 
 import com.hubbledouble.thread.synchronization.domain.Process;
+import com.hubbledouble.thread.synchronization.repository.ProcessOperation;
 import com.hubbledouble.thread.synchronization.service.ProcessService;
+import org.bson.types.ObjectId;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.stream.Collectors;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 public class SimulatorProcessServiceImpl implements ProcessService {
 
     private Map<String, Process> processCollection;
+    private final List<Consumer<ObjectId>> releaseListeners = new CopyOnWriteArrayList<>();
 
     public SimulatorProcessServiceImpl(Map<String, Process> processCollection) {
         this.processCollection = processCollection;
@@ -40,6 +53,17 @@ public class SimulatorProcessServiceImpl implements ProcessService {
 
     }
 
+    @Override
+    public List<Process> findByProcessNames(Collection<String> processNames) {
+
+        synchronized (processCollection) {
+            return processCollection.values().stream()
+                    .filter(process -> processNames.contains(process.getProcessName()))
+                    .collect(Collectors.toList());
+        }
+
+    }
+
     @Override
     public Process findByProcessNameAndProcessSourceId(String processName, String processSourceId) {
 
@@ -59,46 +83,142 @@ public class SimulatorProcessServiceImpl implements ProcessService {
     }
 
     @Override
-    public boolean insertLock(String processName, String processSourceId) {
+    public Process acquireLock(String processName, String processSourceId, String sessionId, Duration expiration) {
 
         synchronized (processCollection) {
 
-            if (!processCollection.containsKey(processName)) {
-                processCollection.put(processName, new Process(processName, processSourceId));
-                return true;
+            Process process = processCollection.getOrDefault(processName, null);
+
+            if (null == process) {
+                process = new Process(processName, processSourceId);
+                process.setId(Process.idOf(processName));
+                process.setGeneration(1L);
+                if (null != sessionId) {
+                    process.setSessionId(sessionId);
+                    process.setHeartbeat(null);
+                }
+                processCollection.put(processName, process);
+                return process;
+            }
 
+            if (isExpired(process, expiration)) {
+                process.setProcessSourceId(processSourceId);
+                process.setSessionId(sessionId);
+                process.setHeartbeat(null == sessionId ? Instant.now() : null);
+                process.setVersion();
+                process.setGeneration(null == process.getGeneration() ? 1L : process.getGeneration() + 1);
+                return process;
             }
 
-            return false;
+            return null;
         }
 
+    }
+
+    @Override
+    public void releaseLock(String processName, String processSourceId) {
+
+        Process process = findByProcessNameAndProcessSourceId(processName, processSourceId);
+
+        if (null != process) {
+            delete(process);
+        }
 
     }
 
     @Override
-    public boolean transferLock(Process process, String processSourceId) {
+    public boolean acquireLocks(List<ProcessOperation> acquireOperations) {
+
         synchronized (processCollection) {
 
-            if (processCollection.containsKey(process.getProcessName())) {
+            for (int i = 0; i < acquireOperations.size(); i++) {
 
-                process.setProcessSourceId(processSourceId);
-                process.setHeartbeat();
-                process.setVersion();
+                ProcessOperation acquireOperation = acquireOperations.get(i);
 
-                processCollection.put(process.getProcessName(), process);
+                if (null == acquireLock(acquireOperation.getProcessName(), acquireOperation.getProcessSourceId(),
+                        acquireOperation.getSessionId(), acquireOperation.getExpiration())) {
+                    releaseLocks(acquireOperations.subList(0, i).stream()
+                            .map(ProcessOperation::getProcessName)
+                            .collect(Collectors.toList()), acquireOperation.getProcessSourceId());
+                    return false;
+                }
+
+            }
+
+            return true;
+        }
+
+    }
 
-                return true;
+    @Override
+    public void releaseLocks(Collection<String> processNames, String processSourceId) {
+
+        for (String processName : processNames) {
+            releaseLock(processName, processSourceId);
+        }
+
+    }
+
+    @Override
+    public List<ProcessOperation.Result> executeBulk(List<ProcessOperation> processOperations) {
+
+        synchronized (processCollection) {
+
+            List<ProcessOperation.Result> results = new ArrayList<>(processOperations.size());
+
+            for (ProcessOperation processOperation : processOperations) {
+
+                if (ProcessOperation.Type.ACQUIRE == processOperation.getType()) {
+                    Process process = acquireLock(processOperation.getProcessName(), processOperation.getProcessSourceId(),
+                            processOperation.getSessionId(), processOperation.getExpiration());
+                    results.add(null == process ? ProcessOperation.Result.REJECTED
+                            : process.getGeneration() > 1 ? ProcessOperation.Result.TAKEN_OVER : ProcessOperation.Result.APPLIED);
+                } else {
+                    releaseLock(processOperation.getProcessName(), processOperation.getProcessSourceId());
+                    results.add(ProcessOperation.Result.APPLIED);
+                }
 
             }
 
-            return false;
+            return results;
         }
+
     }
 
     @Override
     public void performHeartbeat(Process process) {
 
-        transferLock(process, process.getProcessSourceId());
+        synchronized (processCollection) {
+
+            if (processCollection.containsKey(process.getProcessName())) {
+                process.setHeartbeat();
+                process.setVersion();
+                processCollection.put(process.getProcessName(), process);
+            }
+
+        }
+
+    }
+
+    @Override
+    public Set<String> performHeartbeats(Map<String, String> processSourceIds) {
+
+        synchronized (processCollection) {
+
+            Set<String> lostProcesses = new HashSet<>();
+
+            processSourceIds.forEach((processName, processSourceId) -> {
+                Process process = findByProcessNameAndProcessSourceId(processName, processSourceId);
+                if (null != process) {
+                    process.setHeartbeat();
+                    process.setVersion();
+                } else {
+                    lostProcesses.add(processName);
+                }
+            });
+
+            return lostProcesses;
+        }
 
     }
 
@@ -113,6 +233,8 @@ public class SimulatorProcessServiceImpl implements ProcessService {
 
         }
 
+        releaseListeners.forEach(releaseListener -> releaseListener.accept(process.getId()));
+
     }
 
     @Override
@@ -121,12 +243,47 @@ public class SimulatorProcessServiceImpl implements ProcessService {
         synchronized (processCollection) {
 
             processCollection.values().removeIf(i ->
-                    null == i.getHeartbeat() ||
-                            Instant.now()
-                                    .minus(10, ChronoUnit.MINUTES)
-                                    .isAfter(i.getHeartbeat()));
+                    isExpired(i, Duration.of(10, ChronoUnit.MINUTES)));
 
         }
 
     }
+
+    @Override
+    public void deleteBySessionIds(Collection<String> sessionIds) {
+
+        synchronized (processCollection) {
+            processCollection.values().removeIf(i -> sessionIds.contains(i.getSessionId()));
+        }
+
+    }
+
+    @Override
+    public Set<String> findSessionIds() {
+
+        synchronized (processCollection) {
+            return processCollection.values().stream()
+                    .map(Process::getSessionId)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+        }
+
+    }
+
+    @Override
+    public void watchReleases(Consumer<ObjectId> releaseListener) {
+        releaseListeners.add(releaseListener);
+        releaseListener.accept(null);
+    }
+
+    private boolean isExpired(Process process, Duration expiration) {
+
+        if (null == process.getHeartbeat()) {
+            return null == process.getSessionId();
+        }
+
+        return null != expiration && !Instant.now().minus(expiration).isBefore(process.getHeartbeat());
+
+    }
+
 }
\ No newline at end of file
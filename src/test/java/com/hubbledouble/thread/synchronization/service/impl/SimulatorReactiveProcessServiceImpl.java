@@ -0,0 +1,59 @@
+/*
+ *    Copyright (c) 2020, HubbleDouble
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.hubbledouble.thread.synchronization.service.impl;
+
+import com.hubbledouble.thread.synchronization.domain.Process;
+import com.hubbledouble.thread.synchronization.service.ProcessService;
+import com.hubbledouble.thread.synchronization.service.ReactiveProcessService;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+public class SimulatorReactiveProcessServiceImpl implements ReactiveProcessService {
+
+    private final ProcessService processService;
+
+    public SimulatorReactiveProcessServiceImpl(Map<String, Process> processCollection) {
+        this.processService = new SimulatorProcessServiceImpl(processCollection);
+    }
+
+    @Override
+    public Mono<Process> acquireLock(String processName, String processSourceId, Duration expiration) {
+        return Mono.fromCallable(() -> processService.acquireLock(processName, processSourceId, null, expiration));
+    }
+
+    @Override
+    public Mono<Boolean> performHeartbeat(String processName, String processSourceId) {
+        return Mono.fromCallable(() ->
+                !processService.performHeartbeats(Collections.singletonMap(processName, processSourceId)).contains(processName));
+    }
+
+    @Override
+    public Mono<Void> releaseLock(String processName, String processSourceId) {
+
+        return Mono.fromRunnable(() -> {
+            Process process = processService.findByProcessNameAndProcessSourceId(processName, processSourceId);
+            if (null != process) {
+                processService.delete(process);
+            }
+        });
+
+    }
+
+}